@@ -0,0 +1,401 @@
+package tudo.streamingrec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import tudo.streamingrec.algorithms.Algorithm;
+import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.evaluation.metrics.Runtime;
+import tudo.streamingrec.evaluation.metrics.Runtime.Type;
+import tudo.streamingrec.util.HeapSize;
+import tudo.streamingrec.util.Util;
+
+/**
+ * Decides in which order the algorithms are handed to the thread pool. The cost of each
+ * algorithm is estimated based on the {@link Runtime} metrics of previous runs
+ * (i.e., the tmp result files in the output folder). The algorithms are then
+ * dispatched longest-first, so that expensive algorithms do not become the long
+ * tail of a run. Algorithms without history are dispatched first in config order,
+ * since their cost is unknown.
+ * <p>
+ * If a heap budget is set, algorithms are only admitted while the sum of the estimated
+ * state sizes of all running algorithms stays below the budget. The state sizes are
+ * estimated at the end of previous runs with a heap budget (see {@link HeapSize}).
+ * Algorithms without measurement are assumed to need an equal share of the budget per thread.
+ * <p>
+ * After the run, the scheduler reports the executions on the thread that finished last
+ * and the busy time of each thread (see {@link #reportSchedule}).
+ *
+ * @author MJ
+ *
+ */
+public class AlgorithmScheduler {
+	//the output folder that contains the results of previous runs
+	private static final String folder = "output";
+	//the prefix of the result files
+	private static final String prefix = "tmp_results_";
+
+	//the estimated cost of each algorithm in milliseconds
+	private Object2DoubleOpenHashMap<String> estimatedCosts = new Object2DoubleOpenHashMap<>();
+	//the estimated state size of each algorithm in bytes
+	private Object2LongOpenHashMap<String> estimatedStateSizes = new Object2LongOpenHashMap<>();
+	//the heap budget for the state of all running algorithms in bytes (0 = unlimited)
+	private long heapBudget = 0;
+	//the assumed state size of algorithms without measurement
+	private long defaultStateSize = 0;
+	//the sum of the estimated state sizes of the admitted algorithms (guarded by this)
+	private long admittedStateSize = 0;
+	//the estimated state size of each admitted algorithm, i.e., of the running ones and of the ones
+	//that are suspended by the successive halving and keep their model on the heap (guarded by this)
+	private Reference2LongOpenHashMap<AlgorithmWrapper> admitted = new Reference2LongOpenHashMap<>();
+	//the number of running algorithms (guarded by this)
+	private int running = 0;
+	//the successive halving schedule (null = disabled)
+	private SuccessiveHalving successiveHalving = null;
+
+	/**
+	 * Estimates the cost and the state size of each algorithm based on the latest
+	 * previous run that contains results for it
+	 * @param metrics the metrics per algorithm name (needed to identify the runtime metrics)
+	 * @param nbOfTestEvents the number of events in the test phase of this run
+	 */
+	public AlgorithmScheduler(Map<String, List<Metric>> metrics, int nbOfTestEvents) {
+		//the runtime metrics by name
+		Map<String, Runtime> runtimeMetrics = new Object2ObjectOpenHashMap<>();
+		for (List<Metric> list : metrics.values()) {
+			for (Metric metric : list) {
+				if (metric instanceof Runtime) {
+					runtimeMetrics.put(metric.getName(), (Runtime) metric);
+				}
+			}
+		}
+		File[] files = new File(folder).listFiles();
+		if (files == null) {
+			return;
+		}
+		//read the older runs first, so that newer results replace them
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File runFolder : files) {
+			if (!runFolder.isDirectory() || runFolder.getName().equals(StreamingRec.startTime)) {
+				continue;
+			}
+			File resultFile = new File(runFolder, prefix + runFolder.getName() + ".txt");
+			if (resultFile.exists() && !runtimeMetrics.isEmpty()) {
+				readResults(resultFile, runtimeMetrics, metrics.keySet(), nbOfTestEvents);
+			}
+			File stateSizeFile = new File(runFolder, AlgorithmWrapper.stateSizePrefix + runFolder.getName() + ".txt");
+			if (stateSizeFile.exists()) {
+				readStateSizes(stateSizeFile, metrics.keySet());
+			}
+		}
+	}
+
+	/**
+	 * Reads a tmp result file and estimates the cost of the algorithms in it
+	 * @param resultFile -
+	 * @param runtimeMetrics -
+	 * @param algorithmNames the algorithms of this run
+	 * @param nbOfTestEvents -
+	 */
+	private void readResults(File resultFile, Map<String, Runtime> runtimeMetrics, Collection<String> algorithmNames,
+			int nbOfTestEvents) {
+		try (BufferedReader reader = new BufferedReader(new FileReader(resultFile))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#")) {
+					//skip the header
+					continue;
+				}
+				//format: name;metric;value;metric;value;...
+				String[] split = line.split(";");
+				if (!algorithmNames.contains(split[0])) {
+					continue;
+				}
+				double cost = 0;
+				boolean found = false;
+				for (int i = 1; i + 1 < split.length; i += 2) {
+					Runtime runtime = runtimeMetrics.get(split[i]);
+					if (runtime == null || runtime.getType().isLatency()) {
+						//latencies of single calls do not add up to the cost
+						continue;
+					}
+					double value = runtime.toMilliseconds(Double.parseDouble(split[i + 1]));
+					if (runtime.getType() == Type.Testing) {
+						//the testing time is stored per event
+						value *= nbOfTestEvents;
+					}
+					cost += value;
+					found = true;
+				}
+				if (found) {
+					estimatedCosts.put(split[0], cost);
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			//previous results are only a hint -> ignore broken files
+			System.err.println("Could not read previous results from " + resultFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the state sizes measured in a previous run
+	 * @param stateSizeFile -
+	 * @param algorithmNames the algorithms of this run
+	 */
+	private void readStateSizes(File stateSizeFile, Collection<String> algorithmNames) {
+		try (BufferedReader reader = new BufferedReader(new FileReader(stateSizeFile))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				//format: name;bytes
+				int separator = line.lastIndexOf(';');
+				String name = line.substring(0, separator);
+				if (algorithmNames.contains(name)) {
+					estimatedStateSizes.put(name, Long.parseLong(line.substring(separator + 1)));
+				}
+			}
+		} catch (IOException | NumberFormatException | StringIndexOutOfBoundsException e) {
+			//previous results are only a hint -> ignore broken files
+			System.err.println("Could not read previous state sizes from " + stateSizeFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets the heap budget for the state of all concurrently running algorithms
+	 * @param budget the budget in bytes (0 = unlimited)
+	 * @param threads the number of threads (to determine the state size of unknown algorithms)
+	 */
+	public void setHeapBudget(long budget, int threads) {
+		this.heapBudget = budget;
+		this.defaultStateSize = budget / Math.max(1, threads);
+	}
+
+	/**
+	 * Enables successive halving. Algorithms that are suspended at a rung release their thread
+	 * and are dispatched again once the schedule decides that they continue.
+	 * @param successiveHalving -
+	 */
+	public void setSuccessiveHalving(SuccessiveHalving successiveHalving) {
+		this.successiveHalving = successiveHalving;
+	}
+
+	/**
+	 * The estimated state size of an algorithm
+	 * @param name the name of the algorithm
+	 * @return the size in bytes
+	 */
+	private long getEstimatedStateSize(String name) {
+		return estimatedStateSizes.containsKey(name) ? estimatedStateSizes.getLong(name) : defaultStateSize;
+	}
+
+	/**
+	 * Orders the algorithms for dispatching: algorithms without cost estimate first (in config order),
+	 * then the remaining ones in descending order of their estimated cost.
+	 * @param algorithms the algorithms in config order
+	 * @return the algorithms in dispatch order
+	 */
+	public List<Algorithm> order(Collection<Algorithm> algorithms) {
+		List<Algorithm> ordered = new ObjectArrayList<>(algorithms);
+		//the sort is stable -> unknown algorithms keep their config order
+		ordered.sort(Comparator.comparingDouble(
+				(Algorithm a) -> estimatedCosts.containsKey(a.getName()) ? estimatedCosts.getDouble(a.getName())
+						: Double.MAX_VALUE).reversed());
+		if (!estimatedCosts.isEmpty()) {
+			System.out.println("Dispatching algorithms longest-first based on previous runs:");
+			for (Algorithm algorithm : ordered) {
+				System.out.println(algorithm.getName() + ": " + (estimatedCosts.containsKey(algorithm.getName())
+						? Util.printETA(Math.round(estimatedCosts.getDouble(algorithm.getName()))) : "unknown")
+						+ (heapBudget > 0 ? ", state size: " + getEstimatedStateSize(algorithm.getName()) / 1024 / 1024 + " MB" : ""));
+			}
+			System.out.println();
+		}
+		return ordered;
+	}
+
+	/**
+	 * Splits the algorithms into groups for lockstep mode. Each group has at most
+	 * the given size and, if a heap budget is set, the estimated state sizes of
+	 * each group stay within the budget (every group contains at least one algorithm).
+	 * @param algorithms the algorithms in dispatch order
+	 * @param groupSize the maximum size of a group
+	 * @return the groups
+	 */
+	public List<List<Algorithm>> createGroups(List<Algorithm> algorithms, int groupSize) {
+		List<List<Algorithm>> groups = new ObjectArrayList<>();
+		List<Algorithm> group = new ObjectArrayList<>();
+		long groupStateSize = 0;
+		for (Algorithm algorithm : algorithms) {
+			long stateSize = getEstimatedStateSize(algorithm.getName());
+			if (!group.isEmpty() && (group.size() == groupSize
+					|| (heapBudget > 0 && groupStateSize + stateSize > heapBudget))) {
+				//the group is full
+				groups.add(group);
+				group = new ObjectArrayList<>();
+				groupStateSize = 0;
+			}
+			group.add(algorithm);
+			groupStateSize += stateSize;
+		}
+		if (!group.isEmpty()) {
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	/**
+	 * Executes the algorithm wrappers with the given number of threads. The wrappers are
+	 * started in the given order. If a heap budget is set, a wrapper is only started while its
+	 * estimated state size fits into the remaining budget. In that case, later (smaller) algorithms
+	 * may be started first. If nothing is running, the next algorithm is always started,
+	 * even if it exceeds the budget on its own. With successive halving, suspended algorithms
+	 * are dispatched again (after the ones that have not been started yet) once they may continue.
+	 * Since their models stay on the heap, they keep their share of the budget until they
+	 * are finished or pruned.
+	 * @param wrappers the wrappers in dispatch order
+	 * @param threads the number of threads
+	 * @throws InterruptedException -
+	 */
+	public void execute(List<AlgorithmWrapper> wrappers, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<AlgorithmWrapper> pending = new LinkedList<>(wrappers);
+		synchronized (this) {
+			//running algorithms might be dispatched again (successive halving)
+			while (!pending.isEmpty() || (successiveHalving != null && running > 0)) {
+				AlgorithmWrapper next = null;
+				if (running < threads) {
+					//find the first algorithm that fits into the budget
+					for (AlgorithmWrapper wrapper : pending) {
+						if (running == 0 || heapBudget <= 0 || admitted.containsKey(wrapper) || admittedStateSize
+								+ getEstimatedStateSize(wrapper.getAlgorithmName()) <= heapBudget) {
+							next = wrapper;
+							break;
+						}
+					}
+				}
+				if (next == null) {
+					//wait for a running algorithm to finish
+					wait();
+					continue;
+				}
+				pending.remove(next);
+				if (!admitted.containsKey(next)) {
+					long stateSize = getEstimatedStateSize(next.getAlgorithmName());
+					admitted.put(next, stateSize);
+					admittedStateSize += stateSize;
+				}
+				running++;
+				AlgorithmWrapper wrapper = next;
+				executor.execute(() -> {
+					try {
+						wrapper.run();
+					} finally {
+						release(wrapper, successiveHalving != null ? successiveHalving.report(wrapper)
+								: Collections.<AlgorithmWrapper>emptyList(), pending);
+					}
+				});
+			}
+		}
+		//wait for all algorithms to finish (note: AlgorithmWrapper class does some tmp output)
+		executor.shutdown();
+		while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+			// wait for threads to finish
+		}
+	}
+
+	/**
+	 * Called when an algorithm returns its thread (finished or suspended). Frees the share of the budget
+	 * of the algorithm if it is finished, and of the algorithms that were pruned in the meantime.
+	 * @param wrapper the algorithm
+	 * @param resumed the suspended algorithms that may continue now
+	 * @param pending the algorithms that wait for dispatching
+	 */
+	private synchronized void release(AlgorithmWrapper wrapper, List<AlgorithmWrapper> resumed,
+			List<AlgorithmWrapper> pending) {
+		if (!wrapper.isSuspended()) {
+			admittedStateSize -= admitted.removeLong(wrapper);
+		}
+		if (successiveHalving != null) {
+			//suspended algorithms that will not continue
+			for (ObjectIterator<AlgorithmWrapper> iterator = admitted.keySet().iterator(); iterator.hasNext();) {
+				AlgorithmWrapper suspended = iterator.next();
+				if (successiveHalving.isPruned(suspended.getAlgorithmName())) {
+					admittedStateSize -= admitted.getLong(suspended);
+					iterator.remove();
+				}
+			}
+		}
+		running--;
+		pending.addAll(resumed);
+		notifyAll();
+	}
+
+	/**
+	 * Prints how the run was scheduled: the executions on the thread that finished last
+	 * (which determine the total runtime), the longest single algorithm, and the busy time of each thread.
+	 * With successive halving, an algorithm is executed once per rung (possibly on different threads),
+	 * and each execution is reported separately.
+	 * @param wrappers the finished algorithm wrappers
+	 */
+	public void reportSchedule(List<AlgorithmWrapper> wrappers) {
+		//group the executions by thread
+		Map<String, List<AlgorithmWrapper.Execution>> byThread = new Object2ObjectLinkedOpenHashMap<>();
+		AlgorithmWrapper.Execution last = null;
+		AlgorithmWrapper longest = null;
+		long start = Long.MAX_VALUE;
+		for (AlgorithmWrapper wrapper : wrappers) {
+			for (AlgorithmWrapper.Execution execution : wrapper.getExecutions()) {
+				byThread.computeIfAbsent(execution.getThreadName(), k -> new ObjectArrayList<>()).add(execution);
+				if (last == null || execution.getFinishedAt() > last.getFinishedAt()) {
+					last = execution;
+				}
+				start = Math.min(start, execution.getStartedAt());
+			}
+			if (longest == null || wrapper.getDuration() > longest.getDuration()) {
+				longest = wrapper;
+			}
+		}
+		if (last == null) {
+			return;
+		}
+		List<AlgorithmWrapper.Execution> lastThread = byThread.get(last.getThreadName());
+		lastThread.sort(Comparator.comparingLong(AlgorithmWrapper.Execution::getStartedAt));
+		StringBuilder sb = new StringBuilder("Thread that finished last (total runtime "
+				+ Util.printETA(last.getFinishedAt() - start) + "): ");
+		for (int i = 0; i < lastThread.size(); i++) {
+			if (i > 0) {
+				sb.append(" -> ");
+			}
+			sb.append(lastThread.get(i).getAlgorithmName() + " (" + Util.printETA(lastThread.get(i).getDuration()) + ")");
+		}
+		System.out.println(sb.toString());
+		System.out.println("Longest algorithm: " + longest.getAlgorithmName() + " ("
+				+ Util.printETA(longest.getDuration()) + ")");
+		for (Entry<String, List<AlgorithmWrapper.Execution>> entry : byThread.entrySet()) {
+			long busy = 0;
+			for (AlgorithmWrapper.Execution execution : entry.getValue()) {
+				busy += execution.getDuration();
+			}
+			System.out.println("Busy time of " + entry.getKey() + ": " + Util.printETA(busy));
+		}
+		System.out.println();
+	}
+}
@@ -1,12 +1,21 @@
 package tudo.streamingrec;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Collections;
@@ -14,20 +23,37 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.commons.lang3.time.StopWatch;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.joda.time.Period;
 import org.joda.time.format.ISOPeriodFormat;
 
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import tudo.streamingrec.algorithms.Algorithm;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
+import tudo.streamingrec.evaluation.metrics.DetailedResults;
 import tudo.streamingrec.evaluation.metrics.HypothesisTestableMetric;
 import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.evaluation.metrics.MetricEvaluator;
+import tudo.streamingrec.evaluation.metrics.ResourceUsage;
 import tudo.streamingrec.evaluation.metrics.Runtime;
 import tudo.streamingrec.evaluation.metrics.Runtime.Type;
+import tudo.streamingrec.evaluation.metrics.StatResultsFile;
+import tudo.streamingrec.evaluation.metrics.StateSize;
+import tudo.streamingrec.evaluation.metrics.Throughput;
+import tudo.streamingrec.util.HeapSize;
+import tudo.streamingrec.util.LatencyHistogram;
+import tudo.streamingrec.util.ResourceCounter;
 import tudo.streamingrec.util.Util;
 
 /**
@@ -48,6 +74,48 @@ public class AlgorithmWrapper extends Thread {
 	private List<ClickData> trainTransactions;
 	//a queue of work packages (items and clicks) for the testing phase
 	private List<WorkPackage> eventQueue;
+	//alternatively, a ring buffer through which work packages are received in lockstep with other algorithms
+	private WorkPackageRingBuffer ringBuffer;
+	//the index of this algorithm as a consumer of the ring buffer
+	private int consumerIndex;
+	//the runtime of the training phase, of the test phase, and of the training in between
+	private StopWatch trainTime = new StopWatch();
+	private StopWatch testTime = new StopWatch();
+	private StopWatch inBetweenTrainTime = new StopWatch();
+	//the runtimes before the last checkpoint (in case of a resumed run)
+	private long trainTimeOffset = 0;
+	private long testTimeOffset = 0;
+	private long inBetweenTrainTimeOffset = 0;
+	//the latencies, resource usages, and state sizes measured so far
+	private Measurements measurements = new Measurements();
+	//are the allocations and CPU times measured? (only if a metric reports them)
+	private boolean measureResources = false;
+	//how often the state size is sampled during the test phase (0 = never) and at which event next
+	private int stateSizeSamples = 0;
+	private int nextStateSample = 0;
+	//the maximum length of the recommendation lists (the largest k of all metrics)
+	private int recommendationLimit = Integer.MAX_VALUE;
+	//evaluates the metrics inline (shares the hits of each recommendation list between the metrics)
+	private MetricEvaluator metricEvaluator = null;
+	//the stage that evaluates the metrics on a separate thread (null = inline evaluation)
+	private MetricPipeline metricPipeline = null;
+	//the number of test clicks that were not sampled for evaluation (only trained)
+	private int skippedClicks = 0;
+	//the name of the algorithm (kept for reporting after the algorithm has been released)
+	private String algorithmName;
+	//the name of the parameter sweep the algorithm belongs to (null = not part of a sweep)
+	private String sweepName;
+	//when and on which thread this algorithm was executed (for scheduling reports)
+	//(with successive halving, an algorithm is executed once per rung, possibly on different threads)
+	private final List<Execution> executions = new ObjectArrayList<>();
+	//the position in the test phase (kept while the algorithm is suspended by the successive halving)
+	private int cursor = 0;
+	private int nextPercentage = 0;
+	private int nextCheckpoint = 0;
+	//the successive halving schedule (null = disabled)
+	private SuccessiveHalving successiveHalving = null;
+	//is the algorithm waiting for the decision of the successive halving?
+	private boolean suspended = false;
 
 	/**
 	 * creates an algorithm wrapped in a thread
@@ -67,76 +135,350 @@ public class AlgorithmWrapper extends Thread {
 		this.trainItems = trainItems;
 		this.trainTransactions = trainTransactions;
 		this.eventQueue = eventQueue;
+		this.algorithmName = testee.getName();
+		this.sweepName = testee.getSweepName();
+	}
+
+	/**
+	 * creates an algorithm wrapped in a thread that receives its test phase
+	 * work packages through a ring buffer that is shared with other algorithms
+	 * 
+	 * @param testee
+	 *            the algorithm to be tested
+	 * @param metrics
+	 *            its associated metrics
+	 * @param trainItems -
+	 * @param trainTransactions -
+	 * @param ringBuffer the shared ring buffer
+	 * @param consumerIndex the index of this algorithm as a consumer of the ring buffer
+	 */
+	public AlgorithmWrapper(Algorithm testee, List<Metric> metrics, List<Item> trainItems,
+			List<ClickData> trainTransactions, WorkPackageRingBuffer ringBuffer, int consumerIndex) {
+		this.testee = testee;
+		this.metrics = metrics;
+		this.trainItems = trainItems;
+		this.trainTransactions = trainTransactions;
+		this.ringBuffer = ringBuffer;
+		this.consumerIndex = consumerIndex;
+		this.algorithmName = testee.getName();
+		this.sweepName = testee.getSweepName();
 	}
 
-	@SuppressWarnings("unchecked")
 	public void run() {
-		//keep the runtime
-		StopWatch trainTime = new StopWatch();
-		StopWatch testTime = new StopWatch();
-		StopWatch inBetweenTrainTime = new StopWatch();
-		trainTime.start();
-		// first, we train
-		testee.train(trainItems, trainTransactions);
-		trainItems = null;
-		trainTransactions = null;
-		trainTime.stop();
-		testTime.start();
-		inBetweenTrainTime.start();
-		inBetweenTrainTime.suspend();
+		Execution execution = new Execution(algorithmName, Thread.currentThread().getName(), System.currentTimeMillis());
+		try {
+			evaluate();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			execution.finishedAt = System.currentTimeMillis();
+			synchronized (executions) {
+				executions.add(execution);
+			}
+			//stop the metric worker (it is restarted when a suspended algorithm continues)
+			if (metricPipeline != null) {
+				metricPipeline.shutdown();
+				metricPipeline = null;
+			}
+			//make sure the producer does not wait for this algorithm anymore
+			if (ringBuffer != null) {
+				ringBuffer.detach(consumerIndex);
+				ringBuffer = null;
+			}
+		}
+	}
 
-		//next, we start the test phase
-		int nextPercentage = 0;
-		for (int i = 0; i < eventQueue.size(); i++) {
-			// calculate the current progress regularly
-			int percentage = (int) ((1d * (i + 1) / eventQueue.size()) * 100);
-			if (percentage == nextPercentage) {
-				nextPercentage++;
-				//report the progress internally if a new percentage is reached
-				progress(percentage);
+	/**
+	 * The name of the wrapped algorithm
+	 * @return the name
+	 */
+	public String getAlgorithmName() {
+		return algorithmName;
+	}
+
+	/**
+	 * The name of the parameter sweep the wrapped algorithm belongs to
+	 * @return the name (null if the algorithm is not part of a sweep)
+	 */
+	public String getSweepName() {
+		return sweepName;
+	}
+
+	/**
+	 * The executions of this algorithm (one per call of {@link #run()}, i.e.,
+	 * more than one if the algorithm was suspended by the successive halving)
+	 * @return the executions in chronological order
+	 */
+	public List<Execution> getExecutions() {
+		synchronized (executions) {
+			return new ObjectArrayList<>(executions);
+		}
+	}
+
+	/**
+	 * The wall-clock duration of all executions
+	 * @return the duration in milliseconds
+	 */
+	public long getDuration() {
+		long duration = 0;
+		for (Execution execution : getExecutions()) {
+			duration += execution.getDuration();
+		}
+		return duration;
+	}
+
+	/**
+	 * Attaches a successive halving schedule, i.e., the algorithm suspends itself (returns from
+	 * {@link #run()}) at every rung of the schedule and continues when {@link #run()} is called again.
+	 * @param successiveHalving -
+	 */
+	void setSuccessiveHalving(SuccessiveHalving successiveHalving) {
+		this.successiveHalving = successiveHalving;
+	}
+
+	/**
+	 * Is the algorithm suspended at a rung of the successive halving schedule?
+	 * @return true if the test phase is not finished yet
+	 */
+	boolean isSuspended() {
+		return suspended;
+	}
+
+	/**
+	 * The current result of one of the algorithm's metrics
+	 * @param metricName -
+	 * @return the result (or NaN if the algorithm has no metric with this name)
+	 */
+	double getMetricResult(String metricName) {
+		for (Metric metric : metrics) {
+			if (metric.getName().equals(metricName)) {
+				return metric.getResults();
 			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Stops a suspended algorithm for good (pruned by the successive halving).
+	 * No results are written for it.
+	 */
+	void prune() {
+		suspended = false;
+		//the remaining events are skipped
+		for (; nextPercentage <= 100; nextPercentage++) {
+			progress(nextPercentage);
+		}
+		//cleanup to save RAM
+		testee = null;
+		eventQueue = null;
+	}
+
+	/**
+	 * Trains the algorithm (or restores it from its checkpoint)
+	 * @param nbOfEvents the number of events in the test phase
+	 * @return false if the algorithm was already finished according to its checkpoint
+	 */
+	private boolean train(int nbOfEvents) {
+		Checkpoint checkpoint = resume ? readCheckpoint(nbOfEvents) : null;
+		if (checkpoint != null) {
+			//continue from the checkpoint instead of training from scratch
+			trainItems = null;
+			trainTransactions = null;
+			cursor = checkpoint.cursor;
+			//replace the metrics in place, so that the caller sees the restored instances
+			metrics.clear();
+			metrics.addAll(checkpoint.metrics);
+			if (checkpoint.algorithm == null) {
+				//this algorithm was already finished and its results were already written
+				for (int p = 0; p <= 100; p++) {
+					progress(p);
+				}
+				return false;
+			}
+			testee = checkpoint.algorithm;
+			trainTimeOffset = checkpoint.trainTime;
+			testTimeOffset = checkpoint.testTime;
+			inBetweenTrainTimeOffset = checkpoint.inBetweenTrainTime;
+			skippedClicks = checkpoint.skippedClicks;
+			if (checkpoint.measurements != null) {
+				measurements = checkpoint.measurements;
+			}
+			System.out.println("Resuming " + testee.getName() + " at event " + cursor + " of " + nbOfEvents);
+		} else {
+			trainTime.start();
+			// first, we train
+			callTrain(trainItems, trainTransactions, null, measurements.initialTrainResources);
+			trainItems = null;
+			trainTransactions = null;
+			trainTime.stop();
+		}
+		return true;
+	}
+
+	/**
+	 * Trains the algorithm, replays the test phase, and writes the results.
+	 * With successive halving, the method returns at each rung and
+	 * continues where it stopped when it is called again.
+	 * @throws InterruptedException -
+	 */
+	private void evaluate() throws InterruptedException {
+		int nbOfEvents = ringBuffer != null ? ringBuffer.size() : eventQueue.size();
+		//the allocations and CPU times are only measured if a metric reports them
+		measureResources = false;
+		//the state size is only sampled if a metric reports it (as often as the metric with the most samples requires)
+		stateSizeSamples = 0;
+		for (Metric metric : metrics) {
+			measureResources |= metric instanceof ResourceUsage;
+			if (metric instanceof StateSize) {
+				stateSizeSamples = Math.max(stateSizeSamples, Math.max(1, ((StateSize) metric).getSamples()));
+			}
+		}
+		if (suspended) {
+			//continue after the decision of the successive halving
+			suspended = false;
+			testTime.resume();
+		} else {
+			if (!train(nbOfEvents)) {
+				return;
+			}
+			testTime.start();
+			inBetweenTrainTime.start();
+			inBetweenTrainTime.suspend();
+			nextCheckpoint = cursor + checkpointInterval;
+		}
+		nextStateSample = getNextStateSample(cursor, nbOfEvents);
+		//the metrics do not look further than their largest k
+		recommendationLimit = getRecommendationLimit(metrics);
+		metricEvaluator = new MetricEvaluator(metrics);
+		if (metricPipelineSize > 0) {
+			metricPipeline = new MetricPipeline(algorithmName, metrics, metricPipelineSize);
+		}
+		//where the algorithm has to stop (the next rung of the successive halving or the end)
+		int stop = successiveHalving != null ? successiveHalving.getNextStop(this) : nbOfEvents;
+
+		//next, we start the test phase
+		int i = cursor;
+		while (i < nbOfEvents) {
 			// take one work package
-			WorkPackage wp = eventQueue.get(i);
-			if (wp instanceof WorkPackageArticle) {
+			WorkPackage wp = getWorkPackage(i);
+			int processed = 1;
+			if (frozenWindowPool != null && wp instanceof WorkPackageClick
+					&& !testee.wouldTrain(((WorkPackageClick) wp).clickData.click)) {
+				//the model is frozen (batch training) -> collect all work packages 
+				//up until the next click that triggers the training
+				//(in lockstep mode, the window has to fit into the ring buffer, whose slots it keeps occupied)
+				int maxWindowSize = ringBuffer != null ? Math.min(MAX_WINDOW_SIZE, ringBuffer.capacity()) : MAX_WINDOW_SIZE;
+				List<WorkPackage> window = new ObjectArrayList<>();
+				window.add(wp);
+				while (i + window.size() < stop && window.size() < maxWindowSize) {
+					WorkPackage next = getWorkPackage(i + window.size(), i);
+					window.add(next);
+					if (next instanceof WorkPackageClick && testee.wouldTrain(((WorkPackageClick) next).clickData.click)) {
+						//the recommendation for this click is still based on the frozen model
+						break;
+					}
+				}
+				replayFrozenWindow(window);
+				processed = window.size();
+			} else if (wp instanceof WorkPackageArticle) {
 				//in case of article -> send to train method
-				Item articleEvent = ((WorkPackageArticle) wp).articleEvent;
-				// notify the algorithm about new articles
-				testTime.suspend();
-				inBetweenTrainTime.resume();
-				testee.train(Collections.singletonList(articleEvent), Collections.EMPTY_LIST);
-				inBetweenTrainTime.suspend();
-				testTime.resume();
+				trainArticle((WorkPackageArticle) wp);
 			} else {
 				//in case of click, generate recommendation list and then send to train method
 				WorkPackageClick wpC = (WorkPackageClick) wp;
-				//generate recommendations here
-				LongArrayList recommendations = testee.recommend(wpC.clickData);
+				//generate recommendations here (unless the click is not part of the sample)
+				LongArrayList recommendations = wpC.sampled ? recommend(wpC.clickData) : null;
+				trainAndEvaluateClick(wpC, recommendations);
+			}
+			i += processed;
+			// calculate the current progress regularly
+			int percentage = (int) ((1d * i / nbOfEvents) * 100);
+			while (percentage >= nextPercentage) {
+				//report the progress internally if a new percentage is reached
+				progress(nextPercentage);
+				nextPercentage++;
+			}
+			if (i >= nextStateSample) {
+				//the measurement does not count towards the test time
 				testTime.suspend();
-				inBetweenTrainTime.resume();
-				testee.train(Collections.EMPTY_LIST, Collections.singletonList(wpC.clickData));
-				inBetweenTrainTime.suspend();
+				measurements.sampleStateSize(testee);
 				testTime.resume();
-				//evaluate metrics
-				for (Metric m : metrics) {
-					try {
-						m.evaluate(wpC.clickData.click, recommendations, wpC.groundTruth);
-					} catch (Exception ex) {
-						throw new RuntimeException(testee.getName() + ": " + ex.getMessage());
-					}
-				}
+				nextStateSample = getNextStateSample(i, nbOfEvents);
+			}
+			if (checkpointInterval > 0 && i >= nextCheckpoint && i < nbOfEvents) {
+				//the snapshot does not count towards the test time
+				testTime.suspend();
+				flushMetrics();
+				writeCheckpoint(new Checkpoint(i, nbOfEvents, testee, metrics, trainTime.getTime() + trainTimeOffset,
+						testTime.getTime() + testTimeOffset, inBetweenTrainTime.getTime() + inBetweenTrainTimeOffset,
+						skippedClicks, measurements));
+				testTime.resume();
+				nextCheckpoint = i + checkpointInterval;
+			}
+			if (i >= stop && i < nbOfEvents) {
+				//wait for the other variants (successive halving)
+				testTime.suspend();
+				flushMetrics();
+				cursor = i;
+				suspended = true;
+				return;
 			}
 		}
 
-		//test phase is over -> save the runtime results in the special metric instances
+		//test phase is over -> wait for the remaining metric evaluations
+		flushMetrics();
+		//save the runtime results in the special metric instances
 		for (Metric metric : metrics) {
 			if (metric instanceof Runtime) {
 				Runtime rt = (Runtime) metric;
 				if (rt.getType() == Type.Training) {
-					rt.setRuntime(trainTime.getTime());
+					rt.setRuntime(trainTime.getTime() + trainTimeOffset);
 				} else if (rt.getType() == Type.InBetweenTraining) {
-					rt.setRuntime(inBetweenTrainTime.getTime());
+					rt.setRuntime(inBetweenTrainTime.getTime() + inBetweenTrainTimeOffset);
+				} else if (rt.getType() == Type.RecommendLatency) {
+					rt.setRuntime(measurements.recommendLatencies.getPercentile(rt.getPercentile()) / 1000000d);
+				} else if (rt.getType() == Type.TrainLatency) {
+					rt.setRuntime(measurements.trainLatencies.getPercentile(rt.getPercentile()) / 1000000d);
 				} else {
-					rt.setRuntime(testTime.getTime() * 1d / eventQueue.size());
+					//clicks that were only trained do not count as evaluated events
+					rt.setRuntime((testTime.getTime() + testTimeOffset) * 1d / Math.max(1, nbOfEvents - skippedClicks));
+				}
+			} else if (metric instanceof ResourceUsage) {
+				ResourceUsage usage = (ResourceUsage) metric;
+				ResourceCounter total = new ResourceCounter();
+				total.add(measurements.initialTrainResources);
+				total.add(measurements.trainResources);
+				total.add(measurements.recommendResources);
+				switch (usage.getType()) {
+				case RecommendAllocation:
+					usage.setValue(measurements.recommendResources.getAllocatedBytesPerCall());
+					break;
+				case TrainAllocation:
+					usage.setValue(measurements.trainResources.getAllocatedBytesPerCall());
+					break;
+				case CpuTime:
+					usage.setValue(total.getCpuNanos() / 1000000d);
+					break;
+				default:
+					usage.setValue(total.getCpuNanos() / Math.max(1, total.getWallNanos()));
+					break;
+				}
+			} else if (metric instanceof Throughput) {
+				//every event of the test phase is sent to the train method once
+				long nanos = measurements.recommendLatencies.getTotal() + measurements.trainLatencies.getTotal();
+				((Throughput) metric).setThroughput(measurements.trainLatencies.getCount() / (Math.max(1, nanos) / 1000000000d));
+			} else if (metric instanceof StateSize) {
+				StateSize size = (StateSize) metric;
+				switch (size.getType()) {
+				case Mean:
+					size.setStateSize(measurements.stateSizes.getMean());
+					break;
+				case Max:
+					size.setStateSize(measurements.stateSizes.getMax());
+					break;
+				default:
+					size.setStateSize(measurements.lastStateSize);
+					break;
 				}
 			}
 		}
@@ -144,12 +486,281 @@ public class AlgorithmWrapper extends Thread {
 		//all work is done -> write the results to the tmp result file
 		//the Runner will retrieve the results via references to the metrics
 		writeResult(testee.getName(), metrics);
+		if (measureStateSize) {
+			//the model only grows during the test phase -> measure at the end
+			//(the StateSize metric already took its last sample at the end)
+			testTime.suspend();
+			writeStateSize(testee.getName(),
+					measurements.lastStateSize >= 0 ? measurements.lastStateSize : HeapSize.estimate(testee));
+		}
+		if (checkpointInterval > 0) {
+			//mark the algorithm as finished (the model is not needed anymore)
+			writeCheckpoint(new Checkpoint(nbOfEvents, nbOfEvents, null, metrics, 0, 0, 0, 0, null));
+		}
 		//cleanup to save RAM
 		testee = null;
 		metrics = null;
+		metricEvaluator = null;
 		eventQueue = null;
 	}
-	
+
+	/**
+	 * Waits until the metric pipeline (if any) has evaluated all recommendation lists,
+	 * so that the metric results are complete
+	 * @throws InterruptedException -
+	 */
+	private void flushMetrics() throws InterruptedException {
+		if (metricPipeline != null) {
+			metricPipeline.flush();
+		}
+	}
+
+	/**
+	 * Determines how many recommendations the metrics look at, i.e., the largest k
+	 * @param metrics -
+	 * @return the maximum length of the recommendation lists
+	 */
+	static int getRecommendationLimit(List<Metric> metrics) {
+		int limit = 0;
+		for (Metric metric : metrics) {
+			//runtimes and other measurements do not look at the recommendations
+			if (metric.isBasedOnRecommendations()) {
+				limit = Math.max(limit, metric.getK());
+			}
+		}
+		//no metric looks at the recommendations -> nothing to cut off
+		return limit > 0 ? limit : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Determines the event after which the state size is sampled next
+	 * (evenly spread over the test phase, the last sample is taken at the end)
+	 * @param i the number of events processed so far
+	 * @param nbOfEvents the number of events in the test phase
+	 * @return the index (Integer.MAX_VALUE = no more samples)
+	 */
+	private int getNextStateSample(int i, int nbOfEvents) {
+		if (stateSizeSamples == 0 || i >= nbOfEvents) {
+			return Integer.MAX_VALUE;
+		}
+		int interval = Math.max(1, nbOfEvents / stateSizeSamples);
+		return Math.min(nbOfEvents, (i / interval + 1) * interval);
+	}
+
+	/**
+	 * Returns the work package with the given index, either from the
+	 * pre-created list or from the ring buffer.
+	 * @param index -
+	 * @return the work package
+	 * @throws InterruptedException -
+	 */
+	private WorkPackage getWorkPackage(int index) throws InterruptedException {
+		return getWorkPackage(index, index);
+	}
+
+	/**
+	 * Returns the work package with the given index, either from the
+	 * pre-created list or from the ring buffer. In lockstep mode, the work packages
+	 * from the given index on are kept in the ring buffer.
+	 * @param index -
+	 * @param firstInUse the index of the first work package that is still needed
+	 * @return the work package
+	 * @throws InterruptedException -
+	 */
+	private WorkPackage getWorkPackage(int index, int firstInUse) throws InterruptedException {
+		return ringBuffer != null ? ringBuffer.take(consumerIndex, index, firstInUse) : eventQueue.get(index);
+	}
+
+	/**
+	 * Generates the recommendations for a click and records the latency
+	 * (safe for concurrent calls if the algorithm's recommend method is)
+	 * @param clickData -
+	 * @return the recommendations
+	 */
+	private LongArrayList recommend(ClickData clickData) {
+		long cpuTime = measureResources ? ResourceCounter.getCurrentThreadCpuTime() : 0;
+		long allocatedBytes = measureResources ? ResourceCounter.getCurrentThreadAllocatedBytes() : 0;
+		long start = System.nanoTime();
+		LongArrayList recommendations = testee.recommend(clickData, recommendationLimit);
+		long latency = System.nanoTime() - start;
+		measurements.recommendLatencies.record(latency);
+		if (measureResources) {
+			measurements.recommendResources.add(ResourceCounter.getCurrentThreadAllocatedBytes() - allocatedBytes,
+					ResourceCounter.getCurrentThreadCpuTime() - cpuTime, latency);
+		}
+		return recommendations;
+	}
+
+	/**
+	 * Sends events to the train method and records the latency and the resource usage
+	 * @param items -
+	 * @param clicks -
+	 * @param latencies the histogram for the latency (null = not recorded)
+	 * @param resources the counter for the resource usage (only used if it is measured)
+	 */
+	private void callTrain(List<Item> items, List<ClickData> clicks, LatencyHistogram latencies,
+			ResourceCounter resources) {
+		long cpuTime = measureResources ? ResourceCounter.getCurrentThreadCpuTime() : 0;
+		long allocatedBytes = measureResources ? ResourceCounter.getCurrentThreadAllocatedBytes() : 0;
+		long start = System.nanoTime();
+		testee.train(items, clicks);
+		long latency = System.nanoTime() - start;
+		if (latencies != null) {
+			latencies.record(latency);
+		}
+		if (measureResources) {
+			resources.add(ResourceCounter.getCurrentThreadAllocatedBytes() - allocatedBytes,
+					ResourceCounter.getCurrentThreadCpuTime() - cpuTime, latency);
+		}
+	}
+
+	/**
+	 * Notifies the algorithm about a new article
+	 * @param wpA -
+	 */
+	@SuppressWarnings("unchecked")
+	private void trainArticle(WorkPackageArticle wpA) {
+		// notify the algorithm about new articles
+		testTime.suspend();
+		inBetweenTrainTime.resume();
+		callTrain(Collections.singletonList(wpA.articleEvent), Collections.EMPTY_LIST, measurements.trainLatencies, measurements.trainResources);
+		inBetweenTrainTime.suspend();
+		testTime.resume();
+	}
+
+	/**
+	 * Sends a click to the train method and evaluates the recommendations
+	 * that were generated for this click
+	 * @param wpC -
+	 * @param recommendations null if the click is not part of the evaluation sample
+	 */
+	@SuppressWarnings("unchecked")
+	private void trainAndEvaluateClick(WorkPackageClick wpC, LongArrayList recommendations)
+			throws InterruptedException {
+		testTime.suspend();
+		inBetweenTrainTime.resume();
+		callTrain(Collections.EMPTY_LIST, Collections.singletonList(wpC.clickData), measurements.trainLatencies,
+				measurements.trainResources);
+		inBetweenTrainTime.suspend();
+		testTime.resume();
+		if (recommendations == null) {
+			//not sampled -> nothing to evaluate
+			skippedClicks++;
+			return;
+		}
+		if (metricPipeline != null) {
+			//the metrics are evaluated by the pipeline's worker thread
+			metricPipeline.submit(wpC.clickData.click, recommendations, wpC.groundTruth);
+			return;
+		}
+		//evaluate metrics
+		try {
+			metricEvaluator.evaluate(wpC.clickData.click, recommendations, wpC.groundTruth);
+		} catch (Exception ex) {
+			throw new RuntimeException(testee.getName() + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Replays a window of work packages during which the model of a batch-trained algorithm
+	 * does not change. Since the model is frozen, the recommendations for all clicks in
+	 * the window are generated concurrently by the worker pool. Afterwards, the events
+	 * are sent to the train method (which only buffers them, except for the last click)
+	 * and the metrics are evaluated in the original order.
+	 * @param window -
+	 * @throws InterruptedException -
+	 */
+	private void replayFrozenWindow(List<WorkPackage> window) throws InterruptedException {
+		LongArrayList[] recommendations = new LongArrayList[window.size()];
+		// split the window in chunks, so that each worker thread gets a few
+		int chunkSize = Math.max(1, window.size() / (frozenWindowThreads * 4));
+		List<Callable<Void>> tasks = new ObjectArrayList<>();
+		for (int from = 0; from < window.size(); from += chunkSize) {
+			int start = from;
+			int end = Math.min(from + chunkSize, window.size());
+			tasks.add(() -> {
+				for (int j = start; j < end; j++) {
+					if (window.get(j) instanceof WorkPackageClick && ((WorkPackageClick) window.get(j)).sampled) {
+						recommendations[j] = recommend(((WorkPackageClick) window.get(j)).clickData);
+					}
+				}
+				return null;
+			});
+		}
+		for (Future<Void> future : frozenWindowPool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException(testee.getName() + ": " + e.getCause().getMessage(), e.getCause());
+			}
+		}
+		//train and evaluate in the original order
+		for (int j = 0; j < window.size(); j++) {
+			if (window.get(j) instanceof WorkPackageArticle) {
+				trainArticle((WorkPackageArticle) window.get(j));
+			} else {
+				trainAndEvaluateClick((WorkPackageClick) window.get(j), recommendations[j]);
+			}
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the algorithm, its metrics, and the event cursor to the checkpoint file
+	 * of this algorithm. The snapshot is first written to a temporary file, which then replaces
+	 * the previous checkpoint, so that a crash during writing does not destroy the last checkpoint.
+	 * If the algorithm cannot be serialized, checkpointing is disabled for it.
+	 * @param checkpoint -
+	 */
+	private void writeCheckpoint(Checkpoint checkpoint) {
+		if (!checkpointsSupported) {
+			return;
+		}
+		File file = getCheckpointFile(testee.getName());
+		File tmpFile = new File(file.getPath() + ".tmp");
+		file.getParentFile().mkdirs();
+		try (ObjectOutputStream o = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			o.writeObject(checkpoint);
+		} catch (NotSerializableException e) {
+			System.err.println("Checkpoints are not supported by " + testee.getName() + ". Class "
+					+ e.getMessage() + " is not serializable.");
+			checkpointsSupported = false;
+			tmpFile.delete();
+			return;
+		} catch (IOException e) {
+			//a failed checkpoint should not abort the evaluation
+			e.printStackTrace();
+			return;
+		}
+		try {
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads the last checkpoint of this algorithm (if there is one)
+	 * @param nbOfEvents the number of events in the test phase (for validation)
+	 * @return the checkpoint or null if there is none
+	 */
+	private Checkpoint readCheckpoint(int nbOfEvents) {
+		File file = getCheckpointFile(testee.getName());
+		if (!file.exists()) {
+			return null;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			Checkpoint checkpoint = (Checkpoint) in.readObject();
+			if (checkpoint.nbOfEvents != nbOfEvents) {
+				throw new IllegalStateException("The checkpoint of " + testee.getName()
+						+ " does not match the test data. Were the same parameters used?");
+			}
+			return checkpoint;
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException("Could not read the checkpoint of " + testee.getName(), e);
+		}
+	}
+
 	//------------------------------------------------------------
 	// Static methods for progress printing and tmp result output
 	//------------------------------------------------------------
@@ -164,28 +775,35 @@ public class AlgorithmWrapper extends Thread {
 	public static final String statPrefix = "stat_results_";
 	private static final String postfix = ".txt";
 	private static final String statPostfix = ".bin";
+	private static final String checkpointFolder = "checkpoints";
+	private static final String spillFolder = "spill";
+	private static final String checkpointPostfix = ".ckpt";
+	public static final String stateSizePrefix = "state_sizes_";
 
 	/**
-	 * Writes the results of an algorithm to the tmp result file
-	 * and to detailed result files in case of t-testable metrics.
+	 * Writes the state size of an algorithm to the state size file of this run,
+	 * so that later runs can use it for admission control (see {@link AlgorithmScheduler}).
 	 * @param name -
-	 * @param metrics -
+	 * @param stateSize the estimated size in bytes (see {@link HeapSize})
 	 */
-	private static void writeResult(String name, List<Metric> metrics) {
-		//intialize the output format
-		DecimalFormat df = new DecimalFormat("0.0000000");
-		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-		//create the metric result line for this algorithm
-		StringBuilder outputString = new StringBuilder();
-		outputString.append(name);
-		outputString.append(";");
-		for (Metric metric : metrics) {
-			outputString.append(metric.getName());
-			outputString.append(";");
-			outputString.append(df.format(metric.getResults()));
-			outputString.append(";");
+	private static void writeStateSize(String name, long stateSize) {
+		synchronized (outputSync) {
+			new File(folder + "/" + StreamingRec.startTime).mkdirs();
+			try (PrintWriter output = new PrintWriter(new FileWriter(
+					folder + "/" + StreamingRec.startTime + "/" + stateSizePrefix + StreamingRec.startTime + postfix, true))) {
+				output.println(name + ";" + stateSize);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		}
-		//write synchronized
+	}
+
+	/**
+	 * Appends a result line (name;metric;value;...) to the tmp result file of this run.
+	 * If the file does not exist yet, a header with the parameters is written first.
+	 * @param line -
+	 */
+	static void writeResultLine(String line) {
 		synchronized (outputSync) {
 			//if the file does not exist, create folders and filename
 			if (fileName == null) {
@@ -193,14 +811,13 @@ public class AlgorithmWrapper extends Thread {
 				fileName = folder +"/"+StreamingRec.startTime + "/" + prefix + StreamingRec.startTime + postfix;
 				
 			}
-			try {
-				//decide if a header is needed
-				boolean printHeader = false;
-				if (!new File(fileName).exists()) {
-					printHeader = true;
-				}
-				//create writer
-				PrintWriter output = new PrintWriter(new FileWriter(fileName, true));				
+			//decide if a header is needed
+			boolean printHeader = false;
+			if (!new File(fileName).exists()) {
+				printHeader = true;
+			}
+			//create writer
+			try (PrintWriter output = new PrintWriter(new FileWriter(fileName, true))) {
 				if (printHeader) {
 					//print a header
 					output.println("#Input files: \"" + StreamingRec.getInputFilenameItems() + "\" & \""
@@ -214,21 +831,49 @@ public class AlgorithmWrapper extends Thread {
 					output.println("#Split threshold: " + StreamingRec.getSplitThreshold());
 					output.println("#");
 				}
-				//write the previously created result line
-				output.println(outputString.toString());
-				//flush and close the writer
-				output.flush();
-				output.close();
+				//write the result line
+				output.println(line);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
 
+	/**
+	 * Writes the results of an algorithm to the tmp result file
+	 * and to detailed result files in case of t-testable metrics.
+	 * @param name -
+	 * @param metrics -
+	 */
+	private static void writeResult(String name, List<Metric> metrics) {
+		//intialize the output format
+		DecimalFormat df = new DecimalFormat("0.0000000");
+		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		//create the metric result line for this algorithm
+		StringBuilder outputString = new StringBuilder();
+		outputString.append(name);
+		outputString.append(";");
+		for (Metric metric : metrics) {
+			outputString.append(metric.getName());
+			outputString.append(";");
+			outputString.append(df.format(metric.getResults()));
+			outputString.append(";");
+		}
+		//write synchronized
+		synchronized (outputSync) {
+			writeResultLine(outputString.toString());
+			try {
 				//print detailed stats for t-test
-				try (FileOutputStream f = new FileOutputStream(new File(folder + "/"+StreamingRec.startTime  + "/" + statPrefix + StreamingRec.startTime  + URLEncoder.encode(name, "UTF-8") + statPostfix), true);
-					//use java defaut binary serialization to save HDD space
-					ObjectOutputStream o =new ObjectOutputStream(f)){
-					// Write objects to file
-					for (Metric metric : metrics) {
-						if (metric instanceof HypothesisTestableMetric)
-							o.writeObject((HypothesisTestableMetric) metric);
-					}
+				List<HypothesisTestableMetric> testableMetrics = new ObjectArrayList<>();
+				for (Metric metric : metrics) {
+					if (metric instanceof HypothesisTestableMetric)
+						testableMetrics.add((HypothesisTestableMetric) metric);
+				}
+				//use a columnar binary format that can be read one metric at a time
+				//(unless the per-click results were discarded because of online tests)
+				if (!DetailedResults.isDiscardingValues()) {
+					StatResultsFile.append(new File(folder + "/"+StreamingRec.startTime  + "/" + statPrefix + StreamingRec.startTime  + URLEncoder.encode(name, "UTF-8") + statPostfix),
+							name, testableMetrics);
 				}
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -236,6 +881,107 @@ public class AlgorithmWrapper extends Thread {
 		}
 	}
 
+	//the maximum number of work packages that are replayed concurrently for a frozen model
+	private static final int MAX_WINDOW_SIZE = 10000;
+	//the worker pool for the concurrent replay of frozen models (shared by all algorithms)
+	private static ExecutorService frozenWindowPool = null;
+	//the number of worker threads
+	private static int frozenWindowThreads = 0;
+
+	/**
+	 * Enables the concurrent replay of frozen-model windows for batch-trained algorithms
+	 * (i.e., algorithms with a training interval). In between two batch trainings,
+	 * the recommendations of such algorithms are generated by a worker pool of the given size.
+	 * Algorithms have to support concurrent calls of their recommend method in this case.
+	 * @param threads the number of worker threads (0 = disabled)
+	 */
+	public static void setFrozenWindowThreads(int threads) {
+		if (frozenWindowPool != null) {
+			frozenWindowPool.shutdown();
+			frozenWindowPool = null;
+		}
+		frozenWindowThreads = threads;
+		if (threads > 0) {
+			frozenWindowPool = Executors.newFixedThreadPool(threads, r -> {
+				//do not keep the JVM alive because of the worker threads
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	//the capacity of the queue between an algorithm and its metric worker (0 = inline evaluation)
+	private static int metricPipelineSize = 0;
+
+	/**
+	 * Moves the evaluation of the metrics from the algorithm threads to one worker thread per
+	 * algorithm. The recommendation lists are handed over through a bounded queue of the given size.
+	 * @param size the capacity of the queue (0 = disabled)
+	 */
+	public static void setMetricPipelineSize(int size) {
+		metricPipelineSize = size;
+	}
+
+	/**
+	 * Keeps the detailed results of all metrics on disk (in the output folder of the current run)
+	 * instead of in memory (see {@link DetailedResults}).
+	 * @param spill -
+	 */
+	public static void setSpillResults(boolean spill) {
+		if (!spill) {
+			DetailedResults.setSpillFolder(null);
+			return;
+		}
+		File spillDir = new File(folder + "/" + StreamingRec.startTime + "/" + spillFolder);
+		spillDir.mkdirs();
+		//registered before the spill files -> deleted after them
+		spillDir.deleteOnExit();
+		DetailedResults.setSpillFolder(spillDir);
+	}
+
+	//after how many test events is a checkpoint written? (0 = never)
+	private static int checkpointInterval = 0;
+	//should the algorithms continue from their last checkpoints?
+	private static boolean resume = false;
+	//should the state size of each algorithm be measured at the end of the test phase?
+	private static boolean measureStateSize = false;
+	//can the state of this algorithm be serialized?
+	private boolean checkpointsSupported = true;
+
+	/**
+	 * Configures the checkpoints. Checkpoints are written to the output folder
+	 * of the current run (see {@link StreamingRec#startTime}).
+	 * @param interval the number of test events between two checkpoints (0 = disabled)
+	 * @param resumeFromCheckpoints if true, each algorithm continues from its last checkpoint (if any)
+	 */
+	public static void setCheckpoints(int interval, boolean resumeFromCheckpoints) {
+		checkpointInterval = interval;
+		resume = resumeFromCheckpoints;
+	}
+
+	/**
+	 * Enables the measurement of the state size of each algorithm at the end of the test phase
+	 * @param measure -
+	 */
+	public static void setMeasureStateSize(boolean measure) {
+		measureStateSize = measure;
+	}
+
+	/**
+	 * Returns the checkpoint file of an algorithm
+	 * @param name the name of the algorithm
+	 * @return the file
+	 */
+	private static File getCheckpointFile(String name) {
+		try {
+			return new File(folder + "/" + StreamingRec.startTime + "/" + checkpointFolder + "/"
+					+ URLEncoder.encode(name, "UTF-8") + checkpointPostfix);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	//progress reporting
 	public static int nbOfAlgorithms;
 	//a map of progress counters
@@ -334,7 +1080,152 @@ public class AlgorithmWrapper extends Thread {
 	 */
 	public static class WorkPackageClick extends WorkPackage {
 		public ClickData clickData;
-		public LongOpenHashSet groundTruth;
+		public LongSet groundTruth;
+		//should recommendations be generated and evaluated for this click? (see ClickSampler)
+		public boolean sampled = true;
+	}
+
+	/**
+	 * One execution of an algorithm on a thread (for scheduling reports)
+	 * @author MJ
+	 *
+	 */
+	public static class Execution {
+		private final String algorithmName;
+		private final String threadName;
+		//the timestamps in milliseconds
+		private final long startedAt;
+		private long finishedAt;
+
+		/**
+		 * Creates a started execution
+		 * @param algorithmName -
+		 * @param threadName -
+		 * @param startedAt -
+		 */
+		private Execution(String algorithmName, String threadName, long startedAt) {
+			this.algorithmName = algorithmName;
+			this.threadName = threadName;
+			this.startedAt = startedAt;
+		}
+
+		/**
+		 * The name of the executed algorithm
+		 * @return -
+		 */
+		public String getAlgorithmName() {
+			return algorithmName;
+		}
+
+		/**
+		 * The name of the thread that executed the algorithm
+		 * @return -
+		 */
+		public String getThreadName() {
+			return threadName;
+		}
+
+		/**
+		 * The time at which the execution started
+		 * @return the timestamp in milliseconds
+		 */
+		public long getStartedAt() {
+			return startedAt;
+		}
+
+		/**
+		 * The time at which the execution finished
+		 * @return the timestamp in milliseconds
+		 */
+		public long getFinishedAt() {
+			return finishedAt;
+		}
+
+		/**
+		 * The wall-clock duration of the execution
+		 * @return the duration in milliseconds
+		 */
+		public long getDuration() {
+			return finishedAt - startedAt;
+		}
 	}
 
+	/**
+	 * A snapshot of the state of an algorithm wrapper during the test phase
+	 * @author MJ
+	 *
+	 */
+	private static class Checkpoint implements Serializable {
+		private static final long serialVersionUID = 4180936311786420342L;
+		//the index of the next event to process
+		private final int cursor;
+		//the total number of events (for validation)
+		private final int nbOfEvents;
+		//the algorithm with its current model (null if the algorithm is finished)
+		private final Algorithm algorithm;
+		//the metrics with their results so far
+		private final List<Metric> metrics;
+		//the runtimes so far
+		private final long trainTime;
+		private final long testTime;
+		private final long inBetweenTrainTime;
+		//the number of test clicks that were not sampled so far
+		private final int skippedClicks;
+		//the latencies, resource usages, and state sizes so far
+		private final Measurements measurements;
+
+		/**
+		 * Creates a checkpoint
+		 * @param cursor -
+		 * @param nbOfEvents -
+		 * @param algorithm -
+		 * @param metrics -
+		 * @param trainTime -
+		 * @param testTime -
+		 * @param inBetweenTrainTime -
+		 * @param skippedClicks -
+		 * @param measurements -
+		 */
+		private Checkpoint(int cursor, int nbOfEvents, Algorithm algorithm, List<Metric> metrics, long trainTime,
+				long testTime, long inBetweenTrainTime, int skippedClicks, Measurements measurements) {
+			this.cursor = cursor;
+			this.nbOfEvents = nbOfEvents;
+			this.algorithm = algorithm;
+			this.metrics = new ObjectArrayList<>(metrics);
+			this.trainTime = trainTime;
+			this.testTime = testTime;
+			this.inBetweenTrainTime = inBetweenTrainTime;
+			this.skippedClicks = skippedClicks;
+			this.measurements = measurements;
+		}
+	}
+
+	/**
+	 * The measurements of an algorithm during the test phase that are not based on the
+	 * recommendation lists (latencies, resource usages, and state sizes)
+	 * @author MJ
+	 *
+	 */
+	private static class Measurements implements Serializable {
+		private static final long serialVersionUID = -2296467409617312453L;
+		//the latencies of the single recommend and train calls of the test phase
+		private final LatencyHistogram recommendLatencies = new LatencyHistogram();
+		private final LatencyHistogram trainLatencies = new LatencyHistogram();
+		//the allocations and CPU times of the initial training, of the train calls, and of the recommend calls
+		private final ResourceCounter initialTrainResources = new ResourceCounter();
+		private final ResourceCounter trainResources = new ResourceCounter();
+		private final ResourceCounter recommendResources = new ResourceCounter();
+		//the sampled state sizes (in bytes) and the last sample (-1 = not sampled yet)
+		private final SummaryStatistics stateSizes = new SummaryStatistics();
+		private long lastStateSize = -1;
+
+		/**
+		 * Measures the current state size of an algorithm
+		 * @param algorithm -
+		 */
+		private void sampleStateSize(Algorithm algorithm) {
+			lastStateSize = HeapSize.estimate(algorithm);
+			stateSizes.addValue(lastStateSize);
+		}
+	}
 }
@@ -2,17 +2,29 @@ package tudo.streamingrec;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import tudo.streamingrec.algorithms.Algorithm;
 import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.evaluation.metrics.RankCurve;
 
 /**
  * Instantiates Algorithm and Metric objects from a json configuration via jackson 
@@ -21,8 +33,14 @@ import tudo.streamingrec.evaluation.metrics.Metric;
  */
 public class Config {
 	
+	//the property of an algorithm's JSON object that declares the swept parameters
+	private static final String SWEEP_PROPERTY = "sweep";
+	//the property in which each variant of a sweep records the name of its sweep
+	private static final String SWEEP_NAME_PROPERTY = "sweepName";
+
 	/**
-	 * Automatically create a list of {@link Algorithm} objects based on a JSON configuration file
+	 * Automatically create a list of {@link Algorithm} objects based on a JSON configuration file.
+	 * Algorithms with parameter sweeps are expanded (see {@link #loadAlgorithmConfigs(String)}).
 	 * @param filename the name of the JSON config file
 	 * @return a list of Algorithm objects
 	 * @throws JsonParseException -
@@ -31,13 +49,17 @@ public class Config {
 	 */
 	public static List<Algorithm> loadAlgorithms(String filename) throws JsonParseException, JsonMappingException, IOException{
 		//let jackson create and configure the Algorithm objects
-		JsonFactory factory = new JsonFactory();
-		factory.enable(JsonParser.Feature.ALLOW_COMMENTS);
-		return new ObjectMapper(factory).readValue(new File(filename), new TypeReference<List<Algorithm>>(){});
+		ObjectMapper mapper = new ObjectMapper();
+		List<Algorithm> algorithms = new ObjectArrayList<>();
+		for (JsonNode node : loadExpandedAlgorithmConfigs(filename)) {
+			algorithms.add(mapper.treeToValue(node, Algorithm.class));
+		}
+		return algorithms;
 	}
 
 	/**
-	 * Automatically create a list of {@link Metric} objects based on a JSON configuration file
+	 * Automatically create a list of {@link Metric} objects based on a JSON configuration file.
+	 * Curves with multiple cutoffs are replaced by one metric per type and cutoff (see {@link RankCurve#getMetrics()}).
 	 * @param filename the name of the JSON config file
 	 * @return a list of Metric objects
 	 * @throws JsonParseException -
@@ -48,6 +70,150 @@ public class Config {
 		//let jackson create and configure the Metric objects
 		JsonFactory factory = new JsonFactory();
 		factory.enable(JsonParser.Feature.ALLOW_COMMENTS);
-		return new ObjectMapper(factory).readValue(new File(filename), new TypeReference<List<Metric>>(){});
+		List<Metric> configured = new ObjectMapper(factory).readValue(new File(filename), new TypeReference<List<Metric>>(){});
+		List<Metric> metrics = new ObjectArrayList<>();
+		for (Metric metric : configured) {
+			if (metric instanceof RankCurve) {
+				metrics.addAll(((RankCurve) metric).getMetrics());
+			} else {
+				metrics.add(metric);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Reads the JSON objects of an algorithm configuration file without creating the algorithms
+	 * (e.g., to distribute the algorithms over multiple config files).
+	 * <p>
+	 * An algorithm's JSON object may declare parameter sweeps in a "sweep" object. Each entry maps
+	 * a parameter to an array of values or to a range object ({"from": 10, "to": 50, "step": 10}).
+	 * Such an algorithm is expanded into one variant per combination of values (the cartesian product),
+	 * named "name [param=value, ...]". This way, all variants are evaluated in one run on the same data.
+	 * Each variant records the name of its sweep in the "sweepName" property (see {@link Algorithm#getSweepName()}).
+	 * @param filename the name of the JSON config file
+	 * @return the JSON object of each algorithm by name (in config order)
+	 * @throws IOException -
+	 */
+	public static Map<String, JsonNode> loadAlgorithmConfigs(String filename) throws IOException{
+		Map<String, JsonNode> configs = new Object2ObjectLinkedOpenHashMap<>();
+		for (ObjectNode node : loadExpandedAlgorithmConfigs(filename)) {
+			configs.put(node.get("name").asText(), node);
+		}
+		return configs;
+	}
+
+	/**
+	 * Reads the JSON objects of an algorithm configuration file and expands the parameter sweeps
+	 * @param filename the name of the JSON config file
+	 * @return the JSON objects of the algorithms (in config order)
+	 * @throws IOException -
+	 */
+	private static List<ObjectNode> loadExpandedAlgorithmConfigs(String filename) throws IOException{
+		JsonFactory factory = new JsonFactory();
+		factory.enable(JsonParser.Feature.ALLOW_COMMENTS);
+		List<ObjectNode> configs = new ObjectArrayList<>();
+		for (JsonNode node : new ObjectMapper(factory).readTree(new File(filename))) {
+			configs.addAll(expandSweep((ObjectNode) node));
+		}
+		return configs;
+	}
+
+	/**
+	 * Expands the parameter sweep of an algorithm's JSON object into one JSON object per combination of values
+	 * @param node the JSON object of the algorithm
+	 * @return the variants (or only the given object, if no sweep is declared)
+	 * @throws IOException -
+	 */
+	private static List<ObjectNode> expandSweep(ObjectNode node) throws IOException {
+		List<ObjectNode> variants = new ObjectArrayList<>();
+		JsonNode sweep = node.get(SWEEP_PROPERTY);
+		if (sweep == null) {
+			variants.add(node);
+			return variants;
+		}
+		ObjectNode base = node.deepCopy();
+		base.remove(SWEEP_PROPERTY);
+		variants.add(base);
+		//the parameter assignments of each variant (for the name)
+		List<String> suffixes = new ObjectArrayList<>();
+		suffixes.add("");
+		for (Iterator<Entry<String, JsonNode>> iterator = sweep.fields(); iterator.hasNext();) {
+			Entry<String, JsonNode> parameter = iterator.next();
+			List<JsonNode> values = getSweepValues(node.get("name").asText(), parameter.getKey(), parameter.getValue());
+			//combine every existing variant with every value of this parameter
+			List<ObjectNode> newVariants = new ObjectArrayList<>();
+			List<String> newSuffixes = new ObjectArrayList<>();
+			for (int i = 0; i < variants.size(); i++) {
+				for (JsonNode value : values) {
+					ObjectNode variant = variants.get(i).deepCopy();
+					variant.set(parameter.getKey(), value);
+					newVariants.add(variant);
+					newSuffixes.add((suffixes.get(i).isEmpty() ? "" : suffixes.get(i) + ", ") + parameter.getKey() + "="
+							+ value.asText());
+				}
+			}
+			variants = newVariants;
+			suffixes = newSuffixes;
+		}
+		for (int i = 0; i < variants.size(); i++) {
+			variants.get(i).put("name", node.get("name").asText() + " [" + suffixes.get(i) + "]");
+			variants.get(i).put(SWEEP_NAME_PROPERTY, node.get("name").asText());
+		}
+		return variants;
+	}
+
+	/**
+	 * Returns the values of a swept parameter
+	 * @param algorithmName -
+	 * @param parameter -
+	 * @param values an array of values or a range object with "from", "to", and "step"
+	 * @return the values
+	 * @throws IOException -
+	 */
+	private static List<JsonNode> getSweepValues(String algorithmName, String parameter, JsonNode values) throws IOException {
+		List<JsonNode> result = new ObjectArrayList<>();
+		if (values.isArray()) {
+			for (JsonNode value : values) {
+				result.add(value);
+			}
+		} else if (values.isObject() && values.has("from") && values.has("to") && values.has("step")) {
+			JsonNode from = values.get("from");
+			JsonNode to = values.get("to");
+			JsonNode step = values.get("step");
+			if (step.asDouble() <= 0) {
+				throw new IOException("The step of the sweep of \"" + parameter + "\" for algorithm \"" + algorithmName
+						+ "\" has to be positive.");
+			}
+			if (from.isIntegralNumber() && to.isIntegralNumber() && step.isIntegralNumber()) {
+				for (long value = from.asLong(); value <= to.asLong(); value += step.asLong()) {
+					result.add(LongNode.valueOf(value));
+				}
+			} else {
+				//use a counter to avoid the accumulation of rounding errors
+				//(and a small tolerance, so that the upper bound is included despite rounding errors)
+				for (int i = 0; from.asDouble() + i * step.asDouble() <= to.asDouble() + 1e-9 * step.asDouble(); i++) {
+					result.add(DoubleNode.valueOf(from.asDouble() + i * step.asDouble()));
+				}
+			}
+		}
+		if (result.isEmpty()) {
+			throw new IOException("The sweep of \"" + parameter + "\" for algorithm \"" + algorithmName
+					+ "\" has to be a non-empty array or an object with \"from\", \"to\", and \"step\".");
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the JSON objects of some algorithms to a new algorithm configuration file
+	 * @param filename the name of the JSON config file
+	 * @param configs the JSON objects of the algorithms (see {@link #loadAlgorithmConfigs(String)})
+	 * @throws IOException -
+	 */
+	public static void writeAlgorithmConfigs(String filename, List<JsonNode> configs) throws IOException{
+		ObjectMapper mapper = new ObjectMapper();
+		ArrayNode array = mapper.createArrayNode();
+		array.addAll(configs);
+		mapper.writerWithDefaultPrettyPrinter().writeValue(new File(filename), array);
 	}
 }
@@ -0,0 +1,301 @@
+package tudo.streamingrec;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.commons.lang3.StringUtils;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackage;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackageArticle;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackageClick;
+import tudo.streamingrec.algorithms.Algorithm;
+import tudo.streamingrec.data.ClickData;
+import tudo.streamingrec.data.Item;
+import tudo.streamingrec.data.Transaction;
+import tudo.streamingrec.data.loading.FileTailer;
+import tudo.streamingrec.data.session.UserEventLog;
+
+/**
+ * Runs the algorithms on near-live data (shadow mode). The item and click files are
+ * followed while they grow. Everything that is in the files at the start is used for
+ * the initial training. Afterwards, every appended item is sent to the train method
+ * and for every appended click, a recommendation list is generated before the click is
+ * sent to the train method (as in the test phase of a normal evaluation).
+ * <p>
+ * Since the future clicks are not known, no accuracy metrics are calculated. Instead,
+ * each algorithm runs in its own thread with its own queue of events and the lag
+ * (in events and in time), the throughput, and the latency of the recommend method
+ * are reported regularly. This shows if an algorithm keeps up with the incoming data.
+ *
+ * @author MJ
+ *
+ */
+public class LiveEvaluation {
+	//how often the files are checked for new lines (in ms)
+	private static final long POLL_INTERVAL = 100;
+
+	//the algorithms
+	private final List<Algorithm> algorithms;
+	//the followed files
+	private final String itemFile;
+	private final String clickFile;
+	//are the clicks in the old file format?
+	private final boolean oldFileFormat;
+	//how often is the report printed (in ms)
+	private final long reportInterval;
+
+	/**
+	 * Creates a live evaluation
+	 * @param algorithms the algorithms to run
+	 * @param itemFile the item file to follow
+	 * @param clickFile the click file to follow
+	 * @param oldFileFormat are the clicks in the old file format?
+	 * @param reportInterval how often the lag and throughput are reported (in ms)
+	 */
+	public LiveEvaluation(List<Algorithm> algorithms, String itemFile, String clickFile, boolean oldFileFormat,
+			long reportInterval) {
+		this.algorithms = algorithms;
+		this.itemFile = itemFile;
+		this.clickFile = clickFile;
+		this.oldFileFormat = oldFileFormat;
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * Trains the algorithms on the current content of the files and then follows the files
+	 * until the process is terminated
+	 * @throws IOException -
+	 * @throws ParseException -
+	 * @throws InterruptedException -
+	 */
+	public void run() throws IOException, ParseException, InterruptedException {
+		try (FileTailer itemTailer = new FileTailer(itemFile, true);
+				FileTailer clickTailer = new FileTailer(clickFile, true)) {
+			// read what is already there for the initial training
+			Map<Long, Item> items = new Long2ObjectOpenHashMap<>();
+			List<Item> trainingItems = new ObjectArrayList<>();
+			for (String line : itemTailer.poll()) {
+				Item item = new Item(line);
+				items.put(item.id, item);
+				trainingItems.add(item);
+			}
+			List<Transaction> trainingTransactions = new ObjectArrayList<>();
+			int unknownItems = 0;
+			for (String line : clickTailer.poll()) {
+				Transaction transaction = new Transaction(line, items, oldFileFormat);
+				if (transaction.item == null) {
+					unknownItems++;
+				} else {
+					trainingTransactions.add(transaction);
+				}
+			}
+			System.out.println("Initial training with " + trainingItems.size() + " items and "
+					+ trainingTransactions.size() + " clicks (" + unknownItems + " clicks with unknown items skipped)");
+			Map<Long, UserEventLog> userLogs = new Long2ObjectOpenHashMap<>();
+			List<ClickData> trainingClicks = StreamingRec.createTrainingWorkPackages(trainingTransactions, userLogs);
+			trainingTransactions = null;
+
+			// start one consumer per algorithm. The initial training happens in the consumer thread,
+			// events that arrive in the meantime are queued.
+			List<Consumer> consumers = new ObjectArrayList<>();
+			for (Algorithm algorithm : algorithms) {
+				Consumer consumer = new Consumer(algorithm, trainingItems, trainingClicks);
+				consumer.setDaemon(true);
+				consumers.add(consumer);
+				consumer.start();
+			}
+			trainingItems = null;
+			trainingClicks = null;
+
+			System.out.println("Following " + itemFile + " and " + clickFile + ". Terminate the process to stop.");
+			long nextReport = System.currentTimeMillis() + reportInterval;
+			long eventsSinceReport = 0;
+			while (true) {
+				// items first, since new clicks might refer to new items
+				List<String> itemLines = itemTailer.poll();
+				List<String> clickLines = clickTailer.poll();
+				long arrivalTime = System.nanoTime();
+				for (String line : itemLines) {
+					Item item = new Item(line);
+					items.put(item.id, item);
+					WorkPackageArticle wp = new WorkPackageArticle();
+					wp.articleEvent = item;
+					publish(consumers, new LiveEvent(wp, arrivalTime));
+				}
+				for (String line : clickLines) {
+					Transaction transaction = new Transaction(line, items, oldFileFormat);
+					if (transaction.item == null) {
+						unknownItems++;
+						continue;
+					}
+					publish(consumers, new LiveEvent(StreamingRec.getWorkPackage(transaction, userLogs, null), arrivalTime));
+				}
+				eventsSinceReport += itemLines.size() + clickLines.size();
+				if (System.currentTimeMillis() >= nextReport) {
+					report(consumers, eventsSinceReport, unknownItems);
+					eventsSinceReport = 0;
+					nextReport += reportInterval;
+				}
+				if (itemLines.isEmpty() && clickLines.isEmpty()) {
+					Thread.sleep(POLL_INTERVAL);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands an event to all algorithms
+	 * @param consumers -
+	 * @param event -
+	 */
+	private void publish(List<Consumer> consumers, LiveEvent event) {
+		for (Consumer consumer : consumers) {
+			consumer.queue.add(event);
+		}
+	}
+
+	/**
+	 * Prints the lag, throughput, and recommendation latency of each algorithm
+	 * since the last report
+	 * @param consumers -
+	 * @param newEvents the number of events read since the last report
+	 * @param unknownItems the number of clicks skipped so far because of unknown items
+	 */
+	private void report(List<Consumer> consumers, long newEvents, int unknownItems) {
+		DecimalFormat df = new DecimalFormat("0.000");
+		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		double seconds = reportInterval / 1000d;
+		System.out.println("Live report: " + df.format(newEvents / seconds) + " incoming events/s ("
+				+ unknownItems + " clicks with unknown items skipped so far)");
+		for (Consumer consumer : consumers) {
+			StringBuilder sb = new StringBuilder(StringUtils.rightPad(consumer.algorithm.getName(), 40, ' '));
+			synchronized (consumer) {
+				if (consumer.training) {
+					sb.append("initial training, ");
+				}
+				sb.append("lag: " + consumer.queue.size() + " events / ");
+				sb.append(df.format(consumer.lastLag / 1000000d) + " ms, ");
+				sb.append("throughput: " + df.format(consumer.processed / seconds) + " events/s, ");
+				sb.append("recommend latency: ");
+				if (consumer.recommendations > 0) {
+					sb.append("avg " + df.format(consumer.latencySum / 1000000d / consumer.recommendations) + " ms, ");
+					sb.append("max " + df.format(consumer.maxLatency / 1000000d) + " ms");
+				} else {
+					sb.append("-");
+				}
+				consumer.processed = 0;
+				consumer.recommendations = 0;
+				consumer.latencySum = 0;
+				consumer.maxLatency = 0;
+			}
+			System.out.println(sb.toString());
+		}
+		System.out.println();
+	}
+
+	/**
+	 * An event together with the time at which it was read from the file
+	 * @author MJ
+	 *
+	 */
+	private static class LiveEvent {
+		//the event
+		private final WorkPackage workPackage;
+		//the time at which it was read (System.nanoTime)
+		private final long arrivalTime;
+
+		/**
+		 * Creates a live event
+		 * @param workPackage -
+		 * @param arrivalTime -
+		 */
+		private LiveEvent(WorkPackage workPackage, long arrivalTime) {
+			this.workPackage = workPackage;
+			this.arrivalTime = arrivalTime;
+		}
+	}
+
+	/**
+	 * A thread that runs one algorithm on the live events
+	 * @author MJ
+	 *
+	 */
+	private static class Consumer extends Thread {
+		//the algorithm
+		private final Algorithm algorithm;
+		//the events that the algorithm has not processed yet
+		private final BlockingQueue<LiveEvent> queue = new LinkedBlockingQueue<>();
+		//the data for the initial training
+		private List<Item> trainingItems;
+		private List<ClickData> trainingClicks;
+		//the statistics since the last report (guarded by this)
+		private boolean training = true;
+		private long processed = 0;
+		private long recommendations = 0;
+		private long latencySum = 0;
+		private long maxLatency = 0;
+		//the time between reading and processing the last event in ns (guarded by this)
+		private long lastLag = 0;
+
+		/**
+		 * Creates a consumer
+		 * @param algorithm -
+		 * @param trainingItems -
+		 * @param trainingClicks -
+		 */
+		private Consumer(Algorithm algorithm, List<Item> trainingItems, List<ClickData> trainingClicks) {
+			super(algorithm.getName());
+			this.algorithm = algorithm;
+			this.trainingItems = trainingItems;
+			this.trainingClicks = trainingClicks;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void run() {
+			algorithm.train(trainingItems, trainingClicks);
+			trainingItems = null;
+			trainingClicks = null;
+			synchronized (this) {
+				training = false;
+			}
+			try {
+				while (true) {
+					LiveEvent event = queue.take();
+					long start = System.nanoTime();
+					long latency = -1;
+					if (event.workPackage instanceof WorkPackageArticle) {
+						algorithm.train(Collections.singletonList(((WorkPackageArticle) event.workPackage).articleEvent),
+								Collections.EMPTY_LIST);
+					} else {
+						ClickData clickData = ((WorkPackageClick) event.workPackage).clickData;
+						algorithm.recommend(clickData);
+						latency = System.nanoTime() - start;
+						algorithm.train(Collections.EMPTY_LIST, Collections.singletonList(clickData));
+					}
+					synchronized (this) {
+						processed++;
+						lastLag = start - event.arrivalTime;
+						if (latency >= 0) {
+							recommendations++;
+							latencySum += latency;
+							maxLatency = Math.max(maxLatency, latency);
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				//stop following
+			}
+		}
+	}
+}
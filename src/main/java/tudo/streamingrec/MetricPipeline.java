@@ -0,0 +1,151 @@
+package tudo.streamingrec;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.data.Transaction;
+import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.evaluation.metrics.MetricEvaluator;
+
+/**
+ * A pipeline stage that evaluates the metrics of one algorithm on a separate worker thread.
+ * The algorithm thread only generates the recommendations and trains the algorithm. It hands
+ * each recommendation list (together with the click and the ground truth) over a bounded
+ * queue to the worker, which evaluates all metrics in the original order. If the worker falls
+ * behind, the algorithm thread blocks when the queue is full.
+ * <p>
+ * Before the metric results are read (e.g., for checkpoints or at the end of the test phase),
+ * the pipeline has to be flushed.
+ *
+ * @author MJ
+ *
+ */
+class MetricPipeline {
+	//evaluates the metrics on the worker
+	private final MetricEvaluator evaluator;
+	//the name of the algorithm (for error messages)
+	private final String algorithmName;
+	//the evaluations that have not been processed yet
+	private final BlockingQueue<Evaluation> queue;
+	//the worker thread
+	private final Thread worker;
+	//the first exception that occurred in the worker
+	private volatile RuntimeException failure = null;
+
+	/**
+	 * Creates the pipeline and starts its worker thread
+	 * @param algorithmName -
+	 * @param metrics -
+	 * @param capacity the maximum number of recommendation lists that wait for their evaluation
+	 */
+	MetricPipeline(String algorithmName, List<Metric> metrics, int capacity) {
+		this.algorithmName = algorithmName;
+		this.evaluator = new MetricEvaluator(metrics);
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.worker = new Thread(this::work, "metrics-" + algorithmName);
+		//do not keep the JVM alive because of the worker thread
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Hands a recommendation list over to the worker
+	 * @param click -
+	 * @param recommendations -
+	 * @param groundTruth -
+	 * @throws InterruptedException -
+	 */
+	void submit(Transaction click, LongArrayList recommendations, LongSet groundTruth) throws InterruptedException {
+		checkFailure();
+		queue.put(new Evaluation(click, recommendations, groundTruth, null));
+	}
+
+	/**
+	 * Waits until all submitted recommendation lists have been evaluated
+	 * @throws InterruptedException -
+	 */
+	void flush() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		queue.put(new Evaluation(null, null, null, latch));
+		latch.await();
+		checkFailure();
+	}
+
+	/**
+	 * Stops the worker thread after the submitted recommendation lists (without waiting for it)
+	 */
+	void shutdown() {
+		//an evaluation without a click and without a latch is the end marker
+		if (!queue.offer(new Evaluation(null, null, null, null))) {
+			//the queue is full (e.g., because the algorithm failed) -> no results are needed anymore
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Rethrows an exception of the worker on the algorithm thread
+	 */
+	private void checkFailure() {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * The loop of the worker thread
+	 */
+	private void work() {
+		try {
+			while (true) {
+				Evaluation evaluation = queue.take();
+				if (evaluation.latch != null) {
+					//all evaluations before this one are done
+					evaluation.latch.countDown();
+				} else if (evaluation.click == null) {
+					return;
+				} else if (failure == null) {
+					//evaluate metrics
+					try {
+						evaluator.evaluate(evaluation.click, evaluation.recommendations, evaluation.groundTruth);
+					} catch (Exception ex) {
+						failure = new RuntimeException(algorithmName + ": " + ex.getMessage(), ex);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			//stopped
+		}
+	}
+
+	/**
+	 * One recommendation list to be evaluated (or a marker)
+	 * @author MJ
+	 *
+	 */
+	private static class Evaluation {
+		private final Transaction click;
+		private final LongArrayList recommendations;
+		private final LongSet groundTruth;
+		//if not null, the worker counts down this latch (see flush)
+		private final CountDownLatch latch;
+
+		/**
+		 * Creates an evaluation task
+		 * @param click -
+		 * @param recommendations -
+		 * @param groundTruth -
+		 * @param latch -
+		 */
+		private Evaluation(Transaction click, LongArrayList recommendations, LongSet groundTruth,
+				CountDownLatch latch) {
+			this.click = click;
+			this.recommendations = recommendations;
+			this.groundTruth = groundTruth;
+			this.latch = latch;
+		}
+	}
+}
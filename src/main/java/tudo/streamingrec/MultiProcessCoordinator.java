@@ -0,0 +1,293 @@
+package tudo.streamingrec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackage;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackageClick;
+import tudo.streamingrec.algorithms.Algorithm;
+import tudo.streamingrec.data.Event;
+import tudo.streamingrec.data.Item;
+import tudo.streamingrec.data.SplitData;
+import tudo.streamingrec.data.Transaction;
+import tudo.streamingrec.data.loading.EventLogFile;
+import tudo.streamingrec.data.session.GroundTruthExtractor;
+import tudo.streamingrec.data.session.SessionExtractor;
+import tudo.streamingrec.data.session.UserEventLog;
+import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.util.RetroactiveStatisticalTests;
+import tudo.streamingrec.util.Util;
+
+/**
+ * Runs an evaluation in multiple worker JVMs, so that the garbage collection and
+ * the heap usage of one algorithm do not influence the runtime of the others and
+ * one algorithm running out of memory does not terminate the whole evaluation.
+ * <p>
+ * The coordinator writes the filtered and split events together with the ground truth of
+ * every test click once to a binary event log (see {@link EventLogFile}), which the workers
+ * read via memory mapping. The algorithms are distributed over the workers round-robin in
+ * the order of the {@link AlgorithmScheduler}, so that the expensive algorithms are spread
+ * over all workers. Every worker is a regular StreamingRec process with a subset of the
+ * algorithm config and its own output folder. At the end, the coordinator merges the tmp
+ * result, stat result, and state size files of the workers into its own output folder.
+ *
+ * @author MJ
+ *
+ */
+public class MultiProcessCoordinator {
+	//constants for output file names
+	private static final String folder = "output";
+	private static final String prefix = "tmp_results_";
+	private static final String postfix = ".txt";
+	private static final String workerFolder = "workers";
+	private static final String eventLogName = "events.bin";
+
+	//the number of worker processes
+	private final int processCount;
+	//the arguments that are the same for all workers
+	private final List<String> workerArguments;
+	//additional JVM options for the workers
+	private final String jvmOptions;
+	//should the statistical tests be executed at the end?
+	private final boolean outputStats;
+
+	/**
+	 * Creates a coordinator
+	 * @param processCount the number of worker processes
+	 * @param workerArguments the command line arguments that are the same for all workers
+	 * @param jvmOptions space-separated JVM options for the workers
+	 * @param outputStats should the statistical tests be executed after the merge?
+	 */
+	public MultiProcessCoordinator(int processCount, List<String> workerArguments, String jvmOptions,
+			boolean outputStats) {
+		this.processCount = processCount;
+		this.workerArguments = workerArguments;
+		this.jvmOptions = jvmOptions;
+		this.outputStats = outputStats;
+	}
+
+	/**
+	 * Writes the event log, runs the workers, and merges their results
+	 * @param splitData the filtered and split events
+	 * @param algorithms the algorithms of the config file
+	 * @throws IOException -
+	 * @throws InterruptedException -
+	 */
+	public void run(SplitData splitData, List<Algorithm> algorithms) throws IOException, InterruptedException {
+		File outputFolder = new File(folder + "/" + StreamingRec.startTime);
+		File workersFolder = new File(outputFolder, workerFolder);
+		workersFolder.mkdirs();
+
+		// write the events and the ground truth once for all workers
+		String eventLog = new File(outputFolder, eventLogName).getPath();
+		System.out.println("Writing event log to " + eventLog);
+		EventLogFile.write(eventLog, splitData, extractGroundTruths(splitData));
+		int nbOfTestEvents = splitData.testData.size();
+		//save some RAM
+		splitData.trainingData = null;
+		splitData.testData = null;
+
+		// distribute the algorithms over the workers (expensive algorithms first)
+		Map<String, List<Metric>> metrics = new Object2ObjectLinkedOpenHashMap<>();
+		for (Algorithm algorithm : algorithms) {
+			metrics.put(algorithm.getName(), Config.loadMetrics(StreamingRec.getMetricsFileName()));
+		}
+		List<Algorithm> ordered = new AlgorithmScheduler(metrics, nbOfTestEvents).order(algorithms);
+		int workers = Math.min(processCount, ordered.size());
+		List<List<JsonNode>> partitions = new ObjectArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			partitions.add(new ObjectArrayList<>());
+		}
+		Map<String, JsonNode> configs = Config.loadAlgorithmConfigs(StreamingRec.getAlgorithmFileName());
+		for (int i = 0; i < ordered.size(); i++) {
+			partitions.get(i % workers).add(configs.get(ordered.get(i).getName()));
+		}
+
+		// start the workers
+		List<Process> processes = new ObjectArrayList<>();
+		List<String> workerNames = new ObjectArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			String workerName = StreamingRec.startTime + "-worker" + i;
+			String configFile = new File(workersFolder, "algorithms-" + i + ".json").getPath();
+			Config.writeAlgorithmConfigs(configFile, partitions.get(i));
+			List<String> command = new ObjectArrayList<>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			for (String option : jvmOptions.trim().split(" +")) {
+				if (!option.isEmpty()) {
+					command.add(option);
+				}
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(StreamingRec.class.getName());
+			command.add("--algorithm-config=" + configFile);
+			command.add("--worker-event-log=" + eventLog);
+			command.add("--worker-output=" + workerName);
+			command.addAll(workerArguments);
+			System.out.println("Starting worker " + i + " with " + partitions.get(i).size() + " algorithms");
+			processes.add(new ProcessBuilder(command).inheritIO().start());
+			workerNames.add(workerName);
+		}
+
+		// wait for the workers and merge their results
+		Map<String, String> resultLines = new Object2ObjectLinkedOpenHashMap<>();
+		for (int i = 0; i < workers; i++) {
+			int exitCode = processes.get(i).waitFor();
+			if (exitCode != 0) {
+				System.err.println("Worker " + i + " terminated with exit code " + exitCode
+						+ ". Its finished algorithms are merged nonetheless.");
+			}
+			mergeWorkerOutput(workerNames.get(i), new File(workersFolder, String.valueOf(i)), resultLines);
+		}
+		printResults(algorithms, resultLines);
+	}
+
+	/**
+	 * Determines the ground truth of every test click (in the order of the test clicks)
+	 * @param splitData -
+	 * @return the ground truths
+	 */
+	private List<LongSet> extractGroundTruths(SplitData splitData) {
+		// replay the training clicks to build the sessions
+		List<Transaction> trainingTransactions = new ObjectArrayList<>();
+		Util.extractEventTypes(splitData.trainingData, new ObjectArrayList<Item>(), trainingTransactions);
+		Map<Long, UserEventLog> userLogs = new Long2ObjectOpenHashMap<>();
+		StreamingRec.createTrainingWorkPackages(trainingTransactions, userLogs);
+		trainingTransactions = null;
+		// extract all sessions of users for evaluation phase
+		List<Transaction> testTransactions = new ObjectArrayList<>();
+		Util.extractEventTypes(splitData.testData, new ObjectArrayList<Item>(), testTransactions);
+		SessionExtractor sessionExtractorforEvaluation = new SessionExtractor();
+		for (Transaction t : testTransactions) {
+			sessionExtractorforEvaluation.addClick(t);
+		}
+		GroundTruthExtractor groundTruthExtractor = new GroundTruthExtractor(sessionExtractorforEvaluation);
+		List<LongSet> groundTruths = new ObjectArrayList<>(testTransactions.size());
+		for (Event event : splitData.testData) {
+			WorkPackage workPackage = StreamingRec.getWorkPackage(event, userLogs, groundTruthExtractor);
+			if (workPackage instanceof WorkPackageClick) {
+				groundTruths.add(((WorkPackageClick) workPackage).groundTruth);
+			}
+		}
+		return groundTruths;
+	}
+
+	/**
+	 * Copies the results of a worker to the output folder of the coordinator
+	 * and moves the worker's output folder into the coordinator's output folder
+	 * @param workerName the name of the worker's output folder
+	 * @param target where the worker's output folder is moved to
+	 * @param resultLines the result line of each algorithm (filled by this method)
+	 * @throws IOException -
+	 */
+	private void mergeWorkerOutput(String workerName, File target, Map<String, String> resultLines)
+			throws IOException {
+		File workerOutput = new File(folder + "/" + workerName);
+		if (!workerOutput.isDirectory()) {
+			return;
+		}
+		// tmp results -> append the lines without the header
+		File resultFile = new File(workerOutput, prefix + workerName + postfix);
+		if (resultFile.exists()) {
+			try (BufferedReader reader = new BufferedReader(new FileReader(resultFile))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.startsWith("#") && !line.isEmpty()) {
+						AlgorithmWrapper.writeResultLine(line);
+						resultLines.put(line.substring(0, line.indexOf(';')), line);
+					}
+				}
+			}
+		}
+		// state sizes -> append the lines
+		File stateSizeFile = new File(workerOutput, AlgorithmWrapper.stateSizePrefix + workerName + postfix);
+		if (stateSizeFile.exists()) {
+			try (PrintWriter output = new PrintWriter(new FileWriter(folder + "/" + StreamingRec.startTime + "/"
+					+ AlgorithmWrapper.stateSizePrefix + StreamingRec.startTime + postfix, true))) {
+				for (String line : Files.readAllLines(stateSizeFile.toPath())) {
+					output.println(line);
+				}
+			}
+		}
+		// stat results -> copy with the file name of the coordinator's run
+		File[] statFiles = workerOutput.listFiles((dir, name) -> name.startsWith(AlgorithmWrapper.statPrefix));
+		for (File statFile : statFiles) {
+			String name = AlgorithmWrapper.statPrefix + StreamingRec.startTime
+					+ statFile.getName().substring((AlgorithmWrapper.statPrefix + workerName).length());
+			Files.copy(statFile.toPath(), new File(folder + "/" + StreamingRec.startTime, name).toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.move(workerOutput.toPath(), target.toPath());
+	}
+
+	/**
+	 * Prints the merged results (and the statistical tests, if enabled)
+	 * @param algorithms the algorithms in config order
+	 * @param resultLines the result line of each algorithm
+	 * @throws IOException -
+	 */
+	private void printResults(List<Algorithm> algorithms, Map<String, String> resultLines) throws IOException {
+		// print evaluation results in the same format as a single-process run
+		DecimalFormat df = new DecimalFormat("0.0000000");
+		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		//format of a line: name;metric;value;metric;value;...
+		Map<String, List<String>> resultsByMetric = new Object2ObjectLinkedOpenHashMap<>();
+		for (Algorithm algorithm : algorithms) {
+			String line = resultLines.get(algorithm.getName());
+			if (line == null) {
+				System.err.println("No results for algorithm \"" + algorithm.getName() + "\".");
+				continue;
+			}
+			String[] split = line.split(";");
+			for (int i = 1; i + 1 < split.length; i += 2) {
+				List<String> list = resultsByMetric.get(split[i]);
+				if (list == null) {
+					list = new ObjectArrayList<>();
+					resultsByMetric.put(split[i], list);
+				}
+				list.add(StringUtils.rightPad(algorithm.getName(), 70, ' ') + "\t"
+						+ df.format(Double.parseDouble(split[i + 1])));
+			}
+		}
+		System.out.println();
+		StreamingRec.printParameters();
+		for (Entry<String, List<String>> entry : resultsByMetric.entrySet()) {
+			System.out.println(entry.getKey());
+			for (String result : entry.getValue()) {
+				System.out.println(result);
+			}
+		}
+
+		if (outputStats) {
+			System.out.println();
+			System.out.println("---- STATISTICAL RESULTS ----");
+			System.out.println();
+			try {
+				System.out.println(Util.executeStatisticalTests(
+						RetroactiveStatisticalTests.readDetailedResults(folder + "/" + StreamingRec.startTime), true));
+			} catch (ClassNotFoundException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
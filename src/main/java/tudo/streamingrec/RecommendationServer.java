@@ -0,0 +1,532 @@
+package tudo.streamingrec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackageClick;
+import tudo.streamingrec.algorithms.Algorithm;
+import tudo.streamingrec.data.ClickData;
+import tudo.streamingrec.data.Item;
+import tudo.streamingrec.data.RawData;
+import tudo.streamingrec.data.Transaction;
+import tudo.streamingrec.data.loading.FilteredDataReader;
+import tudo.streamingrec.data.session.SessionExtractor;
+import tudo.streamingrec.data.session.UserEventLog;
+
+/**
+ * Serves the configured algorithms via a local HTTP endpoint to measure the real serving latency.
+ * The following routes are available:
+ * <ul>
+ * <li>/item: the request body contains one or more items in the format of the item input file.
+ * The items are sent to the train method of all algorithms.</li>
+ * <li>/click: the request body contains one or more clicks in the format of the click input file.
+ * The clicks are assigned to sessions (based on the session time threshold)
+ * and sent to the train method of all algorithms.</li>
+ * <li>/recommend?user=&lt;ID&gt;&amp;k=&lt;N&gt;[&amp;algorithm=&lt;NAME&gt;]: returns the top-N recommendations
+ * (as a JSON array of item IDs) for the last click of the user.
+ * If no algorithm is given, the first algorithm of the config file is used.</li>
+ * <li>/stats: returns the request count and the p50/p99/max latency per route.</li>
+ * </ul>
+ * Each request is handled by its own thread (virtual threads if supported by the JVM).
+ * Recommendations of one algorithm can be computed concurrently, while
+ * training requires exclusive access to the algorithm.
+ *
+ * @author MJ
+ *
+ */
+@Command(name = "RecommendationServer",
+	footer = "Copyright(c) 2017 Mozhgan Karimi, Michael Jugovac, Dietmar Jannach",
+	description = "Serves the configured algorithms via HTTP. Usage:",
+	showDefaultValues = true,
+	sortOptions = false)
+public class RecommendationServer {
+	//the path to the algorithm json config file
+	@Option(names = {"-a", "--algorithm-config"}, paramLabel="<FILE>", description = "Path to the algorithm json config file")
+	private static String ALGORITHM_FILE_NAME = "config/algorithm-config-simple.json";
+	//the item file for the initial training
+	@Option(names = {"-i", "--items"}, paramLabel="<FILE>", description = "Path to the item input file in CSV format for the initial training (optional)")
+	private static String INPUT_FILENAME_ITEMS = null;
+	//the click file for the initial training
+	@Option(names = {"-c", "--clicks"}, paramLabel="<FILE>", description = "Path to the clicks input file in CSV format for the initial training (optional)")
+	private static String INPUT_FILENAME_CLICKS = null;
+	//are we using the "old" format, i.e., the inefficient format optimized only for plista?
+	@Option(names = {"-f", "--old-format"}, description = "Uses the old click file format")
+	private static boolean OLD_FILE_FORMAT = false;
+	//the time for the sessions inactivity threshold
+	@Option(names = {"-t", "--session-time-threshold"}, paramLabel="<VALUE>", description = "The idle time threshold for separating two user sessions in milliseconds.")
+	private static long SESSION_TIME_THRESHOLD = 1000 * 60 * 20;
+	//the port of the server
+	@Option(names = {"-P", "--port"}, paramLabel="<VALUE>", description = "The port of the HTTP server")
+	private static int PORT = 8080;
+	//for command line help
+	@Option(names = {"-h", "--help"}, hidden=true, usageHelp = true)
+	private static boolean helpRequested;
+
+	//the number of latency values per route that are used for the percentiles
+	private static final int LATENCY_WINDOW = 100000;
+
+	//the served algorithms by name
+	private final Map<String, ServedAlgorithm> algorithms = new Object2ObjectLinkedOpenHashMap<>();
+	//the first algorithm (default for recommendations)
+	private final ServedAlgorithm defaultAlgorithm;
+	//the known items
+	private final Map<Long, Item> items = new Long2ObjectOpenHashMap<>();
+	//the click log of each user (for sessions and user histories)
+	private final Map<Long, UserEventLog> userLogs = new Long2ObjectOpenHashMap<>();
+	//guards the items and the user logs
+	private final ReadWriteLock dataLock = new ReentrantReadWriteLock();
+	//the latencies per route
+	private final Map<String, LatencyRecorder> latencies = new Object2ObjectOpenHashMap<>();
+
+	/**
+	 * Starts the server
+	 *
+	 * @param args -
+	 * @throws IOException -
+	 * @throws ParseException -
+	 */
+	public static void main(String[] args) throws IOException, ParseException {
+		//command line parsing
+		CommandLine.populateCommand(new RecommendationServer(), args);
+		if (helpRequested) {
+			CommandLine.usage(new RecommendationServer(), System.out);
+			return;
+		}
+		SessionExtractor.setThresholdInMS(SESSION_TIME_THRESHOLD);
+		List<Algorithm> algorithms = Config.loadAlgorithms(ALGORITHM_FILE_NAME);
+		RecommendationServer server = new RecommendationServer(algorithms);
+		if (INPUT_FILENAME_ITEMS != null && INPUT_FILENAME_CLICKS != null) {
+			RawData data = new FilteredDataReader().readFilteredData(INPUT_FILENAME_ITEMS, INPUT_FILENAME_CLICKS,
+					false, false, OLD_FILE_FORMAT);
+			server.train(new ObjectArrayList<>(data.items.values()), data.transactions);
+		}
+		server.start(PORT);
+	}
+
+	/**
+	 * Only used for command line parsing
+	 */
+	private RecommendationServer() {
+		defaultAlgorithm = null;
+	}
+
+	/**
+	 * Creates a server for the given algorithms
+	 * @param algorithms -
+	 */
+	public RecommendationServer(List<Algorithm> algorithms) {
+		for (Algorithm algorithm : algorithms) {
+			this.algorithms.put(algorithm.getName(), new ServedAlgorithm(algorithm));
+		}
+		defaultAlgorithm = this.algorithms.values().iterator().next();
+		for (String route : Arrays.asList("/item", "/click", "/recommend")) {
+			latencies.put(route, new LatencyRecorder());
+		}
+	}
+
+	/**
+	 * Trains all algorithms with the initial data
+	 * @param trainingItems -
+	 * @param trainingTransactions -
+	 */
+	public void train(List<Item> trainingItems, List<Transaction> trainingTransactions) {
+		System.out.println("Initial training with " + trainingItems.size() + " items and "
+				+ trainingTransactions.size() + " clicks");
+		for (Item item : trainingItems) {
+			items.put(item.id, item);
+		}
+		List<ClickData> clicks = StreamingRec.createTrainingWorkPackages(trainingTransactions, userLogs);
+		algorithms.values().parallelStream().forEach(a -> a.algorithm.train(trainingItems, clicks));
+	}
+
+	/**
+	 * Starts the HTTP server
+	 * @param port -
+	 * @throws IOException -
+	 */
+	public void start(int port) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 4096);
+		server.createContext("/item", timed("/item", this::handleItem));
+		server.createContext("/click", timed("/click", this::handleClick));
+		server.createContext("/recommend", timed("/recommend", this::handleRecommend));
+		server.createContext("/stats", exchange -> respond(exchange, 200, getStats()));
+		server.setExecutor(createThreadPerRequestExecutor());
+		server.start();
+		System.out.println("Serving " + algorithms.keySet() + " on port " + port);
+	}
+
+	/**
+	 * Creates an executor that runs each task in its own new thread. Uses virtual threads
+	 * if the JVM supports them (Java 21+) and a cached thread pool otherwise.
+	 * @return the executor
+	 */
+	private static ExecutorService createThreadPerRequestExecutor() {
+		try {
+			//via reflection, since this project is compiled for older JVMs
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Handles new items
+	 * @param exchange -
+	 * @return the response
+	 * @throws IOException -
+	 * @throws ParseException -
+	 */
+	@SuppressWarnings("unchecked")
+	private String handleItem(HttpExchange exchange) throws IOException, ParseException {
+		List<Item> newItems = new ObjectArrayList<>();
+		for (String line : readLines(exchange)) {
+			newItems.add(new Item(line));
+		}
+		dataLock.writeLock().lock();
+		try {
+			for (Item item : newItems) {
+				items.put(item.id, item);
+			}
+			//train while holding the data lock, so that all algorithms see the events in the same order
+			for (ServedAlgorithm served : algorithms.values()) {
+				served.train(newItems, Collections.EMPTY_LIST);
+			}
+		} finally {
+			dataLock.writeLock().unlock();
+		}
+		return "OK";
+	}
+
+	/**
+	 * Handles new clicks
+	 * @param exchange -
+	 * @return the response
+	 * @throws IOException -
+	 */
+	@SuppressWarnings("unchecked")
+	private String handleClick(HttpExchange exchange) throws IOException {
+		List<ClickData> clicks = new ObjectArrayList<>();
+		dataLock.writeLock().lock();
+		try {
+			for (String line : readLines(exchange)) {
+				Transaction transaction = new Transaction(line, items, OLD_FILE_FORMAT);
+				if (transaction.item == null) {
+					throw new IllegalArgumentException("Unknown item: " + line);
+				}
+				//assign the click to a session
+				clicks.add(((WorkPackageClick) StreamingRec.getWorkPackage(transaction, userLogs, null)).clickData);
+			}
+			//train while holding the data lock, so that all algorithms see the events in the same order
+			for (ServedAlgorithm served : algorithms.values()) {
+				served.train(Collections.EMPTY_LIST, clicks);
+			}
+		} finally {
+			dataLock.writeLock().unlock();
+		}
+		return "OK";
+	}
+
+	/**
+	 * Generates recommendations for the last click of a user
+	 * @param exchange -
+	 * @return the response
+	 */
+	private String handleRecommend(HttpExchange exchange) {
+		Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+		if (!parameters.containsKey("user")) {
+			throw new IllegalArgumentException("Parameter user is missing.");
+		}
+		long userId = Long.parseLong(parameters.get("user"));
+		int k = parameters.containsKey("k") ? Integer.parseInt(parameters.get("k")) : 10;
+		ServedAlgorithm served = defaultAlgorithm;
+		if (parameters.containsKey("algorithm")) {
+			served = algorithms.get(parameters.get("algorithm"));
+			if (served == null) {
+				throw new IllegalArgumentException("Unknown algorithm: " + parameters.get("algorithm"));
+			}
+		}
+		ClickData clickData = new ClickData();
+		dataLock.readLock().lock();
+		try {
+			UserEventLog userLog = userLogs.get(userId);
+			if (userLog == null) {
+				throw new IllegalArgumentException("Unknown user: " + userId);
+			}
+			//the views stay valid when new clicks are added later
+			clickData.session = userLog.getSession();
+			clickData.wholeUserHistory = userLog.getHistory();
+			clickData.click = clickData.session.get(clickData.session.size() - 1);
+		} finally {
+			dataLock.readLock().unlock();
+		}
+		LongArrayList recommendations = served.recommend(clickData, k);
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < Math.min(k, recommendations.size()); i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append(recommendations.getLong(i));
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * Creates the latency statistics of all routes
+	 * @return the statistics as JSON
+	 */
+	private String getStats() {
+		DecimalFormat df = new DecimalFormat("0.000");
+		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		StringBuilder sb = new StringBuilder("{");
+		for (Map.Entry<String, LatencyRecorder> entry : latencies.entrySet()) {
+			if (sb.length() > 1) {
+				sb.append(",");
+			}
+			long[] sorted = entry.getValue().getSortedLatencies();
+			sb.append("\"" + entry.getKey() + "\":{\"count\":" + entry.getValue().getCount());
+			if (sorted.length > 0) {
+				sb.append(",\"p50_ms\":" + df.format(percentile(sorted, 0.5) / 1000000d));
+				sb.append(",\"p99_ms\":" + df.format(percentile(sorted, 0.99) / 1000000d));
+				sb.append(",\"max_ms\":" + df.format(sorted[sorted.length - 1] / 1000000d));
+			}
+			sb.append("}");
+		}
+		return sb.append("}").toString();
+	}
+
+	/**
+	 * Returns a percentile of sorted values (nearest rank)
+	 * @param sorted -
+	 * @param quantile -
+	 * @return the percentile
+	 */
+	private static long percentile(long[] sorted, double quantile) {
+		int rank = (int) Math.ceil(quantile * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Wraps a route handler: measures the latency, writes the response, and reports errors
+	 * @param route -
+	 * @param handler -
+	 * @return the HTTP handler
+	 */
+	private HttpHandler timed(String route, RouteHandler handler) {
+		LatencyRecorder recorder = latencies.get(route);
+		return exchange -> {
+			long start = System.nanoTime();
+			String response;
+			int status = 200;
+			try {
+				response = handler.handle(exchange);
+			} catch (IllegalArgumentException e) {
+				status = 400;
+				response = e.getMessage();
+			} catch (Exception e) {
+				status = 500;
+				response = e.toString();
+			}
+			recorder.add(System.nanoTime() - start);
+			respond(exchange, status, response);
+		};
+	}
+
+	/**
+	 * Writes a response and closes the exchange
+	 * @param exchange -
+	 * @param status -
+	 * @param response -
+	 * @throws IOException -
+	 */
+	private static void respond(HttpExchange exchange, int status, String response) throws IOException {
+		byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads the non-empty lines of the request body
+	 * @param exchange -
+	 * @return the lines
+	 * @throws IOException -
+	 */
+	private static List<String> readLines(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				body.write(buffer, 0, read);
+			}
+		}
+		List<String> lines = new ObjectArrayList<>();
+		for (String line : body.toString("UTF-8").split("\r?\n")) {
+			if (!line.trim().isEmpty()) {
+				lines.add(line.trim());
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Parses the query string of a request
+	 * @param query -
+	 * @return the parameters
+	 */
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new Object2ObjectOpenHashMap<>();
+		if (query == null) {
+			return parameters;
+		}
+		try {
+			for (String parameter : query.split("&")) {
+				int separator = parameter.indexOf('=');
+				if (separator > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+							URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return parameters;
+	}
+
+	/**
+	 * The logic of one route
+	 * @author MJ
+	 *
+	 */
+	private interface RouteHandler {
+		/**
+		 * Handles a request
+		 * @param exchange -
+		 * @return the response body
+		 * @throws Exception -
+		 */
+		String handle(HttpExchange exchange) throws Exception;
+	}
+
+	/**
+	 * An algorithm that can be used by multiple request threads. Recommendations
+	 * can be generated concurrently, training requires exclusive access.
+	 * @author MJ
+	 *
+	 */
+	private static class ServedAlgorithm {
+		//the algorithm
+		private final Algorithm algorithm;
+		//the lock that separates training and recommending
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		/**
+		 * Creates a served algorithm
+		 * @param algorithm -
+		 */
+		private ServedAlgorithm(Algorithm algorithm) {
+			this.algorithm = algorithm;
+		}
+
+		/**
+		 * Trains the algorithm exclusively
+		 * @param items -
+		 * @param clicks -
+		 */
+		private void train(List<Item> items, List<ClickData> clicks) {
+			lock.writeLock().lock();
+			try {
+				algorithm.train(items, clicks);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		/**
+		 * Generates recommendations (concurrently with other recommendations)
+		 * @param clickData -
+		 * @param k the maximum number of recommendations
+		 * @return the recommendations
+		 */
+		private LongArrayList recommend(ClickData clickData, int k) {
+			lock.readLock().lock();
+			try {
+				return algorithm.recommend(clickData, k);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Keeps the last N latency values of a route for percentile calculation
+	 * @author MJ
+	 *
+	 */
+	private static class LatencyRecorder {
+		//the last N latencies in ns
+		private final long[] values = new long[LATENCY_WINDOW];
+		//the total number of recorded values
+		private long count = 0;
+
+		/**
+		 * Adds a latency value
+		 * @param latency the latency in ns
+		 */
+		private synchronized void add(long latency) {
+			values[(int) (count % values.length)] = latency;
+			count++;
+		}
+
+		/**
+		 * The total number of requests
+		 * @return the count
+		 */
+		private synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the last N latencies in ascending order
+		 * @return the sorted latencies
+		 */
+		private long[] getSortedLatencies() {
+			long[] sorted;
+			synchronized (this) {
+				sorted = Arrays.copyOf(values, (int) Math.min(count, values.length));
+			}
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+}
@@ -8,7 +8,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -16,16 +15,20 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.joda.time.Period;
 import org.joda.time.format.ISOPeriodFormat;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
@@ -42,11 +45,17 @@ import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.RawData;
 import tudo.streamingrec.data.SplitData;
 import tudo.streamingrec.data.Transaction;
+import tudo.streamingrec.data.loading.EventLogFile;
 import tudo.streamingrec.data.loading.FilteredDataReader;
+import tudo.streamingrec.data.session.GroundTruthExtractor;
 import tudo.streamingrec.data.session.SessionExtractor;
+import tudo.streamingrec.data.session.UserEventLog;
 import tudo.streamingrec.data.splitting.DataSplitter;
+import tudo.streamingrec.evaluation.ClickSampler;
+import tudo.streamingrec.evaluation.metrics.DetailedResults;
 import tudo.streamingrec.evaluation.metrics.HypothesisTestableMetric;
 import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.evaluation.metrics.OnlinePairedTTest;
 import tudo.streamingrec.util.Util;
 
 /**
@@ -95,6 +104,78 @@ public class StreamingRec {
 	//the number of threads to use
 	@Option(names = {"-n", "--thread-count"}, paramLabel="<VALUE>", description = "Number of threads to use. Less threads result in less CPU usage but also less RAM usage.")
 	private static int THREAD_COUNT = Runtime.getRuntime().availableProcessors()-1;
+	//if set, work packages are created on the fly and handed to the algorithms through a ring buffer of this size
+	@Option(names = {"-b", "--lockstep-buffer-size"}, paramLabel="<VALUE>", description = "If set to N > 0, the test work packages are not created up front but on the fly "
+			+ "and passed to groups of up to <thread-count> algorithms in lockstep through a ring buffer of size N. Greatly reduces RAM usage. If set to 0, lockstep mode is disabled.")
+	private static int LOCKSTEP_BUFFER_SIZE = 0;
+	//if set, the recommendations of batch-trained algorithms are generated concurrently in between two trainings
+	@Option(names = {"-w", "--frozen-window-threads"}, paramLabel="<VALUE>", description = "If set to N > 0, the recommendations of algorithms with a training interval "
+			+ "are generated by a shared pool of N worker threads in between two batch trainings (when the model is frozen). If set to 0, this is disabled.")
+	private static int FROZEN_WINDOW_THREADS = 0;
+	//if set, the metrics of each algorithm are evaluated by a separate worker thread
+	@Option(names = {"-q", "--metric-pipeline"}, paramLabel="<VALUE>", description = "If set to N > 0, the metrics of each algorithm are evaluated by a separate worker thread, "
+			+ "which receives the recommendation lists through a queue of size N. The algorithm threads then only generate recommendations and train. If set to 0, this is disabled.")
+	private static int METRIC_PIPELINE_SIZE = 0;
+	//if set, the detailed results of the metrics are kept on disk instead of in memory
+	@Option(names = {"-S", "--spill-results"}, description = "If set, the per-click results of the metrics (needed for the statistical tests) are "
+			+ "written to files in the output folder instead of being kept in memory. Greatly reduces RAM usage for large test sets.")
+	private static boolean SPILL_RESULTS = false;
+	//if set, the paired t-tests are calculated while the results arrive (instead of from the stored per-click results)
+	@Option(names = {"-T", "--online-tests"}, description = "If set, paired t-tests between all algorithms are updated while the metric results arrive "
+			+ "and the per-click results are not stored (no stat result files are written). Requires lockstep mode with all algorithms "
+			+ "in one group (thread count of at least the number of algorithms, no heap budget) and cannot be combined with checkpoints. With --output-stats, "
+			+ "the t-tests replace the Kolmogorov Smirnov tests.")
+	private static boolean ONLINE_TESTS = false;
+	//if set, the state of each algorithm is written to disk regularly
+	@Option(names = {"-k", "--checkpoint-interval"}, paramLabel="<VALUE>", description = "If set to N > 0, a checkpoint of each algorithm (model, metrics, and position in the test data) "
+			+ "is written to the output folder every N test events. If set to 0, no checkpoints are written.")
+	private static int CHECKPOINT_INTERVAL = 0;
+	//the output folder of a previous (crashed) run that should be continued
+	@Option(names = {"-r", "--resume"}, paramLabel="<FOLDER>", description = "Resumes a previous run from its checkpoints. "
+			+ "The value is the name of the run's output folder (i.e., its start time). All other parameters have to be the same as in the previous run.")
+	private static String RESUME = null;
+	//the heap budget for the state of all concurrently running algorithms
+	@Option(names = {"-e", "--heap-budget"}, paramLabel="<VALUE>", description = "If set to N > 0, algorithms are only started while the estimated state sizes of all running algorithms "
+			+ "stay below N megabytes. The state sizes are measured in runs with this option and used by later runs. If set to 0, only the thread count limits the number of running algorithms.")
+	private static long HEAP_BUDGET = 0;
+	//should the input files be followed (shadow mode on live data)?
+	@Option(names = {"-F", "--follow"}, description = "Live mode. Trains the algorithms on the current content of the input files, then follows the files as they grow "
+			+ "and reports the lag, throughput, and recommendation latency of each algorithm. No data splitting, filtering, or accuracy metrics.")
+	private static boolean FOLLOW = false;
+	//how often the live mode reports
+	@Option(names = {"-R", "--live-report-interval"}, paramLabel="<VALUE>", description = "The interval in milliseconds in which the live mode reports")
+	private static long LIVE_REPORT_INTERVAL = 10000;
+	//the sampling policy for the evaluation of test clicks
+	@Option(names = {"-s", "--sampling"}, paramLabel="<POLICY>", description = "Only generates and evaluates recommendations for a sample of the test clicks. "
+			+ "All other clicks are still sent to the train method. Policies: \"uniform:<RATE>\" (each click with the same probability), "
+			+ "\"session:<N>\" (the first N clicks of each session), \"user:<RATE>\" (the same share of the clicks of every user)")
+	private static String SAMPLING = null;
+	//the parsed sampling policy (null = all clicks are evaluated)
+	private static ClickSampler clickSampler = null;
+	//the metric by which the variants of parameter sweeps are compared for successive halving
+	@Option(names = {"-H", "--halving-metric"}, paramLabel="<NAME>", description = "Enables successive halving for parameter sweeps. The variants of each sweep are compared by this metric "
+			+ "(e.g., MRR@10, higher is better) after a prefix of the test phase. The worst ones are pruned and only the others continue to the next (longer) prefix. Pruned variants have no results.")
+	private static String HALVING_METRIC = null;
+	//the share of the test phase after which the variants are compared for the first time
+	@Option(names = {"--halving-prefix"}, paramLabel="<VALUE>", description = "The share of the test phase after which the variants are compared for the first time (successive halving)")
+	private static double HALVING_PREFIX = 0.125;
+	//the share of the variants that is pruned at each comparison
+	@Option(names = {"--halving-fraction"}, paramLabel="<VALUE>", description = "The share of the variants that is pruned at each comparison (successive halving). "
+			+ "The evaluated prefix grows by the factor 1/(1-VALUE) after each comparison.")
+	private static double HALVING_FRACTION = 0.5;
+	//the number of worker processes
+	@Option(names = {"-P", "--processes"}, paramLabel="<VALUE>", description = "If set to N > 1, the filtered and split events are written to a binary event log once "
+			+ "and N worker JVMs evaluate a share of the algorithms each on this log. The results of the workers are merged. Each worker uses <thread-count>/N threads.")
+	private static int PROCESS_COUNT = 0;
+	//additional JVM options for the worker processes
+	@Option(names = {"-J", "--worker-jvm-options"}, paramLabel="<VALUE>", description = "Space-separated JVM options for the worker processes, e.g., \"-Xmx8g\"")
+	private static String WORKER_JVM_OPTIONS = "";
+	//the event log of the coordinator (only set in worker processes)
+	@Option(names = {"--worker-event-log"}, hidden = true)
+	private static String WORKER_EVENT_LOG = null;
+	//the name of the worker's output folder (only set in worker processes)
+	@Option(names = {"--worker-output"}, hidden = true)
+	private static String WORKER_OUTPUT = null;
 	
 	//the global start time used for output writing to the same folder
 	public static String startTime;	
@@ -121,21 +202,30 @@ public class StreamingRec {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-hh-mm-ss");
 		dateFormat.setTimeZone(instance.getTimeZone());
 		startTime = dateFormat.format(instance.getTime());	
+		if (RESUME != null) {
+			//continue writing to the output folder of the previous run
+			startTime = RESUME;
+		}
+		if (WORKER_OUTPUT != null) {
+			//worker of a multi-process evaluation -> the coordinator decides the output folder
+			startTime = WORKER_OUTPUT;
+		}
 		//redirect the console output to a file
 		Util.redirectConsole();
+		AlgorithmWrapper.setSpillResults(SPILL_RESULTS);
 		//set the sessions extractor's session split thresholds
 		SessionExtractor.setThresholdInMS(SESSION_TIME_THRESHOLD);
+		if (SAMPLING != null) {
+			try {
+				clickSampler = ClickSampler.parse(SAMPLING);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		}
 
-		//create a human readable session threshold for the output
-		String timeThreshold = ISOPeriodFormat.standard().print(new Period(SESSION_TIME_THRESHOLD)).replace("PT", "");
 		// output the parameters 
-		System.out.println(
-				"Input files: \"" + INPUT_FILENAME_ITEMS + "\" & \"" + INPUT_FILENAME_CLICKS + "\"");
-		System.out.println("Config files: \"" + ALGORITHM_FILE_NAME + "\" & \"" + METRICS_FILE_NAME + "\"");
-		System.out.println("session Time Thresholds: \"" + timeThreshold + "\"");
-		System.out.println("Session length filter: " + SESSION_LENGTH_FILTER);
-		System.out.println("Split threshold: " + SPLIT_THRESHOLD);
-		System.out.println();
+		printParameters();
 
 		// load algorithms so that configuration errors appear before input file loading
 		List<Algorithm> tmpAlgorithms = Config.loadAlgorithms(ALGORITHM_FILE_NAME);
@@ -154,6 +244,300 @@ public class StreamingRec {
 		}
 		System.out.println();
 
+		if (HALVING_METRIC != null) {
+			// check the successive halving parameters before the input files are read
+			if (LOCKSTEP_BUFFER_SIZE > 0 || PROCESS_COUNT > 1 || RESUME != null) {
+				System.err.println("Successive halving cannot be combined with lockstep mode, multiple processes, or resuming.");
+				return;
+			}
+			if (HALVING_PREFIX <= 0 || HALVING_PREFIX >= 1 || HALVING_FRACTION <= 0 || HALVING_FRACTION >= 1) {
+				System.err.println("The successive halving prefix and fraction have to be between 0 and 1.");
+				return;
+			}
+			boolean found = false;
+			for (Metric metric : Config.loadMetrics(METRICS_FILE_NAME)) {
+				//runtimes and other measurements are only known at the end of the test phase
+				found |= metric.getName().equals(HALVING_METRIC) && metric.isBasedOnRecommendations();
+			}
+			if (!found) {
+				System.err.println("Unknown metric for successive halving: \"" + HALVING_METRIC + "\". Please check the metrics config file.");
+				return;
+			}
+		}
+
+		if (ONLINE_TESTS && (LOCKSTEP_BUFFER_SIZE <= 0 || PROCESS_COUNT > 1 || CHECKPOINT_INTERVAL > 0 || RESUME != null)) {
+			// the results of all algorithms are paired click by click -> they have to run on the same work packages concurrently
+			// (and the checkpoints could not restore the discarded per-click results of the metrics)
+			System.err.println("Online statistical tests require lockstep mode and cannot be combined with multiple processes, checkpoints, or resuming.");
+			return;
+		}
+		if (ONLINE_TESTS && (tmpAlgorithms.size() > Math.max(1, THREAD_COUNT) || HEAP_BUDGET > 0)) {
+			// with multiple lockstep groups, the results of the earlier groups would have to be kept until the last group
+			// has evaluated the same clicks -> as much memory as the stored per-click results
+			System.err.println("Online statistical tests require all algorithms to run in one lockstep group. Set the thread count to at least "
+					+ tmpAlgorithms.size() + " and do not set a heap budget.");
+			return;
+		}
+
+		if (FOLLOW) {
+			// live mode -> every algorithm follows the input files in its own thread
+			new LiveEvaluation(tmpAlgorithms, INPUT_FILENAME_ITEMS, INPUT_FILENAME_CLICKS, OLD_FILE_FORMAT,
+					LIVE_REPORT_INTERVAL).run();
+			return;
+		}
+
+		SplitData splitData;
+		//the ground truth of the test clicks (only in worker mode, otherwise it is extracted from the sessions)
+		List<LongSet> groundTruths = null;
+		if (WORKER_EVENT_LOG != null) {
+			// worker of a multi-process evaluation -> the coordinator already read, filtered, and split the data
+			groundTruths = new ObjectArrayList<>();
+			splitData = EventLogFile.read(WORKER_EVENT_LOG, groundTruths);
+			System.out.println("Read " + splitData.trainingData.size() + " training and " + splitData.testData.size()
+					+ " test events from " + WORKER_EVENT_LOG);
+		} else {
+			splitData = readAndSplitData();
+		}
+
+		if (PROCESS_COUNT > 1 && WORKER_EVENT_LOG == null) {
+			// multi-process mode -> the algorithms are evaluated by worker processes
+			if (RESUME != null) {
+				System.err.println("Resuming is not supported in multi-process mode.");
+				return;
+			}
+			new MultiProcessCoordinator(PROCESS_COUNT, getWorkerArguments(), WORKER_JVM_OPTIONS, OUTPUT_STATS).run(splitData, tmpAlgorithms);
+			return;
+		}
+
+		// re-extract the events based on type (item or transaction) for later convenience
+		List<Item> trainingItems = new ObjectArrayList<Item>();
+		List<Transaction> trainingTransactions = new ObjectArrayList<Transaction>();
+		Util.extractEventTypes(splitData.trainingData, trainingItems, trainingTransactions);
+		
+		long realTrainTime = trainingTransactions.get(trainingTransactions.size()-1).timestamp.getTime() - trainingTransactions.get(0).timestamp.getTime();
+		
+		// create algorithms
+		Map<String, Algorithm> algorithmsWithName = new Object2ObjectLinkedOpenHashMap<String, Algorithm>();
+		for (Algorithm alg : tmpAlgorithms) {
+			algorithmsWithName.put(alg.getName(), alg);
+		}
+
+		// create list of metrics
+		Map<String, List<Metric>> metrics = new Object2ObjectLinkedOpenHashMap<String, List<Metric>>();
+		Map<Metric, String> metricsByAlgorithm = new Object2ObjectLinkedOpenHashMap<Metric, String>();
+		Map<String, List<Metric>> metricsByName = new Object2ObjectLinkedOpenHashMap<String, List<Metric>>();
+		// for each algorithm, create a list of metrics
+		for (String algorithmName : algorithmsWithName.keySet()) {
+			List<Metric> metricsList = Config.loadMetrics(METRICS_FILE_NAME);
+			for (Metric m : metricsList) {
+				m.setAlgorithm(algorithmName);
+				//add the metrics to maps for better retrieval
+				addMetricToMaps(m, algorithmName, m.getName(), metrics, metricsByAlgorithm, metricsByName);
+			}
+		}
+		//the online tests of each metric (if enabled)
+		Map<String, OnlinePairedTTest> onlineTests = new Object2ObjectLinkedOpenHashMap<>();
+		if (ONLINE_TESTS) {
+			DetailedResults.setDiscardValues(true);
+			for (Entry<String, List<Metric>> ml : metricsByName.entrySet()) {
+				if (ml.getValue().get(0) instanceof HypothesisTestableMetric) {
+					OnlinePairedTTest onlineTest = new OnlinePairedTTest(ml.getKey(),
+							new ObjectArrayList<>(algorithmsWithName.keySet()));
+					for (Metric m : ml.getValue()) {
+						((HypothesisTestableMetric) m).setOnlineTest(onlineTest);
+					}
+					onlineTests.put(ml.getKey(), onlineTest);
+				}
+			}
+		}
+
+		// create the main click log per user (for sessions and user histories)
+		Map<Long, UserEventLog> userLogs = new Long2ObjectOpenHashMap<>();
+		List<ClickData> trainingWorkPackages = createTrainingWorkPackages(trainingTransactions, userLogs);
+		//save some RAM (in lockstep mode, the training clicks are needed again for every group of algorithms)
+		if (LOCKSTEP_BUFFER_SIZE <= 0) {
+			trainingTransactions = null;
+		}
+
+		// extract all sessions of users for evaluation phase
+		// create map of next transactions
+		List<Transaction> testTransactions = new ObjectArrayList<Transaction>();
+		Util.extractEventTypes(splitData.testData, new ObjectArrayList<Item>(), testTransactions);
+		SessionExtractor sessionExtractorforEvaluation = new SessionExtractor();
+		if (groundTruths == null) {
+			for (Transaction t : testTransactions) {
+				sessionExtractorforEvaluation.addClick(t);
+			}
+		}
+		long realTestTime = testTransactions.get(testTransactions.size()-1).timestamp.getTime() - testTransactions.get(0).timestamp.getTime();
+		//save some RAM
+		testTransactions = null;
+		
+		//Log the time window of the eval
+		System.out.println("The training time window is: " + Util.printETA(realTrainTime)); 
+		System.out.println("The test time window is: " + Util.printETA(realTestTime)); 
+
+
+		AlgorithmWrapper.nbOfAlgorithms = algorithmsWithName.size();
+		AlgorithmWrapper.setFrozenWindowThreads(FROZEN_WINDOW_THREADS);
+		AlgorithmWrapper.setMetricPipelineSize(METRIC_PIPELINE_SIZE);
+		AlgorithmWrapper.setCheckpoints(CHECKPOINT_INTERVAL, RESUME != null);
+		// dispatch the expensive algorithms first (based on the runtimes of previous runs)
+		AlgorithmScheduler scheduler = new AlgorithmScheduler(metrics, splitData.testData.size());
+		scheduler.setHeapBudget(HEAP_BUDGET * 1024 * 1024, THREAD_COUNT);
+		AlgorithmWrapper.setMeasureStateSize(HEAP_BUDGET > 0);
+		List<Algorithm> algorithms = scheduler.order(algorithmsWithName.values());
+		//save some RAM
+		algorithmsWithName = null;
+		SuccessiveHalving successiveHalving = null;
+		if (LOCKSTEP_BUFFER_SIZE > 0) {
+			// lockstep mode: run the algorithms in groups of at most THREAD_COUNT.
+			// Within a group, all algorithms consume the same stream of work packages,
+			// which are created on the fly and discarded once every algorithm has processed them.
+			// since the algorithms are ordered by cost, algorithms with similar costs end up in the same group.
+			// with a heap budget, a group may also be limited by the estimated state sizes.
+			boolean firstGroup = true;
+			for (List<Algorithm> group : scheduler.createGroups(algorithms, Math.max(1, THREAD_COUNT))) {
+				System.out.println("Starting lockstep group of " + group.size() + " algorithms");
+				if (!firstGroup) {
+					// the session state of the previous group has advanced to the end of the test
+					// phase -> start over from the training data
+					userLogs = new Long2ObjectOpenHashMap<>();
+					trainingWorkPackages = createTrainingWorkPackages(trainingTransactions, userLogs);
+				}
+				firstGroup = false;
+				// the ground truth is determined per session -> start over for every group
+				GroundTruthExtractor groundTruthExtractor = groundTruths == null
+						? new GroundTruthExtractor(sessionExtractorforEvaluation) : null;
+				WorkPackageRingBuffer ringBuffer = new WorkPackageRingBuffer(LOCKSTEP_BUFFER_SIZE, group.size(),
+						splitData.testData.size());
+				// every algorithm of the group needs its own thread, since they wait for each other
+				ExecutorService executor = Executors.newFixedThreadPool(group.size());
+				for (int i = 0; i < group.size(); i++) {
+					Algorithm algorithm = group.get(i);
+					executor.execute(new AlgorithmWrapper(algorithm, metrics.get(algorithm.getName()),
+							trainingItems, trainingWorkPackages, ringBuffer, i));
+				}
+				//save some RAM
+				trainingWorkPackages = null;
+				// produce the work packages for this group
+				int testClick = 0;
+				for (Event currentEvent : splitData.testData) {
+					WorkPackage workPackage = getWorkPackage(currentEvent, userLogs, groundTruthExtractor);
+					if (groundTruths != null && workPackage instanceof WorkPackageClick) {
+						((WorkPackageClick) workPackage).groundTruth = groundTruths.get(testClick++);
+					}
+					ringBuffer.publish(workPackage);
+				}
+				//wait for the group to finish
+				executor.shutdown();
+				while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+					// wait for threads to finish
+				}
+			}
+		} else {
+			// test phase
+			// create the work packages (with click, session, ground truth, etc.) in parallel
+			List<WorkPackage> testWorkPackages = createTestWorkPackages(splitData.testData, userLogs,
+					groundTruths == null ? new GroundTruthExtractor(sessionExtractorforEvaluation) : null);
+			if (groundTruths != null) {
+				// worker mode -> use the ground truth from the event log
+				int testClick = 0;
+				for (WorkPackage workPackage : testWorkPackages) {
+					if (workPackage instanceof WorkPackageClick) {
+						((WorkPackageClick) workPackage).groundTruth = groundTruths.get(testClick++);
+					}
+				}
+			}
+
+			// create threaded wrappers
+			List<AlgorithmWrapper> wrappers = new ObjectArrayList<>();
+			for (Algorithm algorithm : algorithms) {
+				wrappers.add(new AlgorithmWrapper(algorithm, metrics.get(algorithm.getName()), trainingItems,
+						trainingWorkPackages, testWorkPackages));
+			}
+			//save some RAM
+			algorithms = null;
+			trainingWorkPackages = null;
+			testWorkPackages = null;
+			if (HALVING_METRIC != null) {
+				// prune the worst variants of each parameter sweep early
+				successiveHalving = new SuccessiveHalving(HALVING_METRIC, HALVING_PREFIX, HALVING_FRACTION,
+						splitData.testData.size());
+				successiveHalving.register(wrappers);
+				scheduler.setSuccessiveHalving(successiveHalving);
+			}
+
+			// execute the wrappers with a limited number of concurrent threads to avoid thrashing
+			// (and within the heap budget, if set)
+			scheduler.execute(wrappers, THREAD_COUNT);
+			System.out.println();
+			scheduler.reportSchedule(wrappers);
+		}
+		//save some RAM
+		trainingItems = null;
+		if (RESUME != null || successiveHalving != null) {
+			// the algorithm wrappers replaced the metrics with the ones restored from the checkpoints
+			// and pruned algorithms have no results
+			metricsByAlgorithm.clear();
+			metricsByName.clear();
+			for (Entry<String, List<Metric>> ml : metrics.entrySet()) {
+				if (successiveHalving != null && successiveHalving.isPruned(ml.getKey())) {
+					continue;
+				}
+				for (Metric m : ml.getValue()) {
+					addMetricToMaps(m, ml.getKey(), m.getName(), new Object2ObjectLinkedOpenHashMap<>(),
+							metricsByAlgorithm, metricsByName);
+				}
+			}
+		}
+
+		// output parameters again for convenience
+		System.out.println();
+		printParameters();
+
+		// print evaluation results extracted from metric classes
+		DecimalFormat df = new DecimalFormat("0.0000000");
+		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+
+		//print the actual results
+		for (Entry<String, List<Metric>> ml : metricsByName.entrySet()) {
+			System.out.println(ml.getKey());
+			for (Metric m : metricsByName.get(ml.getKey())) {
+				System.out.println(
+						StringUtils.rightPad(metricsByAlgorithm.get(m), 70, ' ') + "\t" + df.format(m.getResults()));
+			}
+		}
+		
+		//create and print statistical significance tests
+		List<HypothesisTestableMetric> statMetrics = new ArrayList<>();
+		for (Entry<String, List<Metric>> ml : metricsByName.entrySet()) {
+			if(ml.getValue().iterator().next() instanceof HypothesisTestableMetric){
+				for (Metric metric : ml.getValue()) {
+					statMetrics.add((HypothesisTestableMetric) metric);
+				}				
+			}
+		}
+		if(OUTPUT_STATS){
+			System.out.println();
+			System.out.println("---- STATISTICAL RESULTS ----");
+			System.out.println();
+			if (ONLINE_TESTS) {
+				System.out.println(Util.executeStatisticalTests(onlineTests, new ObjectArrayList<>(metrics.keySet())));
+			} else {
+				System.out.println(Util.executeStatisticalTests(statMetrics, true));
+			}
+		}		
+	}
+
+	/**
+	 * Reads the input files, filters short sessions, prints stats (if enabled),
+	 * and splits the data into training and test events
+	 * @return the split data
+	 * @throws IOException -
+	 * @throws ParseException -
+	 */
+	private static SplitData readAndSplitData() throws IOException, ParseException {
 		// read the data
 		FilteredDataReader reader = new FilteredDataReader();
 		RawData data = reader.readFilteredData(INPUT_FILENAME_ITEMS, INPUT_FILENAME_CLICKS, OUTPUT_STATS,
@@ -249,156 +633,200 @@ public class StreamingRec {
 		splitter.setSplitThreshold(SPLIT_THRESHOLD); 
 		// split after N% of the events.
 		// Everything after that goes into the test set
-		SplitData splitData = splitter.splitData(data);
-		data = null;
+		return splitter.splitData(data);
+	}
 
-		// re-extract the events based on type (item or transaction) for later convenience
-		List<Item> trainingItems = new ObjectArrayList<Item>();
-		List<Transaction> trainingTransactions = new ObjectArrayList<Transaction>();
-		Util.extractEventTypes(splitData.trainingData, trainingItems, trainingTransactions);
-		
-		long realTrainTime = trainingTransactions.get(trainingTransactions.size()-1).timestamp.getTime() - trainingTransactions.get(0).timestamp.getTime();
-		
-		// create algorithms
-		Map<String, Algorithm> algorithmsWithName = new Object2ObjectLinkedOpenHashMap<String, Algorithm>();
-		for (Algorithm alg : tmpAlgorithms) {
-			algorithmsWithName.put(alg.getName(), alg);
+	/**
+	 * Prints the input files, config files, and data parameters
+	 */
+	static void printParameters() {
+		//create a human readable session threshold for the output
+		String timeThreshold = ISOPeriodFormat.standard().print(new Period(SESSION_TIME_THRESHOLD)).replace("PT", "");
+		System.out.println(
+				"Input files: \"" + INPUT_FILENAME_ITEMS + "\" & \"" + INPUT_FILENAME_CLICKS + "\"");
+		System.out.println("Config files: \"" + ALGORITHM_FILE_NAME + "\" & \"" + METRICS_FILE_NAME + "\"");
+		System.out.println("session Time Thresholds: \"" + timeThreshold + "\"");
+		System.out.println("Session length filter: " + SESSION_LENGTH_FILTER);
+		if (clickSampler != null) {
+			System.out.println("Sampling: " + clickSampler);
 		}
+		System.out.println("Split threshold: " + SPLIT_THRESHOLD);
+		System.out.println();
+	}
 
-		// create list of metrics
-		Map<String, List<Metric>> metrics = new Object2ObjectLinkedOpenHashMap<String, List<Metric>>();
-		Map<Metric, String> metricsByAlgorithm = new Object2ObjectLinkedOpenHashMap<Metric, String>();
-		Map<String, List<Metric>> metricsByName = new Object2ObjectLinkedOpenHashMap<String, List<Metric>>();
-		// for each algorithm, create a list of metrics
-		for (String algorithmName : algorithmsWithName.keySet()) {
-			List<Metric> metricsList = Config.loadMetrics(METRICS_FILE_NAME);
-			for (Metric m : metricsList) {
-				m.setAlgorithm(algorithmName);
-				//add the metrics to maps for better retrieval
-				addMetricToMaps(m, algorithmName, m.getName(), metrics, metricsByAlgorithm, metricsByName);
-			}
+	/**
+	 * Creates the command line arguments that are the same for all worker processes
+	 * (i.e., everything except the input files, the algorithm config, and the output folder)
+	 * @return the arguments
+	 */
+	private static List<String> getWorkerArguments() {
+		List<String> arguments = new ObjectArrayList<>();
+		arguments.add("--items=" + INPUT_FILENAME_ITEMS);
+		arguments.add("--clicks=" + INPUT_FILENAME_CLICKS);
+		arguments.add("--metrics-config=" + METRICS_FILE_NAME);
+		arguments.add("--session-time-threshold=" + SESSION_TIME_THRESHOLD);
+		arguments.add("--session-length-filter=" + SESSION_LENGTH_FILTER);
+		arguments.add("--split-threshold=" + SPLIT_THRESHOLD);
+		arguments.add("--thread-count=" + Math.max(1, THREAD_COUNT / PROCESS_COUNT));
+		arguments.add("--lockstep-buffer-size=" + LOCKSTEP_BUFFER_SIZE);
+		arguments.add("--frozen-window-threads=" + FROZEN_WINDOW_THREADS);
+		arguments.add("--metric-pipeline=" + METRIC_PIPELINE_SIZE);
+		if (SPILL_RESULTS) {
+			arguments.add("--spill-results");
+		}
+		arguments.add("--checkpoint-interval=" + CHECKPOINT_INTERVAL);
+		arguments.add("--heap-budget=" + HEAP_BUDGET);
+		if (SAMPLING != null) {
+			arguments.add("--sampling=" + SAMPLING);
+		}
+		if (DEDUPLICATE) {
+			arguments.add("--deduplicate");
 		}
+		return arguments;
+	}
 
-		// create main session extractor and user history helper
-		SessionExtractor sessionExtractor = new SessionExtractor();
-		Map<Long, List<Transaction>> userHistory = new Long2ObjectOpenHashMap<>();
+	/**
+	 * Creates the click data for the training phase and, at the same time,
+	 * fills the user click logs with the training clicks
+	 * @param trainingTransactions -
+	 * @param userLogs -
+	 * @return the click data of all training clicks
+	 */
+	static List<ClickData> createTrainingWorkPackages(List<Transaction> trainingTransactions,
+			Map<Long, UserEventLog> userLogs) {
 		List<ClickData> trainingWorkPackages = new ObjectArrayList<>();
 		for (Transaction t : trainingTransactions) {
-			trainingWorkPackages
-					.add(((WorkPackageClick) getWorkPackage(t, sessionExtractor, null, userHistory)).clickData);
+			trainingWorkPackages.add(((WorkPackageClick) getWorkPackage(t, userLogs, null)).clickData);
 		}
-		//save some RAM
-		trainingTransactions = null;
-
-		// create a thread pool executor to limit the number of concurrent
-		// threads to avoid thrashing
-		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		return trainingWorkPackages;
+	}
 
-		// extract all sessions of users for evaluation phase
-		// create map of next transactions
-		List<Transaction> testTransactions = new ObjectArrayList<Transaction>();
-		Util.extractEventTypes(splitData.testData, new ObjectArrayList<Item>(), testTransactions);
-		SessionExtractor sessionExtractorforEvaluation = new SessionExtractor();
-		for (Transaction t : testTransactions) {
-			sessionExtractorforEvaluation.addClick(t);
+	/**
+	 * Creates the work packages for the test phase in parallel. Since the sessions,
+	 * user histories, and ground truths of different users are independent of each other,
+	 * the clicks are partitioned by user id and each partition is processed in chronological
+	 * order by a fork/join task. Each work package is then stored at the position of its event,
+	 * so that the resulting list is in the same chronological order as the test data.
+	 * @param testData -
+	 * @param userLogs -
+	 * @param groundTruthExtractor -
+	 * @return the work packages for the test phase
+	 */
+	private static List<WorkPackage> createTestWorkPackages(List<Event> testData, Map<Long, UserEventLog> userLogs,
+			GroundTruthExtractor groundTruthExtractor) {
+		WorkPackage[] workPackages = new WorkPackage[testData.size()];
+		// partition the indices of the click events by user.
+		// items can be wrapped right away.
+		int nbOfItems = 0;
+		int parallelism = Math.max(1, THREAD_COUNT);
+		IntArrayList[] partitions = new IntArrayList[parallelism * 8];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new IntArrayList();
 		}
-		long realTestTime = testTransactions.get(testTransactions.size()-1).timestamp.getTime() - testTransactions.get(0).timestamp.getTime();
-		//save some RAM
-		testTransactions = null;
-		
-		//Log the time window of the eval
-		System.out.println("The training time window is: " + Util.printETA(realTrainTime)); 
-		System.out.println("The test time window is: " + Util.printETA(realTestTime)); 
-
-
-		// test phase
-		int nextPercentage = 0;
-		List<WorkPackage> testWorkPackages = new ObjectArrayList<>();
-		for (int i = 0; i < splitData.testData.size(); i++) {
-			// log the progress
-			int percentage = (int) ((1d * (i + 1) / splitData.testData.size()) * 10);
-			if (percentage == nextPercentage) {
-				System.out.println("Creating work packages. Progress: " + percentage * 10 + "%");
-				nextPercentage++;
+		for (int i = 0; i < testData.size(); i++) {
+			Event event = testData.get(i);
+			if (event instanceof Item) {
+				workPackages[i] = getWorkPackage(event, userLogs, groundTruthExtractor);
+				nbOfItems++;
+			} else {
+				long userId = ((Transaction) event).userId;
+				// create the click logs of new users here,
+				// so that the map is only read concurrently and never written
+				if (!userLogs.containsKey(userId)) {
+					userLogs.put(userId, new UserEventLog());
+				}
+				partitions[(Long.hashCode(userId) & Integer.MAX_VALUE) % partitions.length].add(i);
 			}
-			// extract the current event
-			Event currentEvent = splitData.testData.get(i);
-			//create a work package (with click, session, ground truth, etc.)
-			//and add it to the list of test packages
-			testWorkPackages
-					.add(getWorkPackage(currentEvent, sessionExtractor, sessionExtractorforEvaluation, userHistory));
-		}
-
-		// create threaded wrappers
-		AlgorithmWrapper.nbOfAlgorithms = algorithmsWithName.size();
-		for (Entry<String, Algorithm> alg : algorithmsWithName.entrySet()) {
-			AlgorithmWrapper wrapper = new AlgorithmWrapper(alg.getValue(), metrics.get(alg.getKey()), trainingItems,
-					trainingWorkPackages, testWorkPackages);
-			//execute right away
-			executor.execute(wrapper);
 		}
-		//save some RAM
-		algorithmsWithName = null;
-		trainingItems = null;
-		trainingWorkPackages = null;
-		testWorkPackages = null;
+		// create the click work packages of all partitions in parallel
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		pool.invoke(new WorkPackageTask(partitions, 0, partitions.length, testData, workPackages, userLogs,
+				groundTruthExtractor, new AtomicInteger(nbOfItems)));
+		pool.shutdown();
+		return ObjectArrayList.wrap(workPackages);
+	}
 
-		//wait for all algorithms to finish (note: AlgorithmWrapper class does some tmp output)
-		executor.shutdown();
-		while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-			// wait for threads to finish
+	/**
+	 * A fork/join task that creates the click work packages of a range of user partitions.
+	 * @author MJ
+	 *
+	 */
+	private static class WorkPackageTask extends RecursiveAction {
+		private static final long serialVersionUID = 6290582911043207374L;
+		//the partitions of event indices
+		private final IntArrayList[] partitions;
+		//the range of partitions to be processed by this task
+		private final int from;
+		private final int to;
+		//the input events and the output work packages
+		private final List<Event> testData;
+		private final WorkPackage[] workPackages;
+		//the state for creating the work packages
+		private final Map<Long, UserEventLog> userLogs;
+		private final GroundTruthExtractor groundTruthExtractor;
+		//the number of work packages created so far (for progress reporting)
+		private final AtomicInteger progress;
+
+		/**
+		 * Creates a task for a range of partitions
+		 * @param partitions -
+		 * @param from -
+		 * @param to -
+		 * @param testData -
+		 * @param workPackages -
+		 * @param userLogs -
+		 * @param groundTruthExtractor -
+		 * @param progress -
+		 */
+		private WorkPackageTask(IntArrayList[] partitions, int from, int to, List<Event> testData,
+				WorkPackage[] workPackages, Map<Long, UserEventLog> userLogs,
+				GroundTruthExtractor groundTruthExtractor, AtomicInteger progress) {
+			this.partitions = partitions;
+			this.from = from;
+			this.to = to;
+			this.testData = testData;
+			this.workPackages = workPackages;
+			this.userLogs = userLogs;
+			this.groundTruthExtractor = groundTruthExtractor;
+			this.progress = progress;
 		}
 
-		// output parameters again for convenience
-		System.out.println();
-		System.out.println(
-				"Input files: \"" + INPUT_FILENAME_ITEMS + "\" & \"" + INPUT_FILENAME_CLICKS + "\"");
-		System.out.println("Config files: \"" + ALGORITHM_FILE_NAME + "\" & \"" + METRICS_FILE_NAME + "\"");
-		System.out.println("session Time Thresholds: \"" + timeThreshold + "\"");
-		System.out.println("Session length filter: " + SESSION_LENGTH_FILTER);
-		System.out.println("Split threshold: " + SPLIT_THRESHOLD);
-		System.out.println();
-
-		// print evaluation results extracted from metric classes
-		DecimalFormat df = new DecimalFormat("0.0000000");
-		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-
-		//print the actual results
-		for (Entry<String, List<Metric>> ml : metricsByName.entrySet()) {
-			System.out.println(ml.getKey());
-			for (Metric m : metricsByName.get(ml.getKey())) {
-				System.out.println(
-						StringUtils.rightPad(metricsByAlgorithm.get(m), 70, ' ') + "\t" + df.format(m.getResults()));
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				// split the range of partitions in halves
+				int middle = (from + to) / 2;
+				invokeAll(new WorkPackageTask(partitions, from, middle, testData, workPackages, userLogs,
+						groundTruthExtractor, progress),
+						new WorkPackageTask(partitions, middle, to, testData, workPackages, userLogs,
+								groundTruthExtractor, progress));
+				return;
 			}
-		}
-		
-		//create and print statistical significance tests
-		List<HypothesisTestableMetric> statMetrics = new ArrayList<>();
-		for (Entry<String, List<Metric>> ml : metricsByName.entrySet()) {
-			if(ml.getValue().iterator().next() instanceof HypothesisTestableMetric){
-				for (Metric metric : ml.getValue()) {
-					statMetrics.add((HypothesisTestableMetric) metric);
-				}				
+			// process the clicks of one partition in chronological order
+			int size = testData.size();
+			IntArrayList partition = partitions[from];
+			for (int i = 0; i < partition.size(); i++) {
+				int index = partition.getInt(i);
+				workPackages[index] = getWorkPackage(testData.get(index), userLogs, groundTruthExtractor);
+				// log the progress whenever the next decile is reached (each work package is counted once)
+				int done = progress.incrementAndGet();
+				long decile = done * 10L / size;
+				if (decile > (done - 1) * 10L / size) {
+					System.out.println("Creating work packages. Progress: " + decile * 10 + "%");
+				}
 			}
 		}
-		if(OUTPUT_STATS){
-			System.out.println();
-			System.out.println("---- STATISTICAL RESULTS ----");
-			System.out.println();
-			System.out.println(Util.executeStatisticalTests(statMetrics, true));
-		}		
 	}
 
 	/**
 	 * create a {@link WorkPackage} from an event (click or new item)
 	 * @param event -
-	 * @param sessionExtractor -
-	 * @param sessionExtractorforEvaluation -
-	 * @param userHistory -
+	 * @param userLogs -
+	 * @param groundTruthExtractor -
 	 * @return the work package
 	 */
-	private static WorkPackage getWorkPackage(Event event, SessionExtractor sessionExtractor,
-			SessionExtractor sessionExtractorforEvaluation, Map<Long, List<Transaction>> userHistory) {
+	static WorkPackage getWorkPackage(Event event, Map<Long, UserEventLog> userLogs,
+			GroundTruthExtractor groundTruthExtractor) {
 		if (event instanceof Item) {
 			//in case of an item, just wrap it
 			WorkPackageArticle wpA = new WorkPackageArticle();
@@ -412,39 +840,26 @@ public class StreamingRec {
 			Transaction currentTransaction = (Transaction) event;
 			wpC.clickData = new ClickData();
 			wpC.clickData.click = currentTransaction;
+			//find the click log of the user
+			UserEventLog userLog = userLogs.get(currentTransaction.userId);
+			if (userLog == null) {
+				userLog = new UserEventLog();
+				userLogs.put(currentTransaction.userId, userLog);
+			}
+			userLog.addClick(currentTransaction);//add the current click to the user history
 			// extract the current user session (for removal of
 			// duplicate/unnecessary recommendations later)
-			List<Transaction> currenctUserSession = Collections
-					.unmodifiableList(new ObjectArrayList<>(sessionExtractor.addClick(currentTransaction)));
+			// as an unmodifiable view on the click log
+			List<Transaction> currenctUserSession = userLog.getSession();
 			wpC.clickData.session = currenctUserSession;
-			//extract the user history
-			List<Transaction> history = userHistory.get(currentTransaction.userId);
-			if (history == null) {
-				history = new ObjectArrayList<>();
-				userHistory.put(currentTransaction.userId, history);
-			}
-			history.add(currentTransaction);//add the current click to the user history
-			//make it an unmodifiable list
-			wpC.clickData.wholeUserHistory = Collections.unmodifiableList(new ObjectArrayList<>(history));
-			if (sessionExtractorforEvaluation != null) {
-				// from the session, extract the list of unique item ids
-				LongOpenHashSet uniqueItemIDSoFar = new LongOpenHashSet();
-				for (Transaction t : currenctUserSession) {
-					uniqueItemIDSoFar.add(t.item.id);
-				}
-				//check with the user history to remove unwanted "reminders"
-				List<Transaction> wholeCurrentUserSession = sessionExtractorforEvaluation
-						.getSession(currentTransaction);
-				//extact the ground truth
-				LongOpenHashSet groundTruth = new LongOpenHashSet();
-				for (Transaction t : wholeCurrentUserSession) {
-					groundTruth.add(t.item.id);
-				}
-				// all transactions from the list that have already happened +
-				// transactions for items that have already been clicked (no
-				// reminders)
-				groundTruth.removeAll(uniqueItemIDSoFar);
-				wpC.groundTruth = groundTruth;
+			//extract the user history as an unmodifiable view on the click log
+			wpC.clickData.wholeUserHistory = userLog.getHistory();
+			//decide if recommendations are generated and evaluated for this click
+			wpC.sampled = clickSampler == null || clickSampler.isSampled(wpC.clickData);
+			if (groundTruthExtractor != null) {
+				//extact the ground truth, i.e., the rest of the session
+				//without the items that have already been clicked (no reminders)
+				wpC.groundTruth = groundTruthExtractor.getGroundTruth(currentTransaction, currenctUserSession);
 			}
 			return wpC;
 		}
@@ -0,0 +1,212 @@
+package tudo.streamingrec;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Successive halving for parameter sweeps (see {@link Config#loadAlgorithmConfigs(String)}).
+ * The variants of a sweep are evaluated on a prefix of the test phase. Then, the worst
+ * fraction of the variants (according to a metric) is pruned and only the others continue
+ * to the next rung, where the remaining variants are compared again. The length of the
+ * evaluated prefix grows by the same factor by which the number of variants shrinks
+ * (e.g., it doubles if half of the variants are pruned), so that every rung costs roughly the same.
+ * <p>
+ * Variants are only compared to other variants of the same sweep, i.e., algorithms that
+ * are not part of a sweep are never pruned. To compare all variants at the same position
+ * of the test phase, an algorithm suspends itself at each rung (releasing its thread) and
+ * is resumed once all variants of its sweep have reached the rung.
+ *
+ * @author MJ
+ *
+ */
+public class SuccessiveHalving {
+	//the name of the metric by which the variants are compared (higher is better)
+	private final String metricName;
+	//the share of the test phase after which the first comparison happens
+	private final double prefix;
+	//the share of the variants that is pruned at each rung
+	private final double fraction;
+	//the number of events in the test phase
+	private final int nbOfEvents;
+	//the sweeps (by name) and the sweep of each algorithm (guarded by this)
+	private final Map<String, Sweep> sweeps = new Object2ObjectLinkedOpenHashMap<>();
+	private final Map<AlgorithmWrapper, Sweep> sweepByAlgorithm = new Object2ObjectOpenHashMap<>();
+	//the names of the pruned algorithms (guarded by this)
+	private final Set<String> pruned = new ObjectOpenHashSet<>();
+
+	/**
+	 * Creates a successive halving schedule
+	 * @param metricName the name of the metric by which the variants are compared (higher is better)
+	 * @param prefix the share of the test phase after which the first comparison happens (between 0 and 1)
+	 * @param fraction the share of the variants that is pruned at each rung (between 0 and 1)
+	 * @param nbOfEvents the number of events in the test phase
+	 */
+	public SuccessiveHalving(String metricName, double prefix, double fraction, int nbOfEvents) {
+		if (prefix <= 0 || prefix >= 1 || fraction <= 0 || fraction >= 1) {
+			throw new IllegalArgumentException("The prefix and the pruned fraction have to be between 0 and 1.");
+		}
+		this.metricName = metricName;
+		this.prefix = prefix;
+		this.fraction = fraction;
+		this.nbOfEvents = nbOfEvents;
+	}
+
+	/**
+	 * Groups the algorithms by sweep and attaches the schedule to them
+	 * @param wrappers the algorithms in dispatch order
+	 */
+	public synchronized void register(List<AlgorithmWrapper> wrappers) {
+		for (AlgorithmWrapper wrapper : wrappers) {
+			wrapper.setSuccessiveHalving(this);
+			String sweepName = wrapper.getSweepName();
+			if (sweepName == null) {
+				//not part of a sweep -> never suspended or pruned
+				continue;
+			}
+			Sweep sweep = sweeps.get(sweepName);
+			if (sweep == null) {
+				sweep = new Sweep(sweepName);
+				sweeps.put(sweepName, sweep);
+			}
+			sweep.alive.add(wrapper);
+			sweepByAlgorithm.put(wrapper, sweep);
+		}
+	}
+
+	/**
+	 * The position in the test phase at which the algorithm has to suspend itself next
+	 * @param wrapper -
+	 * @return the index of the event before which the algorithm has to suspend itself
+	 *         (or the number of events, if it can run until the end)
+	 */
+	public synchronized int getNextStop(AlgorithmWrapper wrapper) {
+		Sweep sweep = sweepByAlgorithm.get(wrapper);
+		if (sweep == null || sweep.alive.size() <= 1) {
+			//nothing to compare with
+			return nbOfEvents;
+		}
+		return getRungPosition(sweep.rung);
+	}
+
+	/**
+	 * The position of a rung in the test phase
+	 * @param rung -
+	 * @return the index of the event
+	 */
+	private int getRungPosition(int rung) {
+		//the budget per variant grows by the inverse of the share of surviving variants
+		double position = nbOfEvents * prefix * Math.pow(1 / (1 - fraction), rung);
+		return (int) Math.min(nbOfEvents, Math.ceil(position));
+	}
+
+	/**
+	 * Called when an algorithm returns from its execution, i.e., when it either suspended
+	 * itself at a rung, finished, or failed. If this was the last algorithm of its sweep
+	 * at the current rung, the worst variants are pruned.
+	 * @param wrapper -
+	 * @return the algorithms that continue with the next rung (might be empty)
+	 */
+	public synchronized List<AlgorithmWrapper> report(AlgorithmWrapper wrapper) {
+		Sweep sweep = sweepByAlgorithm.get(wrapper);
+		if (sweep == null) {
+			return Collections.emptyList();
+		}
+		if (wrapper.isSuspended()) {
+			sweep.waiting.add(wrapper);
+		} else {
+			//finished or failed -> the others do not wait for it anymore
+			sweep.alive.remove(wrapper);
+		}
+		if (sweep.waiting.isEmpty() || sweep.waiting.size() < sweep.alive.size()) {
+			return Collections.emptyList();
+		}
+		return prune(sweep);
+	}
+
+	/**
+	 * Compares the variants of a sweep that wait at the current rung and prunes the worst ones
+	 * @param sweep -
+	 * @return the surviving variants
+	 */
+	private List<AlgorithmWrapper> prune(Sweep sweep) {
+		//all variants that are still alive are waiting -> rank them
+		List<AlgorithmWrapper> ranked = new ObjectArrayList<>(sweep.alive);
+		sweep.waiting.clear();
+		Map<AlgorithmWrapper, Double> values = new Object2ObjectOpenHashMap<>();
+		for (AlgorithmWrapper wrapper : ranked) {
+			values.put(wrapper, wrapper.getMetricResult(metricName));
+		}
+		//the best results first and NaN results (e.g., no evaluated clicks) last;
+		//ties are broken by name, since the dispatch order depends on the runtimes of previous runs
+		ranked.sort(Comparator.comparing((AlgorithmWrapper w) -> Double.isNaN(values.get(w)))
+				.thenComparing(Comparator.comparingDouble((AlgorithmWrapper w) -> values.get(w)).reversed())
+				.thenComparing(AlgorithmWrapper::getAlgorithmName));
+		int keep = Math.max(1, (int) Math.ceil(ranked.size() * (1 - fraction)));
+
+		DecimalFormat df = new DecimalFormat("0.0000000");
+		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		int position = getRungPosition(sweep.rung);
+		System.out.println("Successive halving of \"" + sweep.name + "\" at event " + position + " of " + nbOfEvents
+				+ " (rung " + sweep.rung + "): keeping " + keep + " of " + ranked.size() + " variants by " + metricName);
+		List<AlgorithmWrapper> survivors = new ObjectArrayList<>();
+		for (int i = 0; i < ranked.size(); i++) {
+			AlgorithmWrapper wrapper = ranked.get(i);
+			boolean survives = i < keep;
+			System.out.println("  " + (survives ? "kept   " : "pruned ") + wrapper.getAlgorithmName() + ": "
+					+ df.format(values.get(wrapper)));
+			if (survives) {
+				survivors.add(wrapper);
+			} else {
+				sweep.alive.remove(wrapper);
+				pruned.add(wrapper.getAlgorithmName());
+				wrapper.prune();
+			}
+		}
+		sweep.rung++;
+		return survivors;
+	}
+
+	/**
+	 * Was the algorithm pruned?
+	 * @param algorithmName -
+	 * @return true if the algorithm did not finish the test phase because of its results
+	 */
+	public synchronized boolean isPruned(String algorithmName) {
+		return pruned.contains(algorithmName);
+	}
+
+	/**
+	 * The variants of one sweep
+	 * @author MJ
+	 *
+	 */
+	private static class Sweep {
+		//the name of the sweep
+		private final String name;
+		//the variants that have not been pruned and have not finished yet
+		private final List<AlgorithmWrapper> alive = new ObjectArrayList<>();
+		//the variants that have reached the current rung
+		private final List<AlgorithmWrapper> waiting = new ObjectArrayList<>();
+		//the current rung
+		private int rung = 0;
+
+		/**
+		 * Creates a sweep
+		 * @param name -
+		 */
+		private Sweep(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package tudo.streamingrec;
+
+import tudo.streamingrec.AlgorithmWrapper.WorkPackage;
+
+/**
+ * A bounded ring buffer that hands work packages from one producer (the thread that creates the
+ * work packages) to multiple consumers (the {@link AlgorithmWrapper} threads) in lockstep.
+ * Every consumer sees every work package in the same order. A slot is only overwritten
+ * after all consumers have moved past it, so that at most N work packages are in memory at once.
+ *
+ * @author MJ
+ *
+ */
+public class WorkPackageRingBuffer {
+	//the slots of the buffer
+	private final WorkPackage[] slots;
+	//the total number of work packages that will be published over the life time of the buffer
+	private final int nbOfWorkPackages;
+	//the number of work packages published so far (guarded by this)
+	private long published = 0;
+	//the number of work packages consumed so far per consumer (guarded by this)
+	private final long[] consumed;
+	//the lowest consumer cursor known to the producer (only accessed by the producer)
+	private long minConsumed = 0;
+	//the published cursor last seen by each consumer (only accessed by the respective consumer)
+	private final long[] knownPublished;
+	//the consumed cursor last reported by each consumer (only accessed by the respective consumer)
+	private final long[] reported;
+	//after how many work packages does a consumer report its progress without being blocked?
+	private final int reportInterval;
+
+	/**
+	 * Creates a ring buffer
+	 * @param capacity the maximum number of work packages in the buffer at the same time
+	 * @param nbOfConsumers the number of consumers that need to see each work package
+	 * @param nbOfWorkPackages the total number of work packages that will be published
+	 */
+	public WorkPackageRingBuffer(int capacity, int nbOfConsumers, int nbOfWorkPackages) {
+		this.slots = new WorkPackage[capacity];
+		this.consumed = new long[nbOfConsumers];
+		this.knownPublished = new long[nbOfConsumers];
+		this.reported = new long[nbOfConsumers];
+		this.nbOfWorkPackages = nbOfWorkPackages;
+		this.reportInterval = Math.max(1, capacity / 8);
+	}
+
+	/**
+	 * Publishes the next work package. Blocks while the buffer is full,
+	 * i.e., while the slowest consumer has not yet moved past the slot that is to be overwritten.
+	 * @param wp the work package
+	 * @throws InterruptedException -
+	 */
+	public void publish(WorkPackage wp) throws InterruptedException {
+		if (published - minConsumed >= slots.length) {
+			synchronized (this) {
+				//recalculate the slowest consumer and wait until it frees a slot
+				while (published - (minConsumed = minConsumed()) >= slots.length) {
+					wait();
+				}
+			}
+		}
+		//the slot is free -> write to it outside of the lock.
+		//the write becomes visible to consumers via the synchronized cursor update below.
+		slots[(int) (published % slots.length)] = wp;
+		synchronized (this) {
+			published++;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the work package with the given sequence number for the given consumer.
+	 * Consumers have to request the work packages in order.
+	 * Blocks until the work package has been published.
+	 * Calling this method also signals that the consumer is done with all previous work packages.
+	 * @param consumer the index of the consumer
+	 * @param sequence the sequence number of the work package
+	 * @return the work package
+	 * @throws InterruptedException -
+	 */
+	public WorkPackage take(int consumer, long sequence) throws InterruptedException {
+		return take(consumer, sequence, sequence);
+	}
+
+	/**
+	 * Returns the work package with the given sequence number for the given consumer,
+	 * while the consumer still holds on to the work packages from the given sequence number on
+	 * (e.g., to process a window of work packages at once). The window may not be larger than the capacity.
+	 * Consumers have to request the work packages in order.
+	 * Blocks until the work package has been published.
+	 * @param consumer the index of the consumer
+	 * @param sequence the sequence number of the work package
+	 * @param firstInUse the sequence number of the first work package that the consumer still holds on to
+	 * @return the work package
+	 * @throws InterruptedException -
+	 */
+	public WorkPackage take(int consumer, long sequence, long firstInUse) throws InterruptedException {
+		if (sequence >= knownPublished[consumer] || sequence - reported[consumer] >= reportInterval) {
+			synchronized (this) {
+				//report progress so that the producer can reuse the slots
+				consumed[consumer] = firstInUse;
+				reported[consumer] = sequence;
+				notifyAll();
+				//wait for the producer if necessary
+				while (sequence >= published) {
+					wait();
+				}
+				knownPublished[consumer] = published;
+			}
+		}
+		return slots[(int) (sequence % slots.length)];
+	}
+
+	/**
+	 * Removes a consumer from the buffer, e.g., when it is finished or has crashed,
+	 * so that the producer does not wait for it anymore.
+	 * @param consumer the index of the consumer
+	 */
+	public synchronized void detach(int consumer) {
+		consumed[consumer] = Long.MAX_VALUE;
+		notifyAll();
+	}
+
+	/**
+	 * The total number of work packages that will be published over the life time of the buffer
+	 * @return the number of work packages
+	 */
+	public int size() {
+		return nbOfWorkPackages;
+	}
+
+	/**
+	 * The maximum number of work packages in the buffer at the same time
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Finds the cursor of the slowest consumer.
+	 * Has to be called while holding the lock.
+	 * @return the lowest consumer cursor
+	 */
+	private long minConsumed() {
+		long min = Long.MAX_VALUE;
+		for (long c : consumed) {
+			min = Math.min(min, c);
+		}
+		return min;
+	}
+}
@@ -1,5 +1,6 @@
 package tudo.streamingrec.algorithms;
 
+import java.io.Serializable;
 import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
@@ -8,6 +9,7 @@ import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
+import tudo.streamingrec.data.Transaction;
 
 /**
  * The core algorithm interface
@@ -16,9 +18,13 @@ import tudo.streamingrec.data.Item;
  *
  */
 @JsonTypeInfo(use = JsonTypeInfo.Id.MINIMAL_CLASS, include = JsonTypeInfo.As.PROPERTY, property = "algorithm")
-public abstract class Algorithm {
+public abstract class Algorithm implements Serializable {
+	private static final long serialVersionUID = 5569357723447112598L;
 	// The name of the algorithm (extracted from the JSON configuration)
 	private String name;
+	// The name of the parameter sweep this algorithm is a variant of
+	// (null if the algorithm is not part of a sweep)
+	private String sweepName = null;
 	// The training interval (i.e. the time interval in terms of simulation time
 	// for each training batch)
 	private int trainingInterval;
@@ -71,6 +77,23 @@ public abstract class Algorithm {
 		}
 	}
 
+	/**
+	 * Determines if a call to {@link #train(List, List)} with the given click would
+	 * update the model. If not, the click is only buffered until the training interval
+	 * has elapsed and the model stays frozen in the meantime.
+	 * 
+	 * @param click
+	 *            the next click
+	 * @return true, if the model would be trained with this click
+	 */
+	public final boolean wouldTrain(Transaction click) {
+		if (trainingInterval <= 0) {
+			return true;
+		}
+		// same check as in the train method (in terms of simulation time)
+		return (click.timestamp.getTime() - lastTrainTime) / 1000 / 60 >= trainingInterval;
+	}
+
 	/**
 	 * The internal training method that has to be overriden by every algorithm
 	 * implemenation. Called once in the beginning with the main training data
@@ -98,6 +121,22 @@ public abstract class Algorithm {
 	 * @return A recommendation list
 	 */
 	public final LongArrayList recommend(ClickData clickData) {
+		return recommend(clickData, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Called when one recommendation list should be produced by the algorithm,
+	 * of which only the first k items are of interest (e.g., because the metrics
+	 * do not look any further). See {@link #recommend(ClickData)}.
+	 * 
+	 * @param clickData
+	 *            the data related to the current user click (the click itself,
+	 *            the session, and all previous user clicks)
+	 * @param k
+	 *            the maximum length of the recommendation list
+	 * @return A recommendation list with at most k items
+	 */
+	public final LongArrayList recommend(ClickData clickData, int k) {
 		if (wholeUserHistory) {
 			ClickData d = new ClickData();
 			d.click = clickData.click;
@@ -105,11 +144,40 @@ public abstract class Algorithm {
 			d.wholeUserHistory = clickData.wholeUserHistory;
 			clickData = d;
 		}
-		return recommendInternal(clickData);
+		return recommendInternal(clickData, k);
 	}
 
+	/**
+	 * The internal recommendation method that has to be overriden by every algorithm
+	 * implementation. Returns the complete recommendation list.
+	 * 
+	 * @param clickData
+	 *            the data related to the current user click
+	 * @return A recommendation list
+	 */
 	protected abstract LongArrayList recommendInternal(ClickData clickData);
 
+	/**
+	 * Produces a recommendation list with at most k items. By default, the complete list
+	 * of {@link #recommendInternal(ClickData)} is cut off. Algorithms that rank all items
+	 * (e.g., all items of the catalog) should override this method and only select the
+	 * top k items instead of sorting all of them.
+	 * 
+	 * @param clickData
+	 *            the data related to the current user click
+	 * @param k
+	 *            the maximum length of the recommendation list
+	 * @return A recommendation list with at most k items
+	 */
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
+		LongArrayList recommendations = recommendInternal(clickData);
+		if (recommendations.size() <= k) {
+			return recommendations;
+		}
+		//copy, since some algorithms return their internal lists
+		return new LongArrayList(recommendations.elements(), 0, Math.max(0, k));
+	}
+
 	/**
 	 * The name of the algorithm (extracted from the JSON configuration)
 	 * 
@@ -129,6 +197,27 @@ public abstract class Algorithm {
 		this.name = name;
 	}
 
+	/**
+	 * The name of the parameter sweep this algorithm is a variant of
+	 * (set when the sweep is expanded, see {@link tudo.streamingrec.Config#loadAlgorithmConfigs(String)})
+	 * 
+	 * @return the name of the sweep (null if the algorithm is not part of a sweep)
+	 */
+	public String getSweepName() {
+		return sweepName;
+	}
+
+	/**
+	 * The name of the parameter sweep this algorithm is a variant of
+	 * (set when the sweep is expanded, see {@link tudo.streamingrec.Config#loadAlgorithmConfigs(String)})
+	 * 
+	 * @param sweepName
+	 *            -
+	 */
+	public void setSweepName(String sweepName) {
+		this.sweepName = sweepName;
+	}
+
 	/**
 	 * The training interval (i.e. the time interval in terms of simulation time
 	 * for each training batch). Extracted from the JSON configuration.
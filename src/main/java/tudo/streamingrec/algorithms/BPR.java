@@ -1,7 +1,6 @@
 package tudo.streamingrec.algorithms;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -13,7 +12,7 @@ import tudo.streamingrec.algorithms.helper.DataManagement;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * Bayesian Personalized Ranking - Ranking by pairwise classification
@@ -29,6 +28,7 @@ import tudo.streamingrec.util.Util;
  * 
  */
 public class BPR extends Algorithm {
+	private static final long serialVersionUID = 7429680459760304783L;
 	//temporary storage for items, users, and clicks
 	private Set<Long> items = new HashSet<>();
 	private Set<Long> users = new HashSet<>();
@@ -471,8 +471,15 @@ public class BPR extends Algorithm {
 
 	@Override
 	public LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
 		// Calculate rating predictions for all items we know
-		Map<Long, Float> predictions = new HashMap<>();
+		long[] predictedItems = new long[items.size()];
+		double[] predictions = new double[items.size()];
+		int nbOfPredictions = 0;
 		float pred = Float.NaN;
 
 		// Go through all the items
@@ -482,11 +489,13 @@ public class BPR extends Algorithm {
 			// could make one
 			pred = predictRatingBPR(clickData.click.userId, item);
 			if (!Float.isNaN(pred)) {
-				predictions.put(item, pred);
+				predictedItems[nbOfPredictions] = item;
+				predictions[nbOfPredictions++] = pred;
 			}
 		}
 
-		return new LongArrayList(Util.sortByValue(predictions, false).keySet());
+		// only select the k items with the highest predictions
+		return TopK.selectKeys(predictedItems, predictions, nbOfPredictions, k, new LongArrayList());
 	}
 	
 	/**
@@ -17,6 +17,7 @@ import tudo.streamingrec.data.Transaction;
  *
  */
 public class CategoryPostFiltering extends Algorithm{
+	private static final long serialVersionUID = 408420812681300609L;
 	//the algorithm whose results should be post-filtered (set via JSON configuration)
 	protected Algorithm mainStrategy;
 	//should we fill append the items that were filtered from the result list again at the end of the list?
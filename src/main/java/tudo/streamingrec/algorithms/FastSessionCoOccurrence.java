@@ -8,12 +8,15 @@ import java.util.Map.Entry;
 
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * Counts the co-occurrences for two item clicks in one session.
@@ -22,6 +25,7 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class FastSessionCoOccurrence extends Algorithm {
+	private static final long serialVersionUID = 4039898552660500481L;
 	//a map of co-occurrences between item ids. the key type is string to be more general
 	protected Map<String, Object2IntOpenHashMap<String>> coOcurrenceMap = new Object2ObjectOpenHashMap<>();
 	//should the whole current sessions be considered or just the current item
@@ -43,8 +47,13 @@ public class FastSessionCoOccurrence extends Algorithm {
 
 	@Override
 	public LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
 		//create a list of scores for each item, which is the sum of all co-occurrence counts
-		Map<String, Double> combineWeights = new Object2DoubleOpenHashMap<String>();
+		Object2DoubleOpenHashMap<String> combineWeights = new Object2DoubleOpenHashMap<String>();
 		//depending on if we are supposed to use the whole session or not,
 		//this for loop only does one iteration on the last element or it iterates over
 		//all click in the current user sesssion
@@ -55,34 +64,31 @@ public class FastSessionCoOccurrence extends Algorithm {
 				continue;
 			}
 			// get the inner map of items that this item has co-occurred with
-			Map<String, Integer> m = coOcurrenceMap.get(getCoOccurrenceKey(click));
-			for (Entry<String, Integer> entry : m.entrySet()) {
+			Object2IntOpenHashMap<String> m = coOcurrenceMap.get(getCoOccurrenceKey(click));
+			for (ObjectIterator<Object2IntMap.Entry<String>> iterator = m.object2IntEntrySet().fastIterator(); iterator.hasNext();) {
 				// sum up the co-occurrence weights for each item
-				Double currVal = combineWeights.get(entry.getKey());
-				if(currVal == null){
-					currVal = 0d;
-				}
-				combineWeights.put(entry.getKey(), currVal + entry.getValue());
+				Object2IntMap.Entry<String> entry = iterator.next();
+				combineWeights.addTo(entry.getKey(), entry.getIntValue());
 			}
 		}
 
-		// sort the weighted sums
-		Map<String, Double> sortedKeys = Util.sortByValue(combineWeights, false);
+		// select the k highest weighted sums
+		List<String> sortedKeys = TopK.selectKeys(combineWeights, k, new ObjectArrayList<String>());
 		return generateResultList(sortedKeys, clickData);		
 	}
 
 	/**
-	 * Generate a result list from a map of summed up co-occurence counts.
+	 * Generate a result list from the keys with the highest summed up co-occurence counts.
 	 * In this case, we are just parsing the string back to a long (item id).
 	 * In future implementations, this method can be overridden and do more intersting stuff.
 	 * @param sortedKeys -
 	 * @param clickData -
 	 * @return a sorted recommendation list
 	 */
-	protected LongArrayList generateResultList(Map<String, Double> sortedKeys, ClickData clickData) {
+	protected LongArrayList generateResultList(List<String> sortedKeys, ClickData clickData) {
 		// remap all item ids back to the actual Item objects
-		LongArrayList sortedItems = new LongArrayList();
-		for (String itemId : sortedKeys.keySet()) {
+		LongArrayList sortedItems = new LongArrayList(sortedKeys.size());
+		for (String itemId : sortedKeys) {
 			sortedItems.add(Long.parseLong(itemId));
 		}
 		return sortedItems;
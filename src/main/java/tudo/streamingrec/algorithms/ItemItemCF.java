@@ -21,7 +21,7 @@ import it.unimi.dsi.fastutil.objects.ObjectListIterator;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * Implements a traditional Item to Item collaborative filtering scheme.
@@ -32,6 +32,7 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class ItemItemCF extends Algorithm{		
+	private static final long serialVersionUID = 1795665001723912832L;
 	//a map between an item id and the bitmap representation of users that clicked on this item
 	private Map<Long, EWAHCompressedBitmap> itemClickMap = new Long2ObjectOpenHashMap<>();
 	//a map for user ids (EWAHCompressedBitmap can only hold INT, but user ids are LONG)
@@ -117,6 +118,11 @@ public class ItemItemCF extends Algorithm{
 
 	@Override
 	public LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
 		//generate a list of item ids, from the current session, with which we want to compare
 		LongOpenHashSet itemIDsToCompare = new LongOpenHashSet();
 		if(wholeSession){
@@ -164,8 +170,8 @@ public class ItemItemCF extends Algorithm{
 				scores.put(item, score);
 			}
 		}
-		//return candidates ordered by score
-		return (LongArrayList)Util.sortByValueAndGetKeys(scores, false, new LongArrayList());
+		//return the k candidates with the highest scores
+		return TopK.selectKeys(scores, k, new LongArrayList());
 	}
 	
 	/**
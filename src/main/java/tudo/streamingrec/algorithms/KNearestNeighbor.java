@@ -19,7 +19,7 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * A kNN implementation with a range of different similarity scoring functions
@@ -27,6 +27,7 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class KNearestNeighbor extends Algorithm{	
+	private static final long serialVersionUID = -7017424161914816032L;
 	//maps each item id to a list of sessions, which are further indexed by the timestamp of the first click (to update sessions easier)
 	Long2ObjectOpenHashMap<Object2ObjectOpenHashMap<Date, List<List<Transaction>>>> itemToSessionByTimeMap = new Long2ObjectOpenHashMap<>();
 
@@ -72,6 +73,11 @@ public class KNearestNeighbor extends Algorithm{
 
 	@Override
 	protected LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int limit) {
 		List<Long> itemsInSession =  clickData.session.stream()
 				.sorted((a,b) -> b.timestamp.compareTo(a.timestamp))//reverse order to retain last occurrence of each item
 				.map(c -> c.item.id)//get item id of each click
@@ -97,10 +103,8 @@ public class KNearestNeighbor extends Algorithm{
 					.map(i -> new AbstractMap.SimpleEntry<Long, Double>(i, n.getValue())))	
 			.collect(Collectors.groupingBy(n -> n.getKey(), Collectors.summingDouble(n -> n.getValue())));
 			//group by key and sum up
-		//sort the results and return
-		LongArrayList result = new LongArrayList();
-		Util.sortByValueAndGetKeys(score, false, result);
-		return result;
+		//select the k items with the highest scores and return them
+		return TopK.selectKeys(score, limit, new LongArrayList());
 	}
 
 
@@ -16,7 +16,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * An item-item similarity implementation that compares the two items' keywords
@@ -25,6 +25,7 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class KeywordJaccard extends Algorithm{
+	private static final long serialVersionUID = 5622226597268563353L;
 	//a map between an item id and the bitmap representation of keywords of this item
 	private Map<Long, EWAHCompressedBitmap> itemKeywordMap = new Long2ObjectOpenHashMap<>();
 	//a map for keywords (EWAHCompressedBitmap can only hold INT, but keywords are STRING)
@@ -68,6 +69,11 @@ public class KeywordJaccard extends Algorithm{
 
 	@Override
 	public LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
 		//generate a list of item ids, from the current session, with which we want to compare
 		LongOpenHashSet itemIDsToCompare = new LongOpenHashSet();
 		if(wholeSession){
@@ -115,8 +121,8 @@ public class KeywordJaccard extends Algorithm{
 				scores.put(item, score);
 			}
 		}
-		//return candidates ordered by score
-		return (LongArrayList)Util.sortByValueAndGetKeys(scores, false, new LongArrayList());
+		//return the k candidates with the highest scores
+		return TopK.selectKeys(scores, k, new LongArrayList());
 	}
 	
 	/**
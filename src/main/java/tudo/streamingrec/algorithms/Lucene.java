@@ -38,6 +38,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class Lucene extends Algorithm {
+	private static final long serialVersionUID = -3609577589879860607L;
 	//the minimum lucene score. Items with lower score are not recommended
 	private double minScore = 10;
 	//Describes which "content" is used for indexing
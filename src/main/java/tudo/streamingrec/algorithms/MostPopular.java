@@ -5,7 +5,7 @@ import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * An algorithm that recommends the most popular articles based on click count
@@ -15,6 +15,7 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class MostPopular extends Algorithm {
+	private static final long serialVersionUID = -7485500404787383959L;
 	// In this list we keep all articles and their click counts
 	protected Long2IntOpenHashMap clickCounter = new Long2IntOpenHashMap();
 
@@ -28,7 +29,12 @@ public class MostPopular extends Algorithm {
 	}
 	
 	public LongArrayList recommendInternal(ClickData clickData) {
-		//return the items sorted by their click count
-		return (LongArrayList) Util.sortByValueAndGetKeys(clickCounter, false, new LongArrayList());
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
+		//return the k items with the highest click count
+		return TopK.selectKeys(clickCounter, k, new LongArrayList());
 	}
 }
@@ -13,6 +13,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class MostRecent extends Algorithm {
+	private static final long serialVersionUID = 3682356746476155087L;
 	//an ordered list of the most recently published/updated news articles
 	private LongArrayList mostRecentItems = new LongArrayList();
 
@@ -33,4 +34,10 @@ public class MostRecent extends Algorithm {
 		return mostRecentItems;
 	}
 
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
+		//copy the k newest articles (the list itself is changed by the training)
+		return new LongArrayList(mostRecentItems.elements(), 0, Math.min(k, mostRecentItems.size()));
+	}
+
 }
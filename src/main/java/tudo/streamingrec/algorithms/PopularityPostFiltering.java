@@ -13,6 +13,7 @@ import tudo.streamingrec.data.Transaction;
  *
  */
 public class PopularityPostFiltering extends Algorithm {
+	private static final long serialVersionUID = 7554148338169108313L;
 	//the minimum click count each item must have to not be filtered from the recommendation list
 	private int minClickCount = 100;// default = 100 clicks
 	//the underlying algorithm (set via JSON config)
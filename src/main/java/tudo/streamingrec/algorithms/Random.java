@@ -2,6 +2,8 @@ package tudo.streamingrec.algorithms;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import tudo.streamingrec.data.ClickData;
@@ -15,6 +17,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class Random extends Algorithm{
+	private static final long serialVersionUID = -299865123097738486L;
 	//An unsorted set of all item ids
 	private LongOpenHashSet items = new LongOpenHashSet();
 
@@ -35,4 +38,19 @@ public class Random extends Algorithm{
 		return recs;
 	}
 
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
+		//copy the known item ids and only shuffle the first k positions (partial Fisher-Yates shuffle)
+		long[] ids = items.toLongArray();
+		int length = Math.min(k, ids.length);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < length; i++) {
+			int j = i + random.nextInt(ids.length - i);
+			long tmp = ids[i];
+			ids[i] = ids[j];
+			ids[j] = tmp;
+		}
+		return new LongArrayList(ids, 0, length);
+	}
+
 }
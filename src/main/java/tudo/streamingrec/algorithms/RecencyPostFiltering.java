@@ -13,6 +13,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class RecencyPostFiltering extends Algorithm {
+	private static final long serialVersionUID = -5550155817959315982L;
 	//the maximum time before the current (simulation) time for an item to be released to not be filtered from the result list
 	private int filterTime = 24 * 60 * 60 * 1000;// default = 1 day
 	//the underlying algorithm (set via JSON config)
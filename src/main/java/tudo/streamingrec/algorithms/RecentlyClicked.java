@@ -3,6 +3,7 @@ package tudo.streamingrec.algorithms;
 import java.util.List;
 
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
@@ -15,6 +16,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class RecentlyClicked extends Algorithm{
+	private static final long serialVersionUID = 5129255760526685072L;
 	//a linked list of article ids ordered by their last user click time
 	public LongLinkedOpenHashSet clickedItems = new LongLinkedOpenHashSet();
 
@@ -33,4 +35,14 @@ public class RecentlyClicked extends Algorithm{
 		return new LongArrayList(clickedItems);
 	}
 
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
+		//only copy the k most recently clicked article ids
+		LongArrayList recs = new LongArrayList(Math.min(k, clickedItems.size()));
+		for (LongIterator iterator = clickedItems.iterator(); iterator.hasNext() && recs.size() < k;) {
+			recs.add(iterator.nextLong());
+		}
+		return recs;
+	}
+
 }
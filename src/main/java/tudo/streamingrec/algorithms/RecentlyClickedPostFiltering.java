@@ -13,6 +13,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class RecentlyClickedPostFiltering extends Algorithm {
+	private static final long serialVersionUID = 3002044707857730460L;
 	//the time in which each item needs to receive at least once click, to not be filtered from the list
 	private long filterTime =  3 * 60 * 60 * 1000;// default = 3 h
 	//the underlying algorithm (set via JSON config)
@@ -16,6 +16,7 @@ import tudo.streamingrec.data.Item;
  *
  */
 public class RecentlyPopular extends MostPopular {
+	private static final long serialVersionUID = 5467815338463333034L;
 	//The time up until which clicks are counted for the "popularity"
 	private int filterTime = 24*60*60*1000;//default = 1 day (millisecond)
 	//a buffer of recent transactions so that click counts can be decreased when they "leave" the time window
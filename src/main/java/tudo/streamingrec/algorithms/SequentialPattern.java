@@ -1,14 +1,16 @@
 package tudo.streamingrec.algorithms;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Item;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * An algorithm that extracts and stores sequential patterns to make recommendations.
@@ -18,6 +20,7 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class SequentialPattern extends Algorithm {
+	private static final long serialVersionUID = 4222237259570387991L;
 	//a tree data structure that stores the patterns
 	protected SequenceTreeNode patternTree = new SequenceTreeNode();
 
@@ -31,6 +34,11 @@ public class SequentialPattern extends Algorithm {
 
 	@Override
 	public LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
 		//step down the pattern tree to match the right pattern
 		SequenceTreeNode currentNode = patternTree;
 		for (Transaction click : clickData.session) {
@@ -40,14 +48,16 @@ public class SequentialPattern extends Algorithm {
 			currentNode = currentNode.children.get(getTreeNodeKey(click));
 		}
 		
-		//if we found the right pattern, sort the possible completions of this pattern 
-		//by their support values and create a recommendation list
-		Map<String, SequenceTreeNode> sortMap = Util.sortByValue(currentNode.children, false);
-		LongArrayList returnList = new LongArrayList();
-		for (String i : sortMap.keySet()){
-			returnList.add(Long.parseLong(i));
+		//if we found the right pattern, select the possible completions of this pattern 
+		//with the highest support values and create a recommendation list
+		long[] completions = new long[currentNode.children.size()];
+		double[] supports = new double[currentNode.children.size()];
+		int nbOfCompletions = 0;
+		for (Entry<String, SequenceTreeNode> child : currentNode.children.entrySet()) {
+			completions[nbOfCompletions] = Long.parseLong(child.getKey());
+			supports[nbOfCompletions++] = child.getValue().support;
 		}
-		return returnList;
+		return TopK.selectKeys(completions, supports, nbOfCompletions, k, new LongArrayList());
 	}
 
 	/**
@@ -97,7 +107,8 @@ public class SequentialPattern extends Algorithm {
 	 * @author Mozhgan
 	 *
 	 */
-	public class SequenceTreeNode implements Comparable<SequenceTreeNode>{
+	public class SequenceTreeNode implements Comparable<SequenceTreeNode>, Serializable {
+		private static final long serialVersionUID = 2188122253261648943L;
 		Map<String,SequenceTreeNode> children = new Object2ObjectOpenHashMap<String,SequenceTreeNode>();
 		int support=0;
 		public int compareTo(SequenceTreeNode o) {
@@ -13,6 +13,7 @@ import tudo.streamingrec.data.Transaction;
  *
  */
 public class SequentialSubPattern extends SequentialPattern {
+	private static final long serialVersionUID = 2729882235613083210L;
 	
 	@Override
 	protected void updateMap(List<Transaction> session) {
@@ -1,13 +1,12 @@
 package tudo.streamingrec.algorithms;
 
-import java.util.Map;
 import java.util.Map.Entry;
 
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import tudo.streamingrec.data.ClickData;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * An algorithm that extracts and stores sequential patterns to make
@@ -19,13 +18,19 @@ import tudo.streamingrec.util.Util;
  *
  */
 public class SequentialSubPatternAll extends SequentialSubPattern {
+	private static final long serialVersionUID = 8326362293528500450L;
 	//should we weight pattern scores lower the further their overlap is away 
 	//in the session from the current click?
 	protected boolean weight = false;
 	@Override
 	public LongArrayList recommendInternal(ClickData clickData) {
+		return recommendInternal(clickData, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected LongArrayList recommendInternal(ClickData clickData, int k) {
 		// create a score map
-		Map<Long, Double> score = new Long2DoubleOpenHashMap();
+		Long2DoubleOpenHashMap score = new Long2DoubleOpenHashMap();
 		// iterate over the subpatterns of the session that end with the most
 		// current click
 		for (int j = 0; j < clickData.session.size(); j++) {
@@ -45,7 +50,7 @@ public class SequentialSubPatternAll extends SequentialSubPattern {
 				if (weight){
 					childscore = 1d/(j+1)*childscore;
 				}
-				Long key= Long.parseLong(child.getKey());
+				long key= Long.parseLong(child.getKey());
 				if (score.containsKey(key)) {
 					score.put(key, (score.get(key) + childscore));
 				}
@@ -53,8 +58,8 @@ public class SequentialSubPatternAll extends SequentialSubPattern {
 			}
 		}
 
-		// sort the accumulated support values and create a recommendation list
-		return (LongArrayList) Util.sortByValueAndGetKeys(score, false, new LongArrayList());
+		// select the k highest accumulated support values and create a recommendation list
+		return TopK.selectKeys(score, k, new LongArrayList());
 	}
 
 	/**
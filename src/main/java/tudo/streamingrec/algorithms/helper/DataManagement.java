@@ -1,5 +1,6 @@
 package tudo.streamingrec.algorithms.helper;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -9,14 +10,17 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import tudo.streamingrec.data.Transaction;
-import tudo.streamingrec.util.Util;
+import tudo.streamingrec.util.TopK;
 
 /**
  * Manages the data-objects of BPR-MF
  * 
  */
-public class DataManagement {
+public class DataManagement implements Serializable {
+	private static final long serialVersionUID = 6871546552558931138L;
 	// HashMaps to convert from real ids to mapped ones
 	protected HashMap<Integer, Long> userMap;
 	protected HashMap<Integer, Long> itemMap;
@@ -172,16 +176,21 @@ public class DataManagement {
 	}
 
 	protected void doAdvancedSampling(Map<Integer, Integer> popularityMap) {
-		Map<Integer, Integer> sortedPopularityMap = Util.sortByValue(popularityMap, false);
-		popularityListDescending = new ArrayList<Integer>(sortedPopularityMap.keySet());
+		// sort the items by decreasing popularity (ties keep the iteration order
+		// of the popularity map, as in a stable sort)
+		Object2DoubleMap<Integer> popularities = new Object2DoubleLinkedOpenHashMap<Integer>(popularityMap.size());
+		for (Map.Entry<Integer, Integer> entry : popularityMap.entrySet()) {
+			popularities.put(entry.getKey(), entry.getValue());
+		}
+		popularityListDescending = TopK.selectKeys(popularities, popularities.size(), new ArrayList<Integer>());
 
 		// fill the probability map with the aggregated popularities of the
 		// items
 		aggregatedPopularityMapDescending = new LinkedHashMap<Integer, Integer>();
 		int aggregate = 0;
-		for (Map.Entry<Integer, Integer> entry : sortedPopularityMap.entrySet()) {
-			aggregate += entry.getValue();
-			aggregatedPopularityMapDescending.put(entry.getKey(), aggregate);
+		for (Integer item : popularityListDescending) {
+			aggregate += popularityMap.get(item);
+			aggregatedPopularityMapDescending.put(item, aggregate);
 		}
 
 		// also create another matrix that stores the users items by ascending
@@ -208,13 +217,13 @@ public class DataManagement {
 			// bought
 			int sumOfPopularities = 0;
 			for (int item : user_items_byPop) {
-				sumOfPopularities += sortedPopularityMap.get(item);
+				sumOfPopularities += popularityMap.get(item);
 			}
 			// aggregate the items individual "reverse" popularities
 			int userAggregate = 0;
 			for (int item : user_items_byPop) {
 				// subtract the popularity from the sum of all the popularities
-				int poprev = sumOfPopularities - sortedPopularityMap.get(item);
+				int poprev = sumOfPopularities - popularityMap.get(item);
 				userAggregate += poprev;
 				aggregatedPopularityOfUser.put(item, userAggregate);
 			}
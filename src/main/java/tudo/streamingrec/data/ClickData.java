@@ -1,5 +1,6 @@
 package tudo.streamingrec.data;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
@@ -7,11 +8,12 @@ import java.util.List;
  * @author MJ
  *
  */
-public class ClickData {
+public class ClickData implements Serializable {
+	private static final long serialVersionUID = -8819576521390300551L;
 	//the actual click
 	public Transaction click;
-	//the session in which this click occurred
+	//the session in which this click occurred (an unmodifiable view, see UserEventLog)
 	public List<Transaction> session;
-	//all of the users previous clicks
+	//all of the users previous clicks (an unmodifiable view, see UserEventLog)
 	public List<Transaction> wholeUserHistory;
 }
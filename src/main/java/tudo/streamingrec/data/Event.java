@@ -1,5 +1,6 @@
 package tudo.streamingrec.data;
 
+import java.io.Serializable;
 import java.util.Date;
 
 /**
@@ -8,7 +9,7 @@ import java.util.Date;
  * @author Mozhgan
  *
  */
-public interface Event {
+public interface Event extends Serializable {
 	/**
 	 * Returns the time stamp of a click or the publication time of an item
 	 * @return the event time
@@ -15,6 +15,7 @@ import it.unimi.dsi.fastutil.objects.ObjectIterator;
  *
  */
 public class Item implements Event {
+	private static final long serialVersionUID = -8544112207565578183L;
 	//the ID of the item
 	public long id;
 	//the publisher of the news article
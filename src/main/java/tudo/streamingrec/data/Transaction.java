@@ -10,6 +10,7 @@ import java.util.Map;
  *
  */
 public class Transaction implements Event {
+	private static final long serialVersionUID = -2339778122483877183L;
 	//the article that was visited
 	public Item item;
 	//the user that visited the article
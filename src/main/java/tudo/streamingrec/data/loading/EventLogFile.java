@@ -0,0 +1,422 @@
+package tudo.streamingrec.data.loading;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongSet;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap.Entry;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import tudo.streamingrec.data.Event;
+import tudo.streamingrec.data.Item;
+import tudo.streamingrec.data.SplitData;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * A binary file that contains the preprocessed (filtered and split) event stream of an
+ * evaluation together with the ground truth of every test click. The file is written once
+ * by the coordinator of a multi-process evaluation and read via memory mapping by every
+ * worker process, so that the workers neither have to parse the input files nor to
+ * recompute the sessions and ground truths. The ground truths stay in the mapped file
+ * (i.e., outside of the heap) and are shared by all workers via the OS page cache.
+ * <p>
+ * Layout: a header (magic number, version, segment size, number of items, training
+ * events, and test events), followed by the item definitions and the events in
+ * chronological order. Each record starts with a type byte. Records never cross
+ * a segment boundary (the rest of a segment is padded instead), so that the
+ * file can be mapped segment by segment.
+ *
+ * @author MJ
+ *
+ */
+public class EventLogFile {
+	//identifies the file format
+	private static final int MAGIC = 0x53524556;
+	private static final int VERSION = 1;
+	//the size of one mapped segment
+	private static final int SEGMENT_SIZE = 1 << 30;
+	//the size of the header
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 4;
+	//record types
+	private static final byte PADDING = 0;
+	private static final byte ITEM_DEFINITION = 1;
+	private static final byte ITEM_EVENT = 2;
+	private static final byte CLICK = 3;
+
+	/**
+	 * Writes the split data and the ground truths of the test clicks to a file
+	 * @param fileName -
+	 * @param splitData -
+	 * @param groundTruths the ground truth of each test click (in the order of the test clicks)
+	 * @throws IOException -
+	 */
+	public static void write(String fileName, SplitData splitData, List<LongSet> groundTruths) throws IOException {
+		//collect the distinct item objects (clicks may refer to items that are not part of the events)
+		Reference2IntOpenHashMap<Item> itemIndices = new Reference2IntOpenHashMap<>();
+		itemIndices.defaultReturnValue(-1);
+		List<Item> items = new ObjectArrayList<>();
+		for (List<Event> events : Arrays.asList(splitData.trainingData, splitData.testData)) {
+			for (Event event : events) {
+				Item item = event instanceof Item ? (Item) event : ((Transaction) event).item;
+				if (itemIndices.getInt(item) == -1) {
+					itemIndices.put(item, items.size());
+					items.add(item);
+				}
+			}
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName), 1024 * 1024))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(SEGMENT_SIZE);
+			out.writeInt(items.size());
+			out.writeInt(splitData.trainingData.size());
+			out.writeInt(splitData.testData.size());
+			SegmentWriter writer = new SegmentWriter(out);
+			for (Item item : items) {
+				DataOutputStream record = writer.startRecord(ITEM_DEFINITION);
+				record.writeLong(item.id);
+				record.writeInt(item.publisher);
+				record.writeLong(item.createdAt == null ? Long.MIN_VALUE : item.createdAt.getTime());
+				writeString(record, item.url);
+				writeString(record, item.title);
+				record.writeInt(item.category);
+				writeString(record, item.text);
+				if (item.keywords == null) {
+					record.writeInt(-1);
+				} else {
+					record.writeInt(item.keywords.size());
+					for (Entry<String> keyword : item.keywords.object2IntEntrySet()) {
+						writeString(record, keyword.getKey());
+						record.writeInt(keyword.getIntValue());
+					}
+				}
+				writer.finishRecord();
+			}
+			int testClick = 0;
+			for (List<Event> events : Arrays.asList(splitData.trainingData, splitData.testData)) {
+				boolean test = events == splitData.testData;
+				for (Event event : events) {
+					if (event instanceof Item) {
+						writer.startRecord(ITEM_EVENT).writeInt(itemIndices.getInt(event));
+					} else {
+						Transaction transaction = (Transaction) event;
+						DataOutputStream record = writer.startRecord(CLICK);
+						record.writeInt(itemIndices.getInt(transaction.item));
+						record.writeLong(transaction.userId);
+						record.writeLong(transaction.timestamp.getTime());
+						if (test) {
+							LongSet groundTruth = groundTruths.get(testClick++);
+							record.writeInt(groundTruth.size());
+							for (LongIterator iterator = groundTruth.iterator(); iterator.hasNext();) {
+								record.writeLong(iterator.nextLong());
+							}
+						} else {
+							//no ground truth for training clicks
+							record.writeInt(-1);
+						}
+					}
+					writer.finishRecord();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the split data and the ground truths of the test clicks from a file
+	 * @param fileName -
+	 * @param groundTruths will be filled with the ground truth of each test click (in the order of the test clicks)
+	 * @return the split data
+	 * @throws IOException -
+	 */
+	public static SplitData read(String fileName, List<LongSet> groundTruths) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+			SegmentReader reader = new SegmentReader(channel);
+			ByteBuffer header = reader.next(HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("File " + fileName + " is not an event log of this version.");
+			}
+			if (header.getInt() != SEGMENT_SIZE) {
+				throw new IOException("File " + fileName + " uses an unsupported segment size.");
+			}
+			int nbOfItems = header.getInt();
+			int nbOfTrainingEvents = header.getInt();
+			int nbOfTestEvents = header.getInt();
+
+			Item[] items = new Item[nbOfItems];
+			for (int i = 0; i < nbOfItems; i++) {
+				ByteBuffer record = reader.nextRecord(ITEM_DEFINITION);
+				Item item = new Item();
+				item.id = record.getLong();
+				item.publisher = record.getInt();
+				long createdAt = record.getLong();
+				item.createdAt = createdAt == Long.MIN_VALUE ? null : new Date(createdAt);
+				item.url = readString(record);
+				item.title = readString(record);
+				item.category = record.getInt();
+				item.text = readString(record);
+				int nbOfKeywords = record.getInt();
+				if (nbOfKeywords >= 0) {
+					//the rebuilt map can iterate in a different order than the original one
+					//(algorithms that break ties by the iteration order can differ marginally)
+					item.keywords = new Object2IntOpenHashMap<>();
+					for (int j = 0; j < nbOfKeywords; j++) {
+						String keyword = readString(record);
+						item.keywords.put(keyword, record.getInt());
+					}
+				}
+				items[i] = item;
+			}
+
+			SplitData splitData = new SplitData();
+			splitData.trainingData = new ObjectArrayList<>(nbOfTrainingEvents);
+			splitData.testData = new ObjectArrayList<>(nbOfTestEvents);
+			for (int i = 0; i < nbOfTrainingEvents + nbOfTestEvents; i++) {
+				List<Event> events = i < nbOfTrainingEvents ? splitData.trainingData : splitData.testData;
+				ByteBuffer record = reader.nextRecord((byte) -1);
+				byte type = record.get();
+				if (type == ITEM_EVENT) {
+					events.add(items[record.getInt()]);
+				} else if (type == CLICK) {
+					Transaction transaction = new Transaction();
+					transaction.item = items[record.getInt()];
+					transaction.userId = record.getLong();
+					transaction.timestamp = new Date(record.getLong());
+					int nbOfGroundTruthItems = record.getInt();
+					if (nbOfGroundTruthItems >= 0) {
+						//keep the ground truth in the mapped file
+						ByteBuffer slice = record.slice();
+						slice.limit(nbOfGroundTruthItems * 8);
+						groundTruths.add(new MappedLongSet(slice.asLongBuffer()));
+						record.position(record.position() + nbOfGroundTruthItems * 8);
+					}
+					events.add(transaction);
+				} else {
+					throw new IOException("Unexpected record type " + type + " in file " + fileName);
+				}
+			}
+			return splitData;
+		}
+	}
+
+	/**
+	 * Writes a nullable string as its length and its UTF-8 bytes
+	 * @param out -
+	 * @param s -
+	 * @throws IOException -
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}
+	 * @param in -
+	 * @return the string (might be null)
+	 */
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes records so that no record crosses a segment boundary
+	 * @author MJ
+	 *
+	 */
+	private static class SegmentWriter {
+		//the file
+		private final DataOutputStream out;
+		//the current record
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private final DataOutputStream record = new DataOutputStream(buffer);
+		//the current position in the file
+		private long position = HEADER_SIZE;
+
+		/**
+		 * Creates a writer
+		 * @param out the file (positioned after the header)
+		 */
+		private SegmentWriter(DataOutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * Starts a new record
+		 * @param type the record type
+		 * @return the stream for the record's content
+		 * @throws IOException -
+		 */
+		private DataOutputStream startRecord(byte type) throws IOException {
+			buffer.reset();
+			record.writeByte(type);
+			return record;
+		}
+
+		/**
+		 * Writes the current record to the file
+		 * (after padding the current segment, if the record does not fit anymore)
+		 * @throws IOException -
+		 */
+		private void finishRecord() throws IOException {
+			if (buffer.size() > SEGMENT_SIZE) {
+				throw new IOException("Record of " + buffer.size() + " bytes exceeds the segment size.");
+			}
+			long remaining = SEGMENT_SIZE - position % SEGMENT_SIZE;
+			if (buffer.size() > remaining) {
+				for (long i = 0; i < remaining; i++) {
+					out.writeByte(PADDING);
+				}
+				position += remaining;
+			}
+			buffer.writeTo(out);
+			position += buffer.size();
+		}
+	}
+
+	/**
+	 * Maps a file segment by segment and reads records from it
+	 * @author MJ
+	 *
+	 */
+	private static class SegmentReader {
+		//the file
+		private final FileChannel channel;
+		//the currently mapped segment
+		private MappedByteBuffer segment = null;
+		//the start of the current segment in the file
+		private long segmentStart = -SEGMENT_SIZE;
+
+		/**
+		 * Creates a reader
+		 * @param channel -
+		 */
+		private SegmentReader(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Maps the next segment
+		 * @throws IOException -
+		 */
+		private void nextSegment() throws IOException {
+			segmentStart += SEGMENT_SIZE;
+			long size = Math.min(SEGMENT_SIZE, channel.size() - segmentStart);
+			if (size <= 0) {
+				throw new IOException("Unexpected end of the event log.");
+			}
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, size);
+		}
+
+		/**
+		 * Returns the buffer positioned at the next bytes
+		 * @param bytes the number of bytes that are needed
+		 * @return the mapped segment
+		 * @throws IOException -
+		 */
+		private ByteBuffer next(int bytes) throws IOException {
+			if (segment == null || segment.remaining() < bytes) {
+				nextSegment();
+			}
+			return segment;
+		}
+
+		/**
+		 * Returns the buffer positioned at the next record (skipping the padding at the end of a segment)
+		 * @param expectedType the type of the record (which is consumed) or -1 if the type byte should not be consumed
+		 * @return the mapped segment
+		 * @throws IOException -
+		 */
+		private ByteBuffer nextRecord(byte expectedType) throws IOException {
+			if (segment == null || !segment.hasRemaining() || segment.get(segment.position()) == PADDING) {
+				nextSegment();
+			}
+			if (expectedType >= 0 && segment.get() != expectedType) {
+				throw new IOException("Unexpected record type in the event log.");
+			}
+			return segment;
+		}
+	}
+
+	/**
+	 * An immutable set view of a ground truth in the mapped file
+	 * @author MJ
+	 *
+	 */
+	private static class MappedLongSet extends AbstractLongSet {
+		//the items in the mapped file
+		private final LongBuffer items;
+
+		/**
+		 * Creates a view
+		 * @param items -
+		 */
+		private MappedLongSet(LongBuffer items) {
+			this.items = items;
+		}
+
+		@Override
+		public boolean contains(long k) {
+			//ground truths are short -> linear search
+			for (int i = 0; i < items.limit(); i++) {
+				if (items.get(i) == k) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int size() {
+			return items.limit();
+		}
+
+		@Override
+		public LongIterator iterator() {
+			return new LongIterator() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return next < items.limit();
+				}
+
+				@Override
+				public long nextLong() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return items.get(next++);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package tudo.streamingrec.data.loading;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Follows a growing text file (similar to "tail -f"). Each call to {@link #poll()}
+ * returns the lines that were completely appended since the last call.
+ * Incomplete lines (i.e., lines without a line break yet) are kept until they are finished.
+ *
+ * @author MJ
+ *
+ */
+public class FileTailer implements Closeable {
+	//the followed file
+	private final RandomAccessFile file;
+	//the name of the file (for messages)
+	private final String fileName;
+	//the number of bytes read so far
+	private long position = 0;
+	//should the next line be discarded (csv header)?
+	private boolean skipHeader;
+	//the beginning of a line that is not yet finished
+	private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+	//the read buffer
+	private final byte[] buffer = new byte[64 * 1024];
+
+	/**
+	 * Opens a file for following
+	 * @param fileName the file
+	 * @param skipHeader should the first line be discarded?
+	 * @throws FileNotFoundException -
+	 */
+	public FileTailer(String fileName, boolean skipHeader) throws FileNotFoundException {
+		this.file = new RandomAccessFile(fileName, "r");
+		this.fileName = fileName;
+		this.skipHeader = skipHeader;
+	}
+
+	/**
+	 * Reads all lines that were completed since the last call
+	 * @return the new lines (might be empty)
+	 * @throws IOException -
+	 */
+	public List<String> poll() throws IOException {
+		List<String> lines = new ObjectArrayList<>();
+		if (file.length() < position) {
+			//the file was truncated or replaced -> we cannot know what was already read
+			throw new IOException("File " + fileName + " was truncated while following it.");
+		}
+		file.seek(position);
+		int read;
+		while ((read = file.read(buffer)) > 0) {
+			position += read;
+			int start = 0;
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == '\n') {
+					//a line is complete
+					partialLine.write(buffer, start, i - start);
+					String line = partialLine.toString("UTF-8");
+					partialLine.reset();
+					if (line.endsWith("\r")) {
+						line = line.substring(0, line.length() - 1);
+					}
+					if (skipHeader) {
+						skipHeader = false;
+					} else if (!line.isEmpty()) {
+						lines.add(line);
+					}
+					start = i + 1;
+				}
+			}
+			//keep the beginning of the next line
+			partialLine.write(buffer, start, read - start);
+		}
+		return lines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -23,6 +23,7 @@ import tudo.streamingrec.data.Transaction;
  *
  */
 public class TmpPlistaTransaction implements Event {
+	private static final long serialVersionUID = 4731126890451872716L;
 	public int publisher;
 	public Item item;
 	public int category;
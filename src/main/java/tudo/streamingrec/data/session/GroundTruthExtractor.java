@@ -0,0 +1,214 @@
+package tudo.streamingrec.data.session;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * Determines the ground truth for each click of the test phase, i.e., the items that
+ * the user clicks later in the same session and has not clicked before in this session.
+ * <p>
+ * Instead of searching the session of every click and building a new set for it,
+ * each session is processed once. The distinct items of a session are stored in the order
+ * of their first occurrence. The ground truth of the click at position i is then exactly
+ * the suffix of this list with a first occurrence after i, which is handed out as
+ * an immutable view. Thus, all clicks of one session share the same data.
+ * <p>
+ * The clicks have to be requested in the same (chronological) order in which they were
+ * added to the underlying {@link SessionExtractor}.
+ *
+ * @author MJ
+ *
+ */
+public class GroundTruthExtractor {
+	//the position of the next click per user
+	private Map<Long, UserCursor> cursors = new Long2ObjectOpenHashMap<>();
+
+	/**
+	 * Creates a ground truth extractor based on the sessions of the test phase
+	 * @param sessionExtractor a session extractor that contains all test clicks
+	 */
+	public GroundTruthExtractor(SessionExtractor sessionExtractor) {
+		for (Entry<Long, List<List<Transaction>>> entry : sessionExtractor.getSessionMap().entrySet()) {
+			cursors.put(entry.getKey(), new UserCursor(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Returns the ground truth for a click, i.e., the items that the user clicks after this
+	 * click in the same session except for the items that were already clicked in the session so far.
+	 *
+	 * @param click the current click
+	 * @param sessionSoFar the session of the user up until and including the current click.
+	 *                     Might start before the test phase.
+	 * @return an immutable set of item ids
+	 */
+	public LongSet getGroundTruth(Transaction click, List<Transaction> sessionSoFar) {
+		UserCursor cursor = cursors.get(click.userId);
+		List<Transaction> session = cursor.sessions.get(cursor.sessionIndex);
+		//reference comparison should be fine, since we do not copy transactions
+		if (session.get(cursor.position) != click) {
+			throw new IllegalStateException("Clicks have to be requested in chronological order.");
+		}
+		if (cursor.position == 0) {
+			//first click of a new session -> process the whole session once
+			cursor.sessionItems = new SessionItems(session, sessionSoFar);
+		}
+		LongSet groundTruth = cursor.sessionItems.after(cursor.position);
+		//move on to the next click of the user
+		cursor.position++;
+		if (cursor.position == session.size()) {
+			cursor.sessionIndex++;
+			cursor.position = 0;
+			cursor.sessionItems = null;
+		}
+		return groundTruth;
+	}
+
+	/**
+	 * The position of the next click of one user
+	 * @author MJ
+	 *
+	 */
+	private static class UserCursor {
+		//all test sessions of the user
+		private final List<List<Transaction>> sessions;
+		//the index of the current session
+		private int sessionIndex = 0;
+		//the position of the next click in the current session
+		private int position = 0;
+		//the processed items of the current session
+		private SessionItems sessionItems;
+
+		/**
+		 * Creates a cursor
+		 * @param sessions -
+		 */
+		private UserCursor(List<List<Transaction>> sessions) {
+			this.sessions = sessions;
+		}
+	}
+
+	/**
+	 * The distinct items of one session in the order of their first occurrence,
+	 * excluding items that were already clicked in the session before or at the first click.
+	 * @author MJ
+	 *
+	 */
+	private static class SessionItems {
+		//the items in the order of their first occurrence
+		private final long[] items;
+		//the position of the first occurrence of each item in the session
+		private final int[] firstPositions;
+		//the same information as a map for fast lookups
+		private final Long2IntOpenHashMap firstPositionByItem = new Long2IntOpenHashMap();
+		//the number of items
+		private int size = 0;
+		//the index of the first item of the last suffix that was handed out
+		private int start = 0;
+
+		/**
+		 * Processes a session in one pass
+		 * @param session the session from the test phase
+		 * @param sessionSoFar the session up until the first click of the test session
+		 */
+		private SessionItems(List<Transaction> session, List<Transaction> sessionSoFar) {
+			items = new long[session.size()];
+			firstPositions = new int[session.size()];
+			firstPositionByItem.defaultReturnValue(-1);
+			//the items clicked so far are never part of the ground truth
+			LongOpenHashSet clickedSoFar = new LongOpenHashSet();
+			for (Transaction t : sessionSoFar) {
+				clickedSoFar.add(t.item.id);
+			}
+			for (int i = 1; i < session.size(); i++) {
+				long itemId = session.get(i).item.id;
+				if (!clickedSoFar.contains(itemId) && !firstPositionByItem.containsKey(itemId)) {
+					firstPositionByItem.put(itemId, i);
+					items[size] = itemId;
+					firstPositions[size] = i;
+					size++;
+				}
+			}
+		}
+
+		/**
+		 * Returns the items that occur for the first time after the given position.
+		 * Positions have to be requested in ascending order.
+		 * @param position -
+		 * @return the suffix of the item list as a set view
+		 */
+		private LongSet after(int position) {
+			while (start < size && firstPositions[start] <= position) {
+				start++;
+			}
+			return new SuffixSet(this, start, position);
+		}
+	}
+
+	/**
+	 * An immutable set view of the suffix of the item list of one session
+	 * @author MJ
+	 *
+	 */
+	private static class SuffixSet extends AbstractLongSet {
+		//the shared item list
+		private final SessionItems sessionItems;
+		//the start of the suffix
+		private final int start;
+		//the position of the click in the session
+		private final int position;
+
+		/**
+		 * Creates a view
+		 * @param sessionItems -
+		 * @param start -
+		 * @param position -
+		 */
+		private SuffixSet(SessionItems sessionItems, int start, int position) {
+			this.sessionItems = sessionItems;
+			this.start = start;
+			this.position = position;
+		}
+
+		@Override
+		public boolean contains(long k) {
+			//the item has to occur in the session for the first time after the current click
+			return sessionItems.firstPositionByItem.get(k) > position;
+		}
+
+		@Override
+		public int size() {
+			return sessionItems.size - start;
+		}
+
+		@Override
+		public LongIterator iterator() {
+			return new LongIterator() {
+				private int next = start;
+
+				@Override
+				public boolean hasNext() {
+					return next < sessionItems.size;
+				}
+
+				@Override
+				public long nextLong() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return sessionItems.items[next++];
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package tudo.streamingrec.data.session;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * An append-only log of the clicks of one user. Instead of copying the current
+ * session and the user history for every click, this log hands out immutable
+ * views (offset + length) into its internal array. Since existing entries are never
+ * changed, the views stay valid when new clicks are added. When the array is
+ * grown, older views simply keep referencing the old array.
+ *
+ * @author MJ
+ *
+ */
+public class UserEventLog {
+	//the clicks of the user in chronological order
+	private Transaction[] clicks = new Transaction[4];
+	//the number of clicks in the log
+	private int size = 0;
+	//the index of the first click of the current session
+	private int sessionStart = 0;
+
+	/**
+	 * Appends one click to the log and determines if it starts a new session
+	 * based on {@link SessionExtractor#getThresholdInMS()}.
+	 * This method needs to be called in order (time-wise).
+	 *
+	 * @param t the current click
+	 */
+	public void addClick(Transaction t) {
+		if (size > 0 && t.timestamp.getTime()
+				- clicks[size - 1].timestamp.getTime() > SessionExtractor.getThresholdInMS()) {
+			// if the difference between the last click and the current click
+			// is more than N milliseconds, a new session starts
+			sessionStart = size;
+		}
+		if (size == clicks.length) {
+			// grow the array. views handed out so far keep the old one.
+			Transaction[] newClicks = new Transaction[clicks.length * 2];
+			System.arraycopy(clicks, 0, newClicks, 0, size);
+			clicks = newClicks;
+		}
+		clicks[size++] = t;
+	}
+
+	/**
+	 * Returns an immutable view of the current session (including the last click)
+	 * @return the current session
+	 */
+	public List<Transaction> getSession() {
+		return new View(clicks, sessionStart, size - sessionStart);
+	}
+
+	/**
+	 * Returns an immutable view of all clicks of this user so far (including the last click)
+	 * @return the user history
+	 */
+	public List<Transaction> getHistory() {
+		return new View(clicks, 0, size);
+	}
+
+	/**
+	 * An immutable, fixed-length view of a part of a shared click array
+	 * @author MJ
+	 *
+	 */
+	private static class View extends AbstractList<Transaction> implements RandomAccess, Serializable {
+		private static final long serialVersionUID = -3889510806649283835L;
+		//the shared array
+		private final Transaction[] clicks;
+		//the start of the view in the array
+		private final int offset;
+		//the length of the view
+		private final int length;
+
+		/**
+		 * Creates a view
+		 * @param clicks -
+		 * @param offset -
+		 * @param length -
+		 */
+		private View(Transaction[] clicks, int offset, int length) {
+			this.clicks = clicks;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public Transaction get(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+			}
+			return clicks[offset + index];
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+
+		@Override
+		public List<Transaction> subList(int fromIndex, int toIndex) {
+			if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+				throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + length);
+			}
+			//sub lists are views into the same array
+			return new View(clicks, offset + fromIndex, toIndex - fromIndex);
+		}
+	}
+}
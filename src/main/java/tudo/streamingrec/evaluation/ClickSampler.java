@@ -0,0 +1,116 @@
+package tudo.streamingrec.evaluation;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import tudo.streamingrec.data.ClickData;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * Decides for which test clicks recommendations are generated and evaluated.
+ * Clicks that are not sampled are still sent to the train method of the algorithms,
+ * so that the learning stream stays intact. The decision only depends on the click
+ * and its history (not on the order in which the work packages are created),
+ * so that all algorithms, threads, and processes evaluate exactly the same clicks
+ * and the results stay comparable (e.g., for the paired statistical tests).
+ *
+ * @author MJ
+ *
+ */
+public class ClickSampler {
+	/**
+	 * The available sampling policies
+	 * @author MJ
+	 *
+	 */
+	public enum Policy {
+		//each click is sampled with the same probability
+		uniform,
+		//only the first N clicks of each session are sampled
+		session,
+		//the same share of the clicks of every user is sampled
+		user
+	}
+
+	//the sampling policy
+	private final Policy policy;
+	//the sampling rate (uniform, user) or the number of clicks per session (session)
+	private final double value;
+
+	/**
+	 * Creates a sampler
+	 * @param policy -
+	 * @param value the sampling rate between 0 and 1 (uniform, user)
+	 *        or the number of sampled clicks per session (session)
+	 */
+	public ClickSampler(Policy policy, double value) {
+		if (policy == Policy.session ? value < 1 : (value <= 0 || value > 1)) {
+			throw new IllegalArgumentException("Invalid value for the sampling policy " + policy + ": " + value);
+		}
+		this.policy = policy;
+		this.value = value;
+	}
+
+	/**
+	 * Parses a sampling policy from the command line, e.g., "uniform:0.1", "session:3", or "user:0.25"
+	 * @param definition -
+	 * @return the sampler
+	 */
+	public static ClickSampler parse(String definition) {
+		String[] split = definition.split(":");
+		if (split.length != 2) {
+			throw new IllegalArgumentException(
+					"Invalid sampling policy: \"" + definition + "\". Expected <POLICY>:<VALUE>, e.g., uniform:0.1");
+		}
+		Policy policy;
+		try {
+			policy = Policy.valueOf(split[0].trim());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown sampling policy: \"" + split[0] + "\"");
+		}
+		return new ClickSampler(policy, Double.parseDouble(split[1].trim()));
+	}
+
+	/**
+	 * Determines if recommendations should be generated and evaluated for a test click.
+	 * The session and the user history of the click data have to end with the click.
+	 * @param clickData -
+	 * @return true if the click is part of the sample
+	 */
+	public boolean isSampled(ClickData clickData) {
+		Transaction click = clickData.click;
+		switch (policy) {
+		case uniform:
+			//pseudo-random, but reproducible decision based on the click itself
+			long hash = HashCommon.murmurHash3(click.userId * 31 + click.timestamp.getTime());
+			if (click.item != null) {
+				hash = HashCommon.murmurHash3(hash + click.item.id);
+			}
+			return toUnitInterval(hash) < value;
+		case session:
+			//the session ends with the current click
+			return clickData.session.size() <= value;
+		case user:
+			//systematic sampling within the clicks of each user
+			//starting at a pseudo-random offset per user.
+			//-> a click is sampled whenever the accumulated rate passes an integer.
+			double offset = toUnitInterval(HashCommon.murmurHash3(click.userId));
+			int position = clickData.wholeUserHistory.size();
+			return Math.floor(position * value + offset) > Math.floor((position - 1) * value + offset);
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Maps a hash value to [0,1)
+	 * @param hash -
+	 * @return the value
+	 */
+	private static double toUnitInterval(long hash) {
+		return (hash >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public String toString() {
+		return policy + ":" + (policy == Policy.session ? String.valueOf((int) value) : String.valueOf(value));
+	}
+}
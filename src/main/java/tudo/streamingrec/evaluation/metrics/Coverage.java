@@ -1,8 +1,10 @@
 package tudo.streamingrec.evaluation.metrics;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 
 /**
@@ -14,27 +16,28 @@ import tudo.streamingrec.data.Transaction;
  */
 public class Coverage extends HypothesisTestableMetric{
 	private static final long serialVersionUID = -5868960950896363409L;
-	//result storage
-	private DoubleArrayList results = new DoubleArrayList();
-
 	@Override
 	public void evaluate(Transaction transaction, LongArrayList recommendations,
-			LongOpenHashSet userTransactions) {
+			LongSet userTransactions) {
 		//just count either k, or the actual number of recommendation 
 		//in case the algorithm did not provide k recommendations
-		results.add(Math.min(recommendations.size(), k));
+		addResult(Math.min(recommendations.size(), k));
 	}
 
 	@Override
 	public double getResults() {
 		//build the average
-		return getAvg(results) / k;
+		return getMean() / k;
 	}
 
-	@Override
-	public DoubleArrayList getDetailedResults() {
-		//return the detailed results for t-testing
-		return results;
+	/**
+	 * Restores the metric (see {@link HypothesisTestableMetric#readLegacyResults(ObjectInputStream.GetField)})
+	 * @param in -
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		readLegacyResults(in.readFields());
 	}
 
 }
@@ -0,0 +1,244 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+
+/**
+ * The results of every single evaluation of a {@link HypothesisTestableMetric}
+ * (one value per test click), which are needed for the statistical tests.
+ * <p>
+ * By default, the values are kept in memory. If a spill folder is set, only a running
+ * summary is kept in memory and the values are appended to a file (a column of doubles)
+ * in the spill folder instead. The values are collected in a small chunk, which is appended
+ * to the file when it is full, so that no file stays open (a run might have thousands of metrics).
+ * The values are only read back when they are needed, e.g., for the statistical tests
+ * or when the metric is serialized.
+ * If the values are not needed at all (e.g., because the statistical tests are calculated
+ * online, see {@link OnlinePairedTTest}), only the running summary is kept.
+ * The mean is the same in all modes.
+ *
+ * @author MJ
+ *
+ */
+public class DetailedResults implements Serializable {
+	private static final long serialVersionUID = 3015934471845917624L;
+	//the folder for the spill files (null = keep the values in memory)
+	private static File spillFolder = null;
+	//should the values be discarded (i.e., only the summary is kept)?
+	private static boolean discardValues = false;
+	//the number of values that are collected before they are appended to the spill file
+	private static final int SPILL_CHUNK_SIZE = 1024;
+
+	//the values (in memory mode)
+	private transient DoubleArrayList values = null;
+	//the running summary, the spill file, and the values that have not been appended to it yet (in spill mode)
+	private transient SummaryStatistics summary = null;
+	private transient File file = null;
+	private transient double[] chunk = null;
+	private transient int chunkSize = 0;
+	//the number of values
+	private transient int size = 0;
+
+	/**
+	 * Sets the folder for the spill files. Only affects results that do not have values yet.
+	 * @param folder the folder (null = keep the values in memory)
+	 */
+	public static void setSpillFolder(File folder) {
+		spillFolder = folder;
+	}
+
+	/**
+	 * Only keeps the running summary of results that do not have values yet. Afterwards,
+	 * {@link #getValues()} fails.
+	 * @param discard -
+	 */
+	public static void setDiscardValues(boolean discard) {
+		discardValues = discard;
+	}
+
+	/**
+	 * Are the values of new results discarded?
+	 * @return -
+	 */
+	public static boolean isDiscardingValues() {
+		return discardValues;
+	}
+
+	/**
+	 * Adds the result of one evaluation
+	 * @param value -
+	 */
+	public synchronized void add(double value) {
+		if (values == null && summary == null) {
+			//the mode is decided when the first value arrives
+			if (spillFolder == null && !discardValues) {
+				values = new DoubleArrayList();
+			} else {
+				summary = new SummaryStatistics();
+			}
+		}
+		if (values != null) {
+			values.add(value);
+		} else {
+			summary.addValue(value);
+			if (discardValues) {
+				size++;
+				return;
+			}
+			if (chunk == null) {
+				chunk = new double[SPILL_CHUNK_SIZE];
+			}
+			chunk[chunkSize++] = value;
+			if (chunkSize == chunk.length) {
+				spillChunk();
+			}
+		}
+		size++;
+	}
+
+	/**
+	 * Appends the collected values to the spill file (the file is only open during this call)
+	 */
+	private void spillChunk() {
+		if (chunkSize == 0) {
+			return;
+		}
+		try {
+			if (file == null) {
+				spillFolder.mkdirs();
+				file = File.createTempFile("results", ".col", spillFolder);
+				file.deleteOnExit();
+			}
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file, true), chunkSize * 8))) {
+				for (int i = 0; i < chunkSize; i++) {
+					out.writeDouble(chunk[i]);
+				}
+			}
+			chunkSize = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not spill the detailed results", e);
+		}
+	}
+
+	/**
+	 * The number of values
+	 * @return -
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * The mean of all values
+	 * @return the mean (NaN if there are no values)
+	 */
+	public synchronized double getMean() {
+		if (summary != null) {
+			return summary.getMean();
+		}
+		//same as Metric.getAvg
+		SummaryStatistics avg = new SummaryStatistics();
+		if (values != null) {
+			for (int i = 0; i < values.size(); i++) {
+				avg.addValue(values.getDouble(i));
+			}
+		}
+		return avg.getMean();
+	}
+
+	/**
+	 * Returns all values. In spill mode, they are read back from the spill file
+	 * (the chunk is released, since the values are usually read at the end of the test phase).
+	 * @return the values in the order in which they were added
+	 */
+	public synchronized DoubleArrayList getValues() {
+		if (summary == null) {
+			return values != null ? values : new DoubleArrayList();
+		}
+		if (isDiscarded()) {
+			throw new IllegalStateException("The detailed results were discarded.");
+		}
+		double[] result = new double[size];
+		try (DataInputStream in = openSpillFile()) {
+			for (int i = 0; i < size; i++) {
+				result[i] = in.readDouble();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the spilled detailed results", e);
+		}
+		return DoubleArrayList.wrap(result);
+	}
+
+	/**
+	 * Were the values discarded (i.e., only the summary was kept)?
+	 * @return -
+	 */
+	private boolean isDiscarded() {
+		return summary != null && file == null && chunk == null;
+	}
+
+	/**
+	 * Appends the remaining values to the spill file and opens it for reading
+	 * @return the input stream
+	 * @throws IOException -
+	 */
+	private DataInputStream openSpillFile() throws IOException {
+		spillChunk();
+		chunk = null;
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+	}
+
+	/**
+	 * Writes the values (in spill mode, they are streamed from the spill file)
+	 * @param stream -
+	 * @throws IOException -
+	 */
+	private synchronized void writeObject(ObjectOutputStream stream) throws IOException {
+		stream.defaultWriteObject();
+		if (isDiscarded()) {
+			stream.writeInt(0);
+			return;
+		}
+		stream.writeInt(size);
+		if (summary == null) {
+			for (int i = 0; i < size; i++) {
+				stream.writeDouble(values.getDouble(i));
+			}
+		} else {
+			try (DataInputStream in = openSpillFile()) {
+				for (int i = 0; i < size; i++) {
+					stream.writeDouble(in.readDouble());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the values (in spill mode, they are spilled again)
+	 * @param stream -
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
+	 */
+	private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+		stream.defaultReadObject();
+		int count = stream.readInt();
+		for (int i = 0; i < count; i++) {
+			add(stream.readDouble());
+		}
+	}
+}
@@ -1,7 +1,7 @@
 package tudo.streamingrec.evaluation.metrics;
 
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 import tudo.streamingrec.evaluation.metrics.PrecisionOrRecall.Type;
 
@@ -21,7 +21,13 @@ public class F1 extends Metric{
 	private PrecisionOrRecall recall = null;	
 
 	@Override
-	public void evaluate(Transaction transaction, LongArrayList recommendations, LongOpenHashSet userTransactions) {
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		evaluate(transaction, recommendations, userTransactions, RankedHits.of(recommendations, userTransactions, k));
+	}
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+			RankedHits hits) {
 		if(precision==null){
 			//if the delegation objects are not yet created, create them
 			precision = new PrecisionOrRecall();
@@ -34,8 +40,8 @@ public class F1 extends Metric{
 		}
 		
 		//delegate the work to Precision and Recall instances
-		precision.evaluate(transaction, recommendations, userTransactions);
-		recall.evaluate(transaction, recommendations, userTransactions);
+		precision.evaluate(transaction, recommendations, userTransactions, hits);
+		recall.evaluate(transaction, recommendations, userTransactions, hits);
 	}
 
 	@Override
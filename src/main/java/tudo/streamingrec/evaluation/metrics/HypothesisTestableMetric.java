@@ -1,5 +1,7 @@
 package tudo.streamingrec.evaluation.metrics;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
@@ -14,13 +16,91 @@ import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
  */
 public abstract class HypothesisTestableMetric extends Metric implements Serializable{
 	private static final long serialVersionUID = -3343868792390624219L;
+	// result storage (in memory or spilled to disk)
+	private DetailedResults results = new DetailedResults();
+	// the online t-tests of this metric against the other algorithms (if enabled)
+	private transient OnlinePairedTTest onlineTest = null;
+
+	/**
+	 * Stores the result of one recommendation list evaluation
+	 * @param result -
+	 */
+	protected void addResult(double result) {
+		results.add(result);
+		reportOnline(result);
+	}
+
+	/**
+	 * Reports the result of one recommendation list evaluation to the online t-tests
+	 * (if enabled) without storing it (for metrics that store their results themselves)
+	 * @param result -
+	 */
+	protected void reportOnline(double result) {
+		if (onlineTest != null) {
+			onlineTest.add(getAlgorithm(), result);
+		}
+	}
+
+	/**
+	 * Restores a metric (also one that was serialized by an older version, in which
+	 * the detailed results were stored by the subclasses, see {@link #readLegacyResults(ObjectInputStream.GetField)})
+	 * @param in -
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (results == null) {
+			//older versions did not have this field
+			results = new DetailedResults();
+		}
+	}
+
+	/**
+	 * Older versions stored the detailed results in a field "results" of each subclass.
+	 * Subclasses pass the fields of their serialized form to this method, so that
+	 * the detailed results of such metrics (e.g., in old stat result files) are restored.
+	 * @param fields the serialized fields of the subclass
+	 * @throws IOException -
+	 */
+	protected void readLegacyResults(ObjectInputStream.GetField fields) throws IOException {
+		if (fields.getObjectStreamClass().getField("results") == null) {
+			//written by the current version
+			return;
+		}
+		DoubleArrayList legacyResults = (DoubleArrayList) fields.get("results", null);
+		if (legacyResults != null) {
+			for (int i = 0; i < legacyResults.size(); i++) {
+				results.add(legacyResults.getDouble(i));
+			}
+		}
+	}
+
+	/**
+	 * Reports every result to the online t-tests of this metric (see {@link OnlinePairedTTest})
+	 * @param onlineTest -
+	 */
+	public void setOnlineTest(OnlinePairedTTest onlineTest) {
+		this.onlineTest = onlineTest;
+	}
+
+	/**
+	 * The average of all evaluation results so far
+	 * @return the mean (NaN if nothing was evaluated)
+	 */
+	protected double getMean() {
+		return results.getMean();
+	}
+
 	/**
 	 * Return the detailed results of every single recommendation list evaluation,
 	 * so that later on the null-hypothesis (that the means of two different algorithms
 	 * are the same) can be tested.
 	 * @return A list of all individual evaluation results
 	 */
-	public abstract DoubleArrayList getDetailedResults();
+	public DoubleArrayList getDetailedResults() {
+		return results.getValues();
+	}
 	
 	/**
 	 * Returns the result of a two-tailed paired t-test. 
@@ -29,7 +109,17 @@ public abstract class HypothesisTestableMetric extends Metric implements Seriali
 	 * @return the p-value result of a paired t-test
 	 */
 	public double getTTestPValue(HypothesisTestableMetric otherAlgorithm){
-		return new TTest().pairedTTest(getDetailedResults().toDoubleArray(), otherAlgorithm.getDetailedResults().toDoubleArray());
+		return getTTestPValue(getDetailedResults().toDoubleArray(), otherAlgorithm.getDetailedResults().toDoubleArray());
+	}
+
+	/**
+	 * Returns the result of a two-tailed paired t-test on detailed results that were already read
+	 * @param results -
+	 * @param otherResults -
+	 * @return the p-value result of a paired t-test
+	 */
+	public static double getTTestPValue(double[] results, double[] otherResults){
+		return new TTest().pairedTTest(results, otherResults);
 	}
 	
 	/**
@@ -38,6 +128,16 @@ public abstract class HypothesisTestableMetric extends Metric implements Seriali
 	 * @return the p-value result of a Kolmogorov Smirnov test.
 	 */
 	public double getSmirnoffPValue(HypothesisTestableMetric otherAlgorithm){
-		return new KolmogorovSmirnovTest().kolmogorovSmirnovTest(getDetailedResults().toDoubleArray(), otherAlgorithm.getDetailedResults().toDoubleArray());
+		return getSmirnoffPValue(getDetailedResults().toDoubleArray(), otherAlgorithm.getDetailedResults().toDoubleArray());
+	}
+
+	/**
+	 * Returns the result of a Kolmogorov Smirnov test on detailed results that were already read
+	 * @param results -
+	 * @param otherResults -
+	 * @return the p-value result of a Kolmogorov Smirnov test.
+	 */
+	public static double getSmirnoffPValue(double[] results, double[] otherResults){
+		return new KolmogorovSmirnovTest().kolmogorovSmirnovTest(results, otherResults);
 	}
 }
@@ -1,8 +1,10 @@
 package tudo.streamingrec.evaluation.metrics;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 
 /**
@@ -12,12 +14,9 @@ import tudo.streamingrec.data.Transaction;
  */
 public class MRR extends HypothesisTestableMetric{
 	private static final long serialVersionUID = 2820604512185295616L;
-	// result storage
-	private DoubleArrayList results = new DoubleArrayList();
-
 	@Override
 	public void evaluate(Transaction transaction, LongArrayList recommendations,
-			LongOpenHashSet userTransactions) {
+			LongSet userTransactions) {
 		//if there is no ground truth, there is nothing to evaluate
 		if (userTransactions == null || userTransactions.isEmpty()) {
 			return;
@@ -25,7 +24,7 @@ public class MRR extends HypothesisTestableMetric{
 		
 		// if the algorithm does not return any recommendations, count it as 0
 		if (recommendations.isEmpty()) {
-			results.add(0);
+			addResult(0);
 			return;
 		}
 
@@ -33,28 +32,42 @@ public class MRR extends HypothesisTestableMetric{
 		// if the algorithm retrieves less than k recommendations, we calculate
 		// the real k value for this case
 		int realK = Math.min(k, recommendations.size());
-		// iterate over relevant items and calculate recall rank
-		for (Long itemID : userTransactions) {
-			for (int i = 0; i < realK; i++) {
-				if (itemID == recommendations.getLong(i)) {
-					results.add(1d/(i+1));
-					return;
-				}
+		// iterate over the recommendations and find the rank of the first relevant item
+		for (int i = 0; i < realK; i++) {
+			if (userTransactions.contains(recommendations.getLong(i))) {
+				addResult(1d/(i+1));
+				return;
 			}
 		}
 		//nothing found -> count as zero
-		results.add(0);
+		addResult(0);
+	}
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+			RankedHits hits) {
+		//if there is no ground truth, there is nothing to evaluate
+		if (userTransactions == null || userTransactions.isEmpty()) {
+			return;
+		}
+		//the rank of the first relevant item is already known (nothing found -> count as zero)
+		int rank = hits.getFirstHitRank(k);
+		addResult(rank > 0 ? 1d/rank : 0);
 	}
 
 	@Override
 	public double getResults() {
 		//return the average result
-		return getAvg(results);
+		return getMean();
 	}
 
-	@Override
-	public DoubleArrayList getDetailedResults() {
-		//return the detailed results for t-tests
-		return results;
+	/**
+	 * Restores the metric (see {@link HypothesisTestableMetric#readLegacyResults(ObjectInputStream.GetField)})
+	 * @param in -
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		readLegacyResults(in.readFields());
 	}
 }
@@ -1,8 +1,10 @@
 package tudo.streamingrec.evaluation.metrics;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 import tudo.streamingrec.evaluation.metrics.PrecisionOrRecall.Type;
 
@@ -15,72 +17,48 @@ import tudo.streamingrec.evaluation.metrics.PrecisionOrRecall.Type;
  */
 public class MeanF1 extends HypothesisTestableMetric{
 	private static final long serialVersionUID = -3321203802140966473L;
-	//the delegation objects
-	private transient PrecisionOrRecall precision = null;
-	private transient PrecisionOrRecall recall = null;
-	
-	// result storage
-	private DoubleArrayList results;
 	
 	@Override
-	public void evaluate(Transaction transaction, LongArrayList recommendations, LongOpenHashSet userTransactions) {
-		if(precision==null){
-			//if the delegation objects are not yet created, create them
-			precision = new PrecisionOrRecall();
-			precision.setType(Type.Precision);
-			precision.setK(k);
-			
-			recall = new PrecisionOrRecall();
-			recall.setType(Type.Recall);
-			recall.setK(k);
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		//determine the hits once for precision and recall
+		evaluate(transaction, recommendations, userTransactions, RankedHits.of(recommendations, userTransactions, k));
+	}
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+			RankedHits hits) {
+		//if there is no ground truth, there is nothing to evaluate
+		if (userTransactions == null || userTransactions.isEmpty()) {
+			return;
+		}
+		//calculate precision and recall of this recommendation list (as in PrecisionOrRecall)
+		double p = PrecisionOrRecall.calculate(Type.Precision, k, hits);
+		double r = PrecisionOrRecall.calculate(Type.Recall, k, hits);
+		//build the harmonic mean
+		double f1;
+		if (p+r == 0) {
+			f1 = 0;
+		}
+		else {
+			f1 = 2*(p*r)/(p+r);
 		}
-		
-		//delegate the work to Precision and Recall instances
-		precision.evaluate(transaction, recommendations, userTransactions);
-		recall.evaluate(transaction, recommendations, userTransactions);
+		//save the result value
+		addResult(f1);
 	}
 
 	@Override
 	public double getResults() {
-		//calculate the results and return the average
-		calcResults();
-		return getAvg(results);
+		//return the average
+		return getMean();
 	}
-	
+
 	/**
-	 * calculates the results of the F1 metric based on the eval results 
-	 * of Precision and Recall at every step
+	 * Restores the metric (see {@link HypothesisTestableMetric#readLegacyResults(ObjectInputStream.GetField)})
+	 * @param in -
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
 	 */
-	private synchronized void calcResults(){
-		if(results==null){
-			//get the detailed results of precision and recall
-			DoubleArrayList precisionRes = precision.getDetailedResults();
-			DoubleArrayList recallRes = recall.getDetailedResults();
-			
-			//create the F1 result list
-			results = new DoubleArrayList();
-			//iterate over the P/R results
-			for(int i = 0; i < precisionRes.size(); i++){
-				//retreive each P and R value and build the harmonic mean
-				double p = precisionRes.getDouble(i);
-				double r = recallRes.getDouble(i);
-				double f1;
-				if (p+r == 0) {
-					f1 = 0;
-				}
-				else {
-					f1 = 2*(p*r)/(p+r);
-				}
-				//save the result value
-				results.add(f1);
-			}
-		}
-	}
-
-	@Override
-	public DoubleArrayList getDetailedResults() {
-		//calculate and return the t-testable array of F1 values
-		calcResults();
-		return results;
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		readLegacyResults(in.readFields());
 	}
 }
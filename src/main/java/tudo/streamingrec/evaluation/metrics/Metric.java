@@ -7,7 +7,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 
 /**
@@ -36,7 +36,26 @@ public abstract class Metric implements Serializable{
 	 *            next clicks
 	 */
 	public abstract void evaluate(Transaction transaction, LongArrayList recommendations,
-			LongOpenHashSet userTransactions);
+			LongSet userTransactions);
+
+	/**
+	 * The method called by the {@link MetricEvaluator}, which determines the hits of the
+	 * recommendation list once for all metrics. Metrics that can be calculated from the hits
+	 * override this method, the others evaluate the recommendation list as usual.
+	 * 
+	 * @param transaction
+	 *            the current transaction
+	 * @param recommendations
+	 *            the list of recommendations
+	 * @param userTransactions
+	 *            the user's next clicks
+	 * @param hits
+	 *            the hits of the recommendation list
+	 */
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+			RankedHits hits) {
+		evaluate(transaction, recommendations, userTransactions);
+	}
 
 	/**
 	 * return result of evaluation
@@ -54,6 +73,24 @@ public abstract class Metric implements Serializable{
 		this.k = k;
 	}
 
+	/**
+	 * The number of items to consider from the top of the recommendation list.
+	 * 
+	 * @return k
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Does this metric evaluate the recommendation lists? Special metrics whose values
+	 * are measured by the AlgorithmWrapper instead (e.g., runtimes) do not.
+	 * @return true for accuracy metrics
+	 */
+	public boolean isBasedOnRecommendations() {
+		return true;
+	}
+
 	/**
 	 * The name of the metric (set via JSON). E.g. Precision@10
 	 * @return the name of the metric
@@ -0,0 +1,52 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import java.util.List;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * Evaluates all metrics of an algorithm on a recommendation list. The hits of the list
+ * are determined once (see {@link RankedHits}) and shared by all metrics, so that each
+ * accuracy metric only needs a constant number of operations per list.
+ * An instance must only be used by one thread at a time.
+ * @author MJ
+ *
+ */
+public class MetricEvaluator {
+	//the metrics in the order of the config
+	private final List<Metric> metrics;
+	//the number of positions that the metrics look at (the largest k)
+	private final int limit;
+	//the hits of the current recommendation list
+	private final RankedHits hits = new RankedHits();
+
+	/**
+	 * Creates an evaluator for the metrics of an algorithm
+	 * @param metrics -
+	 */
+	public MetricEvaluator(List<Metric> metrics) {
+		this.metrics = metrics;
+		int limit = 0;
+		for (Metric metric : metrics) {
+			if (metric.isBasedOnRecommendations()) {
+				limit = Math.max(limit, metric.getK());
+			}
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * Evaluates all metrics on a recommendation list
+	 * @param transaction the click that the recommendations were generated for
+	 * @param recommendations -
+	 * @param userTransactions the ground truth
+	 */
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		hits.scan(recommendations, userTransactions, limit);
+		for (Metric metric : metrics) {
+			metric.evaluate(transaction, recommendations, userTransactions, hits);
+		}
+	}
+}
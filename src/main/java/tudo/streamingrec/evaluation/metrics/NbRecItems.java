@@ -2,6 +2,7 @@ package tudo.streamingrec.evaluation.metrics;
 
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 
 /**
@@ -16,7 +17,7 @@ public class NbRecItems extends Metric{
 	LongOpenHashSet uniqueItems = new LongOpenHashSet();
 
 	@Override
-	public void evaluate(Transaction transaction, LongArrayList recommendations, LongOpenHashSet userTransactions) {
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
 		//merge the recommendation into the list
 		uniqueItems.addAll(recommendations.subList(0, Math.min(recommendations.size(), k)));
 	}
@@ -0,0 +1,149 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import java.util.List;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummaryValues;
+import org.apache.commons.math3.stat.inference.TTest;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Paired t-tests between all algorithms for one metric that are updated while the
+ * results arrive, so that the detailed results do not have to be stored.
+ * <p>
+ * Each algorithm reports its results in the order of the test clicks. As soon as all
+ * algorithms have reported the result for a click, the difference of every algorithm pair
+ * is added to the running mean and variance of that pair (Welford's algorithm) and the
+ * results for the click are discarded. Thus, only the results between the slowest and the
+ * fastest algorithm are kept, which is bounded by the ring buffer size, since all algorithms
+ * have to run in the same lockstep group.
+ *
+ * @author MJ
+ *
+ */
+public class OnlinePairedTTest {
+	//the name of the metric
+	private final String metricName;
+	//the index of each algorithm
+	private final Object2IntOpenHashMap<String> indices = new Object2IntOpenHashMap<>();
+	//the results of each algorithm that have not been paired yet
+	//(the first one belongs to the click with the index "paired", starting at position "head")
+	private final DoubleArrayList[] pending;
+	private int head = 0;
+	//the number of results of each algorithm
+	private final long[] counts;
+	//the number of clicks for which the results of all algorithms have been paired
+	private long paired = 0;
+	//the running mean and sum of squared deviations of the differences of each algorithm pair
+	private final double[] means;
+	private final double[] m2s;
+
+	/**
+	 * Creates the test for a metric
+	 * @param metricName -
+	 * @param algorithms the names of all algorithms that report results for the metric
+	 */
+	public OnlinePairedTTest(String metricName, List<String> algorithms) {
+		this.metricName = metricName;
+		for (String algorithm : algorithms) {
+			indices.put(algorithm, indices.size());
+		}
+		indices.defaultReturnValue(-1);
+		pending = new DoubleArrayList[algorithms.size()];
+		for (int i = 0; i < pending.length; i++) {
+			pending[i] = new DoubleArrayList();
+		}
+		counts = new long[algorithms.size()];
+		int pairs = algorithms.size() * (algorithms.size() - 1) / 2;
+		means = new double[pairs];
+		m2s = new double[pairs];
+	}
+
+	/**
+	 * The name of the metric
+	 * @return -
+	 */
+	public String getMetricName() {
+		return metricName;
+	}
+
+	/**
+	 * Adds the result of the next click of an algorithm
+	 * @param algorithm -
+	 * @param result -
+	 */
+	public synchronized void add(String algorithm, double result) {
+		int index = indices.getInt(algorithm);
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown algorithm for the online tests of " + metricName + ": " + algorithm);
+		}
+		pending[index].add(result);
+		//only the slowest algorithm can complete a click
+		if (counts[index]++ == paired) {
+			pairCompletedClicks();
+		}
+	}
+
+	/**
+	 * Updates the algorithm pairs with the clicks for which all results are available
+	 */
+	private void pairCompletedClicks() {
+		long complete = Long.MAX_VALUE;
+		for (long count : counts) {
+			complete = Math.min(complete, count);
+		}
+		for (; paired < complete; paired++, head++) {
+			double n = paired + 1;
+			int pair = 0;
+			for (int i = 0; i < pending.length; i++) {
+				double a = pending[i].getDouble(head);
+				for (int j = i + 1; j < pending.length; j++, pair++) {
+					double difference = a - pending[j].getDouble(head);
+					double delta = difference - means[pair];
+					means[pair] += delta / n;
+					m2s[pair] += delta * (difference - means[pair]);
+				}
+			}
+		}
+		//drop the paired results once they make up most of the buffers
+		if (head > 1024 && head * 2 > pending[0].size()) {
+			for (DoubleArrayList list : pending) {
+				list.removeElements(0, head);
+			}
+			head = 0;
+		}
+	}
+
+	/**
+	 * Returns the result of a two-tailed paired t-test between two algorithms
+	 * (the same as {@link HypothesisTestableMetric#getTTestPValue(HypothesisTestableMetric)} on the detailed results)
+	 * @param algorithm -
+	 * @param otherAlgorithm -
+	 * @return the p-value (NaN if less than two clicks were paired)
+	 */
+	public synchronized double getPValue(String algorithm, String otherAlgorithm) {
+		int a = indices.getInt(algorithm);
+		int b = indices.getInt(otherAlgorithm);
+		if (a < 0 || b < 0 || a == b) {
+			throw new IllegalArgumentException("No online test of " + metricName + " for " + algorithm + " and " + otherAlgorithm);
+		}
+		if (counts[a] != counts[b]) {
+			//the same as for the t-test on the detailed results
+			throw new DimensionMismatchException((int) counts[a], (int) counts[b]);
+		}
+		if (paired < 2) {
+			//the variance is undefined (e.g., short run or a metric that was hardly ever evaluated)
+			return Double.NaN;
+		}
+		//the index of the pair in the upper triangle
+		int i = Math.min(a, b);
+		int j = Math.max(a, b);
+		int pair = i * (2 * pending.length - i - 1) / 2 + (j - i - 1);
+		double variance = m2s[pair] / (paired - 1);
+		//the test is symmetric -> the sign of the mean does not matter, min/max/sum are not used
+		return new TTest().tTest(0, new StatisticalSummaryValues(means[pair], variance, paired, Double.NaN,
+				Double.NaN, means[pair] * paired));
+	}
+}
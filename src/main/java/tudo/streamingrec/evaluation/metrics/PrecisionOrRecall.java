@@ -1,9 +1,10 @@
 package tudo.streamingrec.evaluation.metrics;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongIterator;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.data.Transaction;
 
 /**
@@ -13,64 +14,81 @@ import tudo.streamingrec.data.Transaction;
  */
 public class PrecisionOrRecall extends HypothesisTestableMetric {
 	private static final long serialVersionUID = 5757499847554728701L;
-	// result storage
-	private DoubleArrayList results = new DoubleArrayList();
 	//the type (Precision or Recall)
 	private Type type = Type.Undefined;
 
-	public void evaluate(Transaction transaction, LongArrayList recommendations, LongOpenHashSet userTransactions) {
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
 		//if there is no ground truth, there is nothing to evaluate
 		if (userTransactions == null || userTransactions.isEmpty()) {
 			return;
 		}
-		// if the algorithm does not return any recommendations, count it as 0
-		if (recommendations.isEmpty()) {
-			results.add(0);
+		// store the precision/Recall
+		addResult(calculate(type, k, RankedHits.of(recommendations, userTransactions, k)));
+	}
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+			RankedHits hits) {
+		//if there is no ground truth, there is nothing to evaluate
+		if (userTransactions == null || userTransactions.isEmpty()) {
 			return;
 		}
+		// store the precision/Recall
+		addResult(calculate(type, k, hits));
+	}
 
+	/**
+	 * Calculates the precision or recall of one recommendation list
+	 * @param type -
+	 * @param k -
+	 * @param hits the hits of the recommendation list (with a ground truth that is not empty)
+	 * @return the precision or recall
+	 */
+	static double calculate(Type type, int k, RankedHits hits) {
 		// if the algorithm retrieves less than k recommendations, we calculate
 		// the real k value for this case
-		int realK = Math.min(k, recommendations.size());
+		int realK = hits.getRealK(k);
+		// if the algorithm does not return any recommendations, count it as 0
+		if (realK == 0) {
+			return 0;
+		}
 
 		// check duplicates
-		LongOpenHashSet uniqueRecs = new LongOpenHashSet();
-		for (int i = 0; i < realK; i++) {
-			if (!uniqueRecs.add(recommendations.getLong(i))) {
-				throw new RuntimeException("Duplicate recommendation.");
-			}
+		if (hits.hasDuplicate(k)) {
+			throw new RuntimeException("Duplicate recommendation.");
 		}
 
-		// calculate the precision
-		double result = 0;
-		// iterate over relevant items and recommendations to calculate the
-		// intersection
-		for (LongIterator iterator = userTransactions.iterator(); iterator.hasNext();) {
-			long itemID = iterator.nextLong();
-			for (int i = 0; i < realK; i++) {
-				if (itemID == recommendations.getLong(i)) {
-					result++;
-				}
-			}
-		}
+		// the size of the intersection of the relevant items and the recommendations
+		double result = hits.getHits(k);
 
 		//determine the divider of the fraction (different for precision and recall)
 		double divider;
 		if(type == Type.Precision){
 			divider = realK;
 		}else if(type == Type.Recall){
-			divider = userTransactions.size();
+			divider = hits.getGroundTruthSize();
 		}else{
 			throw new RuntimeException("Neither precision nor recall defined.");
 		}
-		// store the precision/Recall
-		results.add(result / divider);
+		return result / divider;
 	}
 
 	@Override
 	public double getResults() {
 		//return the average results
-		return getAvg(results);
+		return getMean();
+	}
+
+	/**
+	 * Restores the metric (see {@link HypothesisTestableMetric#readLegacyResults(ObjectInputStream.GetField)})
+	 * @param in -
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		type = (Type) fields.get("type", Type.Undefined);
+		readLegacyResults(fields);
 	}
 	
 	/**
@@ -92,10 +110,4 @@ public class PrecisionOrRecall extends HypothesisTestableMetric {
 		Precision,
 		Recall
 	}
-
-	@Override
-	public DoubleArrayList getDetailedResults() {
-		//return the detailed results
-		return results;
-	}	
 }
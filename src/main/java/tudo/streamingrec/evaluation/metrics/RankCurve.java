@@ -0,0 +1,270 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import java.util.List;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * Calculates precision, recall, mean F1, and MRR (as in {@link PrecisionOrRecall}, {@link MeanF1},
+ * and {@link MRR}) for a list of cutoffs from a single scan of each recommendation list.
+ * <p>
+ * Configured via JSON, e.g.,
+ * {"metric": ".RankCurve", "types": ["Precision", "Recall", "MRR"], "cutoffs": [1, 3, 5, 10, 20]}.
+ * When the metrics config is loaded, the curve is replaced by one metric per type and cutoff
+ * (named, e.g., "MRR@5", prefixed by the name of the curve if it has one, see {@link #getMetrics()}),
+ * so that these metrics are reported and tested like separately configured ones.
+ * <p>
+ * Instead of one list of detailed results per type and cutoff, the curve only stores the
+ * positions of the relevant items in each recommendation list (plus the list length and the number of
+ * relevant items). The detailed results of every type and cutoff are calculated from these
+ * when they are needed (e.g., for the statistical tests).
+ *
+ * @author MJ
+ *
+ */
+public class RankCurve extends Metric {
+	private static final long serialVersionUID = 7342188469921347360L;
+	//the configured types and cutoffs
+	private List<Type> types = new ObjectArrayList<>();
+	private int[] cutoffs = new int[0];
+	//one metric per type and cutoff (created on demand)
+	private List<Metric> metrics = null;
+	//do the metrics have online t-tests?
+	private transient boolean reportOnline = false;
+
+	//the length of each recommendation list (up to the largest cutoff) and its number of relevant items
+	private final IntArrayList listSizes = new IntArrayList();
+	private final IntArrayList groundTruthSizes = new IntArrayList();
+	//the positions of the relevant items of all lists (the ones of list i start at index hitOffsets[i])
+	private final IntArrayList hitPositions = new IntArrayList();
+	private final IntArrayList hitOffsets = IntArrayList.wrap(new int[] { 0 });
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		evaluate(transaction, recommendations, userTransactions, RankedHits.of(recommendations, userTransactions, k));
+	}
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+			RankedHits hits) {
+		//if there is no ground truth, there is nothing to evaluate
+		if (userTransactions == null || userTransactions.isEmpty()) {
+			return;
+		}
+		//precision and recall do not allow duplicates (the MRR does)
+		if (hits.hasDuplicate(k) && (types.contains(Type.Precision) || types.contains(Type.Recall)
+				|| types.contains(Type.MeanF1))) {
+			throw new RuntimeException("Duplicate recommendation.");
+		}
+		int click;
+		synchronized (this) {
+			click = listSizes.size();
+			listSizes.add(hits.getRealK(k));
+			groundTruthSizes.add(hits.getGroundTruthSize());
+			for (int i = 0; i < hits.getRealK(k); i++) {
+				if (hits.isHit(i)) {
+					hitPositions.add(i);
+				}
+			}
+			hitOffsets.add(hitPositions.size());
+		}
+		if (!reportOnline) {
+			return;
+		}
+		//report the results to the online t-tests
+		for (Metric metric : getMetrics()) {
+			CutoffMetric cutoffMetric = (CutoffMetric) metric;
+			cutoffMetric.reportOnline(getResult(cutoffMetric.type, cutoffMetric.getK(), click));
+		}
+	}
+
+	/**
+	 * Calculates the result of one recommendation list for a type and cutoff
+	 * @param type -
+	 * @param cutoff -
+	 * @param click the index of the recommendation list
+	 * @return the result
+	 */
+	private synchronized double getResult(Type type, int cutoff, int click) {
+		// if the algorithm retrieves less than k recommendations, we calculate
+		// the real k value for this case
+		int realK = Math.min(cutoff, listSizes.getInt(click));
+		// if the algorithm does not return any recommendations, count it as 0
+		if (realK == 0) {
+			return 0;
+		}
+		//count the relevant items before the cutoff (the positions are sorted)
+		int hits = 0;
+		for (int i = hitOffsets.getInt(click); i < hitOffsets.getInt(click + 1)
+				&& hitPositions.getInt(i) < realK; i++) {
+			hits++;
+		}
+		double p = hits / (double) realK;
+		double r = hits / (double) groundTruthSizes.getInt(click);
+		switch (type) {
+		case Precision:
+			return p;
+		case Recall:
+			return r;
+		case MeanF1:
+			return p + r == 0 ? 0 : 2 * (p * r) / (p + r);
+		default:
+			//the rank of the first relevant item
+			return hits > 0 ? 1d / (hitPositions.getInt(hitOffsets.getInt(click)) + 1) : 0;
+		}
+	}
+
+	/**
+	 * Calculates the results of all recommendation lists for a type and cutoff
+	 * @param type -
+	 * @param cutoff -
+	 * @return one result per recommendation list
+	 */
+	private synchronized DoubleArrayList getResults(Type type, int cutoff) {
+		double[] results = new double[listSizes.size()];
+		for (int click = 0; click < results.length; click++) {
+			results[click] = getResult(type, cutoff, click);
+		}
+		return DoubleArrayList.wrap(results);
+	}
+
+	@Override
+	public double getResults() {
+		//the results are reported by the metric of each type and cutoff
+		return Double.NaN;
+	}
+
+	/**
+	 * Returns one metric per type and cutoff, which report the results of this curve.
+	 * The first of them passes the recommendation lists on to the curve.
+	 * @return the metrics
+	 */
+	public List<Metric> getMetrics() {
+		if (metrics == null) {
+			metrics = new ObjectArrayList<>();
+			for (Type type : types) {
+				for (int cutoff : cutoffs) {
+					CutoffMetric metric = new CutoffMetric(this, type, metrics.isEmpty());
+					metric.setK(cutoff);
+					metric.setName((getName() == null ? "" : getName() + " ") + type + "@" + cutoff);
+					metrics.add(metric);
+				}
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * The types of the curve. Set via JSON config.
+	 * @param types -
+	 */
+	public void setTypes(List<Type> types) {
+		this.types = types;
+	}
+
+	/**
+	 * The cutoffs of the curve (the k values). Set via JSON config.
+	 * @param cutoffs -
+	 */
+	public void setCutoffs(int[] cutoffs) {
+		this.cutoffs = cutoffs;
+		//the recommendation lists are scanned up to the largest cutoff
+		k = 0;
+		for (int cutoff : cutoffs) {
+			k = Math.max(k, cutoff);
+		}
+	}
+
+	/**
+	 * The cutoffs of the curve (the k values)
+	 * @return -
+	 */
+	public int[] getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * The metric types of a curve
+	 * <ul>
+	 * <li>Precision, Recall: as in {@link PrecisionOrRecall}</li>
+	 * <li>MeanF1: as in {@link MeanF1}</li>
+	 * <li>MRR: as in {@link MRR}</li>
+	 * </ul>
+	 * @author MJ
+	 *
+	 */
+	public static enum Type {
+		Precision, Recall, MeanF1, MRR
+	}
+
+	/**
+	 * The metric of one type and cutoff of a curve. Its results are calculated from the hits
+	 * that are stored by the curve.
+	 * @author MJ
+	 *
+	 */
+	private static class CutoffMetric extends HypothesisTestableMetric {
+		private static final long serialVersionUID = -5480218519946564839L;
+		//the curve that stores the hits
+		private final RankCurve curve;
+		private final Type type;
+		//does this metric pass the recommendation lists on to the curve?
+		private final boolean first;
+
+		/**
+		 * Creates the metric of a type and cutoff
+		 * @param curve -
+		 * @param type -
+		 * @param first true for the first metric of the curve
+		 */
+		private CutoffMetric(RankCurve curve, Type type, boolean first) {
+			this.curve = curve;
+			this.type = type;
+			this.first = first;
+		}
+
+		@Override
+		public void setOnlineTest(OnlinePairedTTest onlineTest) {
+			super.setOnlineTest(onlineTest);
+			curve.reportOnline |= onlineTest != null;
+		}
+
+		@Override
+		public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+			if (first) {
+				curve.evaluate(transaction, recommendations, userTransactions);
+			}
+		}
+
+		@Override
+		public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions,
+				RankedHits hits) {
+			if (first) {
+				curve.evaluate(transaction, recommendations, userTransactions, hits);
+			}
+		}
+
+		@Override
+		public double getResults() {
+			//return the average result (same as DetailedResults)
+			DoubleArrayList results = getDetailedResults();
+			SummaryStatistics avg = new SummaryStatistics();
+			for (int i = 0; i < results.size(); i++) {
+				avg.addValue(results.getDouble(i));
+			}
+			return avg.getMean();
+		}
+
+		@Override
+		public DoubleArrayList getDetailedResults() {
+			return curve.getResults(type, k);
+		}
+	}
+}
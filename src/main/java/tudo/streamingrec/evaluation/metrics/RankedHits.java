@@ -0,0 +1,123 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+/**
+ * The hits of one recommendation list, determined in a single pass over its top positions.
+ * For every prefix of the list, it knows how many recommendations are in the ground truth,
+ * so that the accuracy metrics for any k (up to the limit) can be calculated in constant time
+ * instead of scanning the list again for every metric.
+ * An instance can be reused for the next recommendation list (it is not thread-safe).
+ * @author MJ
+ *
+ */
+public class RankedHits {
+	//the number of positions that were scanned (the limit or the length of the list, if shorter)
+	private int size = 0;
+	//the number of hits in the first i positions (at index i)
+	private int[] cumulativeHits = new int[1];
+	//the position of the first hit and of the first duplicate recommendation (size = none)
+	private int firstHit = 0;
+	private int firstDuplicate = 0;
+	//the number of relevant items
+	private int groundTruthSize = 0;
+	//reused to find duplicate recommendations
+	private final LongOpenHashSet uniqueRecs = new LongOpenHashSet();
+
+	/**
+	 * Determines the hits of a recommendation list
+	 * @param recommendations -
+	 * @param groundTruth the relevant items (may be null)
+	 * @param limit the number of positions to scan (the largest k of the metrics)
+	 * @return the hits
+	 */
+	public static RankedHits of(LongArrayList recommendations, LongSet groundTruth, int limit) {
+		RankedHits hits = new RankedHits();
+		hits.scan(recommendations, groundTruth, limit);
+		return hits;
+	}
+
+	/**
+	 * Determines the hits of a recommendation list (replacing the hits of the previous list)
+	 * @param recommendations -
+	 * @param groundTruth the relevant items (may be null)
+	 * @param limit the number of positions to scan (the largest k of the metrics)
+	 */
+	public void scan(LongArrayList recommendations, LongSet groundTruth, int limit) {
+		size = Math.min(limit, recommendations.size());
+		groundTruthSize = groundTruth == null ? 0 : groundTruth.size();
+		if (cumulativeHits.length <= size) {
+			cumulativeHits = new int[size + 1];
+		}
+		firstHit = size;
+		firstDuplicate = size;
+		uniqueRecs.clear();
+		for (int i = 0; i < size; i++) {
+			long item = recommendations.getLong(i);
+			if (firstDuplicate == size && !uniqueRecs.add(item)) {
+				firstDuplicate = i;
+			}
+			boolean hit = groundTruthSize > 0 && groundTruth.contains(item);
+			if (hit && firstHit == size) {
+				firstHit = i;
+			}
+			cumulativeHits[i + 1] = cumulativeHits[i] + (hit ? 1 : 0);
+		}
+	}
+
+	/**
+	 * The number of recommendations that are considered for a k
+	 * (less than k if the algorithm returned fewer recommendations)
+	 * @param k -
+	 * @return -
+	 */
+	public int getRealK(int k) {
+		return Math.min(k, size);
+	}
+
+	/**
+	 * The number of relevant items in the top k recommendations
+	 * @param k -
+	 * @return -
+	 */
+	public int getHits(int k) {
+		return cumulativeHits[getRealK(k)];
+	}
+
+	/**
+	 * Checks if the recommendation at a position is relevant
+	 * @param position the position (starting at 0, below the limit)
+	 * @return -
+	 */
+	public boolean isHit(int position) {
+		return cumulativeHits[position + 1] > cumulativeHits[position];
+	}
+
+	/**
+	 * The rank of the first relevant item in the top k recommendations
+	 * @param k -
+	 * @return the rank (starting at 1) or 0 if there is none
+	 */
+	public int getFirstHitRank(int k) {
+		return firstHit < getRealK(k) ? firstHit + 1 : 0;
+	}
+
+	/**
+	 * Checks if an item is recommended more than once in the top k recommendations
+	 * @param k -
+	 * @return -
+	 */
+	public boolean hasDuplicate(int k) {
+		return firstDuplicate < getRealK(k);
+	}
+
+	/**
+	 * The number of relevant items
+	 * @return -
+	 */
+	public int getGroundTruthSize() {
+		return groundTruthSize;
+	}
+}
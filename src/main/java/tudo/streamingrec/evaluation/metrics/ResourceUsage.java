@@ -0,0 +1,77 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.AlgorithmWrapper;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * A special metric that stores the resource usage of an algorithm (heap allocations and CPU time),
+ * as measured for the thread that executes the algorithm's recommend and train methods.
+ * Values are filled directly by the {@link AlgorithmWrapper} object.
+ * @author MJ
+ *
+ */
+public class ResourceUsage extends Metric {
+	private static final long serialVersionUID = -4630937212094418175L;
+	private double value;
+	private Type type;
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		//do nothing here.
+		//resource usage values are not based on the recommendation list
+		//but on the measurements of the AlgorithmWrapper class
+	}
+
+	/**
+	 * Sets the measured value of this algorithm.
+	 * Done by the {@link AlgorithmWrapper} object.
+	 * @param value -
+	 */
+	public void setValue(double value) {
+		this.value = value;
+	}
+
+	@Override
+	public double getResults() {
+		return value;
+	}
+
+	@Override
+	public boolean isBasedOnRecommendations() {
+		return false;
+	}
+
+	/**
+	 * The type of resource usage
+	 * @return -
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The type of resource usage. Set via JSON config.
+	 * @param type -
+	 */
+	public void setType(Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * The type of resource usage
+	 * <ul>
+	 * <li>RecommendAllocation: the average number of bytes allocated per call of recommend</li>
+	 * <li>TrainAllocation: the average number of bytes allocated per event that is sent to train during the test phase</li>
+	 * <li>CpuTime: the CPU time of all recommend and train calls in milliseconds</li>
+	 * <li>CpuTimeRatio: the CPU time divided by the wall-clock time of all recommend and train calls
+	 * (values below 1 mean that the algorithm waited, e.g., for a CPU core, a lock, or the garbage collector)</li>
+	 * </ul>
+	 * @author MJ
+	 *
+	 */
+	public static enum Type {
+		RecommendAllocation, TrainAllocation, CpuTime, CpuTimeRatio
+	}
+}
@@ -1,7 +1,7 @@
 package tudo.streamingrec.evaluation.metrics;
 
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import tudo.streamingrec.AlgorithmWrapper;
 import tudo.streamingrec.data.Transaction;
 
@@ -16,9 +16,11 @@ public class Runtime extends Metric {
 	private double runtime;
 	private Type type;
 	private Resolution resolution;
+	//the percentile of the latency types (100 = maximum)
+	private double percentile = 50;
 
 	@Override
-	public void evaluate(Transaction transaction, LongArrayList recommendations, LongOpenHashSet userTransactions) {
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
 		//do nothing here.
 		//runtime values are not based on the recommendation list
 		//but on the runtime determined by the AlgorithmWrapper class
@@ -32,6 +34,9 @@ public class Runtime extends Metric {
 	public void setRuntime(double runtime) {
 		//depending on the resolution, the value is divided
 		switch (resolution) {
+			case Microseconds:
+				this.runtime = runtime * 1000;
+				return;
 			case Seconds:
 				this.runtime = runtime / 1000;
 				return;
@@ -47,12 +52,38 @@ public class Runtime extends Metric {
 		}
 	}
 
+	/**
+	 * Converts a runtime value in the resolution of this metric (e.g., from a previous
+	 * result file) back to milliseconds.
+	 * @param value the runtime value in the resolution of this metric
+	 * @return the runtime in milliseconds
+	 */
+	public double toMilliseconds(double value) {
+		switch (resolution) {
+			case Microseconds:
+				return value / 1000;
+			case Seconds:
+				return value * 1000;
+			case Minutes:
+				return value * 1000 * 60;
+			case Hours:
+				return value * 1000 * 60 * 60;
+			default:
+				return value;
+		}
+	}
+
 	@Override
 	public double getResults() {
 		//return the runtime
 		return runtime;
 	}
 
+	@Override
+	public boolean isBasedOnRecommendations() {
+		return false;
+	}
+
 	/**
 	 * The type of runtime (training, testing, or in-between training)
 	 * @return The type of runtime
@@ -70,26 +101,52 @@ public class Runtime extends Metric {
 		this.type = type;
 	}
 
+	/**
+	 * The percentile of the latency distribution that is reported by the latency types
+	 * @return the percentile (100 = maximum)
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * The percentile of the latency distribution that is reported by the latency types,
+	 * e.g., 50, 90, 99, 99.9, or 100 (= maximum). Set via JSON config.
+	 * @param percentile -
+	 */
+	public void setPercentile(double percentile) {
+		this.percentile = percentile;
+	}
+
 	/**
 	 * The type of runtime (training, testing, or in-between training)
+	 * or the latency distribution of the single calls of recommend or train during the test phase
 	 * @author MJ
 	 *
 	 */
 	public static enum Type {
-		Training, Testing, InBetweenTraining
+		Training, Testing, InBetweenTraining, RecommendLatency, TrainLatency;
+
+		/**
+		 * Does this type report a percentile of single calls (instead of a total time)?
+		 * @return -
+		 */
+		public boolean isLatency() {
+			return this == RecommendLatency || this == TrainLatency;
+		}
 	}
 
 	/**
-	 * The resolution of the runtime (Milliseconds, Seconds, Minutes, or Hours)
+	 * The resolution of the runtime (Microseconds, Milliseconds, Seconds, Minutes, or Hours)
 	 * @author MJ
 	 *
 	 */
 	public static enum Resolution {
-		Milliseconds, Seconds, Minutes, Hours
+		Microseconds, Milliseconds, Seconds, Minutes, Hours
 	}
 
 	/**
-	 * The resolution of the runtime (Milliseconds, Seconds, Minutes, or Hours).
+	 * The resolution of the runtime (Microseconds, Milliseconds, Seconds, Minutes, or Hours).
 	 * Set via JSON config.
 	 * @param resolution the resolution to set
 	 */
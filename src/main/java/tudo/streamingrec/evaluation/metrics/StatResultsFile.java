@@ -0,0 +1,279 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * A binary columnar file for the detailed results of the {@link HypothesisTestableMetric}s
+ * of one algorithm (one column of doubles per metric, one value per test click).
+ * Unlike Java serialization of the metric objects, reading the file only parses the
+ * small column headers. The values of a column are read via memory mapping when they
+ * are needed, i.e., only one column has to be in memory at once.
+ * <p>
+ * Layout: one or more blocks (each written by one call to {@link #append(File, String, List)}).
+ * A block consists of a header (magic number, version, algorithm name, number of columns),
+ * followed by the columns. Each column has a header (metric name, encoding, number of values,
+ * mean, payload size) followed by the payload. Two encodings are used, whichever is smaller:
+ * the raw values, or a sparse encoding for columns that are mostly zero (e.g., precision),
+ * in which each non-zero value is stored as the number of zeros before it (as a varint)
+ * followed by the value. The values are stored bit-exactly, so statistical tests on
+ * the file give exactly the same results as on the original metrics.
+ *
+ * @author MJ
+ *
+ */
+public class StatResultsFile {
+	//identifies the file format
+	private static final int MAGIC = 0x53525354;
+	private static final int VERSION = 1;
+	//column encodings
+	private static final byte RAW = 0;
+	private static final byte SPARSE = 1;
+
+	/**
+	 * Appends a block with the detailed results of an algorithm's metrics to a file
+	 * @param file -
+	 * @param algorithm the name of the algorithm
+	 * @param metrics -
+	 * @throws IOException -
+	 */
+	public static void append(File file, String algorithm, List<HypothesisTestableMetric> metrics) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, algorithm);
+			out.writeInt(metrics.size());
+			for (HypothesisTestableMetric metric : metrics) {
+				DoubleArrayList values = metric.getDetailedResults();
+				//determine the size of the sparse encoding
+				long sparseSize = 0;
+				int zeros = 0;
+				for (int i = 0; i < values.size(); i++) {
+					if (isZero(values.getDouble(i))) {
+						zeros++;
+					} else {
+						sparseSize += varIntSize(zeros) + 8;
+						zeros = 0;
+					}
+				}
+				long rawSize = 8L * values.size();
+				byte encoding = sparseSize < rawSize ? SPARSE : RAW;
+				long payloadSize = encoding == SPARSE ? sparseSize : rawSize;
+				if (payloadSize > Integer.MAX_VALUE) {
+					throw new IOException("Column " + metric.getName() + " of " + algorithm + " is too large.");
+				}
+
+				writeString(out, metric.getName());
+				out.writeByte(encoding);
+				out.writeInt(values.size());
+				out.writeDouble(metric.getResults());
+				out.writeInt((int) payloadSize);
+				if (encoding == RAW) {
+					for (int i = 0; i < values.size(); i++) {
+						out.writeDouble(values.getDouble(i));
+					}
+				} else {
+					zeros = 0;
+					for (int i = 0; i < values.size(); i++) {
+						double value = values.getDouble(i);
+						if (isZero(value)) {
+							zeros++;
+						} else {
+							writeVarInt(out, zeros);
+							out.writeDouble(value);
+							zeros = 0;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a file is in this format (and not, e.g., a file of serialized metric objects)
+	 * @param file -
+	 * @return true if the file starts with the magic number of this format
+	 * @throws IOException -
+	 */
+	public static boolean isStatResultsFile(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			return in.length() >= 4 && in.readInt() == MAGIC;
+		}
+	}
+
+	/**
+	 * Reads the column headers of all blocks of a file. The values of the returned metrics
+	 * are only read (via memory mapping) when {@link HypothesisTestableMetric#getDetailedResults()}
+	 * is called.
+	 * @param file -
+	 * @return one metric per column
+	 * @throws IOException -
+	 */
+	public static List<HypothesisTestableMetric> read(File file) throws IOException {
+		List<HypothesisTestableMetric> metrics = new ObjectArrayList<>();
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			while (in.getFilePointer() < in.length()) {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					throw new IOException("File " + file + " is not a stat result file of this version.");
+				}
+				String algorithm = readString(in);
+				int nbOfColumns = in.readInt();
+				for (int i = 0; i < nbOfColumns; i++) {
+					StoredMetric metric = new StoredMetric();
+					metric.setName(readString(in));
+					metric.setAlgorithm(algorithm);
+					metric.file = file;
+					metric.encoding = in.readByte();
+					metric.size = in.readInt();
+					metric.mean = in.readDouble();
+					metric.payloadSize = in.readInt();
+					metric.payloadStart = in.getFilePointer();
+					//skip the values
+					in.seek(metric.payloadStart + metric.payloadSize);
+					metrics.add(metric);
+				}
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Checks if a value is +0.0 (-0.0 is stored as a non-zero value to keep the values bit-exact)
+	 * @param value -
+	 * @return -
+	 */
+	private static boolean isZero(double value) {
+		return Double.doubleToRawLongBits(value) == 0;
+	}
+
+	/**
+	 * The number of bytes of a varint
+	 * @param value a non-negative value
+	 * @return -
+	 */
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Writes a non-negative int with 7 bits per byte (the highest bit marks that more bytes follow)
+	 * @param out -
+	 * @param value -
+	 * @throws IOException -
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads a varint written by {@link #writeVarInt(DataOutputStream, int)}
+	 * @param in -
+	 * @return -
+	 */
+	private static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Writes a string as its length and its UTF-8 bytes
+	 * @param out -
+	 * @param s -
+	 * @throws IOException -
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}
+	 * @param in -
+	 * @return -
+	 * @throws IOException -
+	 */
+	private static String readString(RandomAccessFile in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A metric whose detailed results are a column of a stat result file.
+	 * It can only be used for the statistical tests, not for evaluation.
+	 * @author MJ
+	 *
+	 */
+	private static class StoredMetric extends HypothesisTestableMetric {
+		private static final long serialVersionUID = 6250914388273601585L;
+		//the position of the column in the file
+		private File file;
+		private long payloadStart;
+		private int payloadSize;
+		//the column header
+		private byte encoding;
+		private int size;
+		private double mean;
+
+		@Override
+		public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+			throw new UnsupportedOperationException("Stored results cannot be used for evaluation.");
+		}
+
+		@Override
+		public double getResults() {
+			return mean;
+		}
+
+		@Override
+		public DoubleArrayList getDetailedResults() {
+			double[] values = new double[size];
+			try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+				ByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY, payloadStart, payloadSize);
+				if (encoding == RAW) {
+					payload.asDoubleBuffer().get(values);
+				} else {
+					//the array is already filled with zeros
+					int i = 0;
+					while (payload.hasRemaining()) {
+						i += readVarInt(payload);
+						values[i++] = payload.getDouble();
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read the stat results of " + getAlgorithm() + " from " + file, e);
+			}
+			return DoubleArrayList.wrap(values);
+		}
+	}
+}
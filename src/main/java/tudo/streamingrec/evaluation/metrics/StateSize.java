@@ -0,0 +1,97 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.AlgorithmWrapper;
+import tudo.streamingrec.data.Transaction;
+import tudo.streamingrec.util.HeapSize;
+
+/**
+ * A special metric that stores the size of an algorithm's state (the estimated heap size
+ * of its model, see {@link HeapSize}) in megabytes. The size is sampled at evenly spaced events of the test phase
+ * (the last sample is taken at the end). The measurements do not count towards the runtimes.
+ * Values are filled directly by the {@link AlgorithmWrapper} object.
+ * @author MJ
+ *
+ */
+public class StateSize extends Metric {
+	private static final long serialVersionUID = -8079035468745390612L;
+	private double stateSize;
+	private Type type = Type.Final;
+	//the number of samples in the test phase
+	private int samples = 10;
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		//do nothing here.
+		//the state size is not based on the recommendation list
+		//but on the measurements of the AlgorithmWrapper class
+	}
+
+	/**
+	 * Sets the state size of this algorithm.
+	 * Done by the {@link AlgorithmWrapper} object.
+	 * @param bytes the size in bytes
+	 */
+	public void setStateSize(double bytes) {
+		this.stateSize = bytes / 1024 / 1024;
+	}
+
+	@Override
+	public double getResults() {
+		return stateSize;
+	}
+
+	@Override
+	public boolean isBasedOnRecommendations() {
+		return false;
+	}
+
+	/**
+	 * Which of the samples is reported
+	 * @return -
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Which of the samples is reported. Set via JSON config.
+	 * @param type -
+	 */
+	public void setType(Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * The number of samples in the test phase
+	 * @return -
+	 */
+	public int getSamples() {
+		return samples;
+	}
+
+	/**
+	 * The number of samples in the test phase. Set via JSON config.
+	 * More samples show the growth of the state more precisely
+	 * but take longer for large models (the whole model is visited).
+	 * @param samples -
+	 */
+	public void setSamples(int samples) {
+		this.samples = samples;
+	}
+
+	/**
+	 * Which of the samples is reported
+	 * <ul>
+	 * <li>Final: the size at the end of the test phase</li>
+	 * <li>Mean: the average of all samples</li>
+	 * <li>Max: the largest sample</li>
+	 * </ul>
+	 * @author MJ
+	 *
+	 */
+	public static enum Type {
+		Final, Mean, Max
+	}
+}
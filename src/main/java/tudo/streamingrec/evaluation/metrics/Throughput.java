@@ -0,0 +1,45 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.AlgorithmWrapper;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * A special metric that stores the sustained throughput of an algorithm in the test phase,
+ * i.e., how many events per second a single thread could process with the algorithm
+ * (the number of events divided by the total time of all recommend and train calls).
+ * Values are filled directly by the {@link AlgorithmWrapper} object.
+ * @author MJ
+ *
+ */
+public class Throughput extends Metric {
+	private static final long serialVersionUID = 5364405207611839178L;
+	private double throughput;
+
+	@Override
+	public void evaluate(Transaction transaction, LongArrayList recommendations, LongSet userTransactions) {
+		//do nothing here.
+		//the throughput is not based on the recommendation list
+		//but on the latencies measured by the AlgorithmWrapper class
+	}
+
+	/**
+	 * Sets the throughput of this algorithm.
+	 * Done by the {@link AlgorithmWrapper} object.
+	 * @param throughput the events per second
+	 */
+	public void setThroughput(double throughput) {
+		this.throughput = throughput;
+	}
+
+	@Override
+	public double getResults() {
+		return throughput;
+	}
+
+	@Override
+	public boolean isBasedOnRecommendations() {
+		return false;
+	}
+}
@@ -0,0 +1,190 @@
+package tudo.streamingrec.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+/**
+ * Estimates the heap memory that is reachable from an object (e.g., an algorithm's model)
+ * by walking its object graph. Each object is counted once with its shallow size, assuming
+ * a 64-bit JVM with compressed references (12 bytes per object header, 16 bytes per array header,
+ * 4 bytes per reference, 8 byte alignment).
+ * <p>
+ * Unlike serializing the object, the objects are only visited
+ * (primitive arrays are not even read), so the estimate is cheap and also works for objects
+ * that are not serializable. The fields of JDK classes cannot be read via reflection on newer JVMs.
+ * Therefore, strings are estimated from their length, and the elements of JDK collections
+ * and maps are reached via their public interface (with a fixed overhead per element).
+ *
+ * @author MJ
+ *
+ */
+public class HeapSize {
+	//the sizes of the headers and references (compressed references)
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	//the assumed overhead per element of JDK collections (array slot) and maps (entry object + bucket)
+	private static final int COLLECTION_ELEMENT = REFERENCE;
+	private static final int MAP_ENTRY = 32 + REFERENCE;
+
+	//the layout of each visited class (guarded by itself)
+	private static final Map<Class<?>, Layout> LAYOUTS = new Reference2ObjectOpenHashMap<>();
+
+	/**
+	 * Estimates the heap memory that is reachable from an object
+	 * @param root -
+	 * @return the estimated size in bytes
+	 */
+	public static long estimate(Object root) {
+		ReferenceOpenHashSet<Object> visited = new ReferenceOpenHashSet<>();
+		ObjectArrayList<Object> stack = new ObjectArrayList<>();
+		stack.push(root);
+		long size = 0;
+		while (!stack.isEmpty()) {
+			Object object = stack.pop();
+			if (object == null || !visited.add(object)) {
+				continue;
+			}
+			Class<?> type = object.getClass();
+			if (type.isArray()) {
+				Class<?> componentType = type.getComponentType();
+				int length = Array.getLength(object);
+				size += align(ARRAY_HEADER + (long) length * getSize(componentType));
+				if (!componentType.isPrimitive()) {
+					for (Object element : (Object[]) object) {
+						stack.push(element);
+					}
+				}
+				continue;
+			}
+			if (object instanceof String) {
+				//the string and its value array (one byte per character for compact strings)
+				size += align(OBJECT_HEADER + REFERENCE + 8) + align(ARRAY_HEADER + ((String) object).length());
+				continue;
+			}
+			if (object instanceof Class || object instanceof ClassLoader || object instanceof Thread) {
+				//shared by the whole JVM
+				continue;
+			}
+			Layout layout = getLayout(type);
+			size += layout.size;
+			if (!layout.accessible) {
+				//the contents of JDK classes are only reachable via their public interface
+				if (object instanceof Collection) {
+					for (Object element : (Collection<?>) object) {
+						size += COLLECTION_ELEMENT;
+						stack.push(element);
+					}
+				} else if (object instanceof Map) {
+					for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+						size += MAP_ENTRY;
+						stack.push(entry.getKey());
+						stack.push(entry.getValue());
+					}
+				}
+				continue;
+			}
+			for (Field field : layout.references) {
+				try {
+					stack.push(field.get(object));
+				} catch (IllegalAccessException e) {
+					//cannot happen (the field was made accessible)
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the layout of a class (the size of its instances and their reference fields)
+	 * @param type -
+	 * @return -
+	 */
+	private static Layout getLayout(Class<?> type) {
+		synchronized (LAYOUTS) {
+			Layout layout = LAYOUTS.get(type);
+			if (layout == null) {
+				layout = new Layout(type);
+				LAYOUTS.put(type, layout);
+			}
+			return layout;
+		}
+	}
+
+	/**
+	 * The size of a field or an array element of a type
+	 * @param type -
+	 * @return the size in bytes
+	 */
+	private static int getSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == short.class || type == char.class) {
+			return 2;
+		} else if (type == byte.class || type == boolean.class) {
+			return 1;
+		}
+		return REFERENCE;
+	}
+
+	/**
+	 * Rounds a size up to the object alignment
+	 * @param size -
+	 * @return -
+	 */
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	/**
+	 * The instance size and the reference fields of a class
+	 * @author MJ
+	 *
+	 */
+	private static class Layout {
+		//the shallow size of an instance
+		private final long size;
+		//the non-static fields that contain references (including the ones of the super classes)
+		private final List<Field> references = new ObjectArrayList<>();
+		//can the fields be read? (false for JDK classes on newer JVMs)
+		private boolean accessible = true;
+
+		/**
+		 * Determines the layout of a class
+		 * @param type -
+		 */
+		private Layout(Class<?> type) {
+			long fieldSize = 0;
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					fieldSize += getSize(field.getType());
+					if (field.getType().isPrimitive()) {
+						continue;
+					}
+					try {
+						field.setAccessible(true);
+						references.add(field);
+					} catch (RuntimeException e) {
+						//e.g., InaccessibleObjectException for JDK internals
+						accessible = false;
+					}
+				}
+			}
+			size = align(OBJECT_HEADER + fieldSize);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package tudo.streamingrec.util;
+
+import java.io.Serializable;
+
+/**
+ * A compact histogram of latencies (in nanoseconds) with logarithmic buckets.
+ * Each power of two is divided into 32 linear sub-buckets, so that every percentile
+ * is reported with a relative error of at most 1/32 (about 3%), independent of the
+ * number of recorded values. Values below 64 ns are counted exactly.
+ * The histogram needs about 15 KB, no matter how many values are recorded.
+ *
+ * @author MJ
+ *
+ */
+public class LatencyHistogram implements Serializable {
+	private static final long serialVersionUID = -6470712452866302118L;
+	//the number of sub-buckets per power of two (as a power of two)
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	//enough buckets for all non-negative long values
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	//the number of values per bucket
+	private final long[] counts = new long[BUCKETS];
+	//the number of values, their sum, and the largest value
+	private long count = 0;
+	private long total = 0;
+	private long max = 0;
+
+	/**
+	 * Records one latency (safe for concurrent calls)
+	 * @param nanos the latency in ns
+	 */
+	public synchronized void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts[getBucket(nanos)]++;
+		count++;
+		total += nanos;
+		max = Math.max(max, nanos);
+	}
+
+	/**
+	 * The number of recorded values
+	 * @return -
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * The sum of all recorded values
+	 * @return the total latency in ns
+	 */
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	/**
+	 * The largest recorded value
+	 * @return the latency in ns (0 if nothing was recorded)
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns a percentile of the recorded values (nearest rank). The value is the upper bound
+	 * of the bucket that contains the percentile (but never larger than the maximum).
+	 * @param percentile between 0 and 100 (100 = the maximum)
+	 * @return the latency in ns (0 if nothing was recorded)
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		if (percentile >= 100) {
+			return max;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return Math.min(max, getUpperBound(bucket));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * The bucket of a value
+	 * @param value a non-negative value
+	 * @return the index of the bucket
+	 */
+	private static int getBucket(long value) {
+		//the position of the highest bit
+		int exponent = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKETS);
+		int shift = exponent - SUB_BUCKET_BITS;
+		//the first power of two covers [0, 2*SUB_BUCKETS) linearly
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * The largest value that falls into a bucket
+	 * @param bucket -
+	 * @return -
+	 */
+	private static long getUpperBound(int bucket) {
+		int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+		long lowerBound = (long) (bucket - shift * SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+}
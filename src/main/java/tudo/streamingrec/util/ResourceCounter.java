@@ -0,0 +1,128 @@
+package tudo.streamingrec.util;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Sums up the heap allocations, the CPU time, and the wall-clock time of a series of calls
+ * (e.g., of an algorithm's recommend method). The allocations and the CPU time are read from
+ * the {@link ThreadMXBean} of the thread that executes a call, so that they are not distorted
+ * by other threads (unlike the wall-clock time, which also contains the time in which the
+ * thread waited for a CPU core).
+ *
+ * @author MJ
+ *
+ */
+public class ResourceCounter implements Serializable {
+	private static final long serialVersionUID = 2871062035531404416L;
+	//the thread management interface of the JVM
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	//the HotSpot extension that reports the allocations of threads (null if not available)
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = getAllocationBean();
+
+	//the number of calls
+	private long calls = 0;
+	//the sums over all calls
+	private long allocatedBytes = 0;
+	private long cpuNanos = 0;
+	private long wallNanos = 0;
+
+	/**
+	 * Returns the HotSpot thread management interface, if the JVM supports allocation counting
+	 * @return the interface (or null)
+	 */
+	private static com.sun.management.ThreadMXBean getAllocationBean() {
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		bean.setThreadAllocatedMemoryEnabled(true);
+		return bean;
+	}
+
+	/**
+	 * Can the CPU time of threads be measured in this JVM?
+	 * @return -
+	 */
+	public static boolean isCpuTimeSupported() {
+		return THREADS.isCurrentThreadCpuTimeSupported();
+	}
+
+	/**
+	 * Can the allocations of threads be measured in this JVM?
+	 * @return -
+	 */
+	public static boolean isAllocationSupported() {
+		return ALLOCATIONS != null;
+	}
+
+	/**
+	 * The CPU time that the current thread used so far
+	 * @return the CPU time in ns (0 if not supported)
+	 */
+	public static long getCurrentThreadCpuTime() {
+		return isCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * The number of bytes that the current thread allocated on the heap so far
+	 * @return the bytes (0 if not supported)
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		return ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	/**
+	 * Adds a call (safe for concurrent calls)
+	 * @param allocatedBytes the bytes allocated by the call
+	 * @param cpuNanos the CPU time of the call in ns
+	 * @param wallNanos the wall-clock time of the call in ns
+	 */
+	public synchronized void add(long allocatedBytes, long cpuNanos, long wallNanos) {
+		calls++;
+		this.allocatedBytes += allocatedBytes;
+		this.cpuNanos += cpuNanos;
+		this.wallNanos += wallNanos;
+	}
+
+	/**
+	 * Adds the sums of another counter
+	 * @param other -
+	 */
+	public synchronized void add(ResourceCounter other) {
+		synchronized (other) {
+			calls += other.calls;
+			allocatedBytes += other.allocatedBytes;
+			cpuNanos += other.cpuNanos;
+			wallNanos += other.wallNanos;
+		}
+	}
+
+	/**
+	 * The average number of bytes allocated per call
+	 * @return the bytes (NaN if there were no calls or allocations cannot be measured)
+	 */
+	public synchronized double getAllocatedBytesPerCall() {
+		return calls == 0 || !isAllocationSupported() ? Double.NaN : allocatedBytes * 1d / calls;
+	}
+
+	/**
+	 * The total CPU time of all calls
+	 * @return the CPU time in ns (NaN if it cannot be measured)
+	 */
+	public synchronized double getCpuNanos() {
+		return isCpuTimeSupported() ? cpuNanos : Double.NaN;
+	}
+
+	/**
+	 * The total wall-clock time of all calls
+	 * @return the time in ns
+	 */
+	public synchronized long getWallNanos() {
+		return wallNanos;
+	}
+}
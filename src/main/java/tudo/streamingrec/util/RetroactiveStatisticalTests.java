@@ -15,6 +15,7 @@ import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import tudo.streamingrec.AlgorithmWrapper;
 import tudo.streamingrec.evaluation.metrics.HypothesisTestableMetric;
+import tudo.streamingrec.evaluation.metrics.StatResultsFile;
 
 /**
  * Retroactively, i.e., after the actual execution of the program, run statistical test on the results
@@ -52,13 +53,27 @@ public class RetroactiveStatisticalTests {
 		}else{
 			System.out.println("Help for commandline arguments with -h");
 		}
-		//create a list of metrics
-		List<HypothesisTestableMetric> metrics = new ArrayList<>();
-		//list all stat result files in the folder
 		if(!new File(folder).exists()){
 			System.err.println("Folder \""+ folder +"\" does not exist.");
 			return;
 		}
+		List<HypothesisTestableMetric> metrics = readDetailedResults(folder);
+		System.out.println("Starting tests");
+		//execute the statistical t-test and print to console
+		System.out.println(Util.executeStatisticalTests(metrics, smirnov));
+	}
+
+	/**
+	 * Deserializes the detailed metric results of all stat result files in a folder
+	 * @param folder -
+	 * @return the metrics with their detailed results
+	 * @throws IOException -
+	 * @throws ClassNotFoundException -
+	 */
+	public static List<HypothesisTestableMetric> readDetailedResults(String folder) throws IOException, ClassNotFoundException {
+		//create a list of metrics
+		List<HypothesisTestableMetric> metrics = new ArrayList<>();
+		//list all stat result files in the folder
 		File[] listFiles = new File(folder).listFiles(new FilenameFilter() {			
 			@Override
 			public boolean accept(File dir, String name) {
@@ -68,6 +83,13 @@ public class RetroactiveStatisticalTests {
 			
 		//iterate over each file and deserialize the detailed metric results
 		for(File file : listFiles){
+			if (StatResultsFile.isStatResultsFile(file)) {
+				//only the column headers are read here, the values are mapped when they are needed
+				metrics.addAll(StatResultsFile.read(file));
+				continue;
+			}
+			//files of older versions contain serialized metric objects
+			//(their detailed results are migrated when they are deserialized, see HypothesisTestableMetric)
 			try(FileInputStream fi = new FileInputStream(file);
 					ObjectInputStream oi = new ObjectInputStream(fi)){
 				// Read objects
@@ -77,8 +99,6 @@ public class RetroactiveStatisticalTests {
 				}
 			}
 		}
-		System.out.println("Starting tests");
-		//execute the statistical t-test and print to console
-		System.out.println(Util.executeStatisticalTests(metrics, smirnov));
+		return metrics;
 	}
 }
@@ -0,0 +1,270 @@
+package tudo.streamingrec.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMaps;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * Selects the k highest scored ids without sorting all of them and without boxing.
+ * A bounded min-heap of size k keeps the best candidates seen so far, which needs
+ * O(n log k) time instead of O(n log n) for a full sort.
+ * Candidates with the same score are returned in the order in which they were offered
+ * (for maps: their iteration order), i.e., the result is exactly the prefix of a stable
+ * descending sort (see {@link Util#sortByValueAndGetKeys(java.util.Map, boolean, java.util.List)}).
+ * <p>
+ * The scores and the heap are kept in primitive arrays that are reused per thread, so that
+ * a selection only allocates the output (which can be reused by the caller as well).
+ *
+ * @author MJ
+ *
+ */
+public class TopK {
+	//reusable buffers for the candidates (one set per thread, since algorithms recommend concurrently)
+	private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+	/**
+	 * Selects the keys of the k entries with the highest values (in descending order of their values)
+	 * @param map -
+	 * @param k the maximum number of keys to select
+	 * @param output the list to which the selected keys are added
+	 * @return the output list
+	 */
+	public static LongArrayList selectKeys(Long2IntMap map, int k, LongArrayList output) {
+		Buffers buffers = BUFFERS.get().ensureCapacity(map.size());
+		int size = 0;
+		for (ObjectIterator<Long2IntMap.Entry> iterator = Long2IntMaps.fastIterator(map); iterator.hasNext();) {
+			Long2IntMap.Entry entry = iterator.next();
+			buffers.keys[size] = entry.getLongKey();
+			buffers.scores[size++] = entry.getIntValue();
+		}
+		return selectKeys(buffers.keys, buffers.scores, size, k, output);
+	}
+
+	/**
+	 * Selects the keys of the k entries with the highest values (in descending order of their values)
+	 * @param map -
+	 * @param k the maximum number of keys to select
+	 * @param output the list to which the selected keys are added
+	 * @return the output list
+	 */
+	public static LongArrayList selectKeys(Long2DoubleMap map, int k, LongArrayList output) {
+		Buffers buffers = BUFFERS.get().ensureCapacity(map.size());
+		int size = 0;
+		for (ObjectIterator<Long2DoubleMap.Entry> iterator = Long2DoubleMaps.fastIterator(map); iterator.hasNext();) {
+			Long2DoubleMap.Entry entry = iterator.next();
+			buffers.keys[size] = entry.getLongKey();
+			buffers.scores[size++] = entry.getDoubleValue();
+		}
+		return selectKeys(buffers.keys, buffers.scores, size, k, output);
+	}
+
+	/**
+	 * Selects the keys of the k entries with the highest values (in descending order of their values).
+	 * For boxed maps (e.g., the results of stream collectors) whose iteration order should be kept for ties.
+	 * @param map -
+	 * @param k the maximum number of keys to select
+	 * @param output the list to which the selected keys are added
+	 * @return the output list
+	 */
+	public static LongArrayList selectKeys(Map<Long, Double> map, int k, LongArrayList output) {
+		Buffers buffers = BUFFERS.get().ensureCapacity(map.size());
+		int size = 0;
+		for (Map.Entry<Long, Double> entry : map.entrySet()) {
+			buffers.keys[size] = entry.getKey();
+			buffers.scores[size++] = entry.getValue();
+		}
+		return selectKeys(buffers.keys, buffers.scores, size, k, output);
+	}
+
+	/**
+	 * Selects the keys of the k entries with the highest values (in descending order of their values)
+	 * @param <K> -
+	 * @param map -
+	 * @param k the maximum number of keys to select
+	 * @param output the list to which the selected keys are added
+	 * @return the output list
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K> List<K> selectKeys(Object2DoubleMap<K> map, int k, List<K> output) {
+		Buffers buffers = BUFFERS.get().ensureObjectCapacity(map.size());
+		int size = 0;
+		for (ObjectIterator<Object2DoubleMap.Entry<K>> iterator = Object2DoubleMaps.fastIterator(map); iterator.hasNext();) {
+			Object2DoubleMap.Entry<K> entry = iterator.next();
+			buffers.objects[size] = entry.getKey();
+			buffers.scores[size++] = entry.getDoubleValue();
+		}
+		int length = selectPositions(buffers.scores, size, k, buffers);
+		for (int i = 0; i < length; i++) {
+			output.add((K) buffers.objects[buffers.heap[i]]);
+		}
+		//do not keep references to the keys
+		Arrays.fill(buffers.objects, 0, size, null);
+		return output;
+	}
+
+	/**
+	 * Selects the k ids with the highest scores (in descending order of their scores)
+	 * @param keys the candidate ids
+	 * @param scores the scores of the candidates (at the same positions as their ids)
+	 * @param size the number of candidates
+	 * @param k the maximum number of ids to select
+	 * @param output the list to which the selected ids are added
+	 * @return the output list
+	 */
+	public static LongArrayList selectKeys(long[] keys, double[] scores, int size, int k, LongArrayList output) {
+		Buffers buffers = BUFFERS.get();
+		int length = selectPositions(scores, size, k, buffers);
+		int offset = output.size();
+		output.size(offset + length);
+		long[] elements = output.elements();
+		for (int i = 0; i < length; i++) {
+			elements[offset + i] = keys[buffers.heap[i]];
+		}
+		return output;
+	}
+
+	/**
+	 * Selects the positions of the k best scores. Afterwards, the first entries of
+	 * the heap buffer contain the selected positions in descending order of their scores.
+	 * @param scores -
+	 * @param size the number of candidates
+	 * @param k -
+	 * @param buffers -
+	 * @return the number of selected positions
+	 */
+	private static int selectPositions(double[] scores, int size, int k, Buffers buffers) {
+		int length = Math.max(0, Math.min(k, size));
+		if (buffers.heap.length < length) {
+			buffers.heap = new int[length];
+		}
+		int[] heap = buffers.heap;
+		int heapSize = 0;
+		for (int i = 0; i < size && length > 0; i++) {
+			if (heapSize < length) {
+				//the heap is not full yet -> insert and sift up
+				int child = heapSize++;
+				heap[child] = i;
+				while (child > 0) {
+					int parent = (child - 1) >>> 1;
+					if (!isWorse(heap[child], heap[parent], scores)) {
+						break;
+					}
+					swap(heap, child, parent);
+					child = parent;
+				}
+			} else if (isWorse(heap[0], i, scores)) {
+				//better than the worst selected candidate -> replace it
+				heap[0] = i;
+				siftDown(heap, heapSize, 0, scores);
+			}
+		}
+		//heap sort in place: the root is always the worst remaining candidate -> move it to the back
+		for (; heapSize > 1; heapSize--) {
+			swap(heap, 0, heapSize - 1);
+			siftDown(heap, heapSize - 1, 0, scores);
+		}
+		return length;
+	}
+
+	/**
+	 * Restores the heap property below a position
+	 * @param heap -
+	 * @param heapSize -
+	 * @param position -
+	 * @param scores -
+	 */
+	private static void siftDown(int[] heap, int heapSize, int position, double[] scores) {
+		while (true) {
+			int worst = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if (left < heapSize && isWorse(heap[left], heap[worst], scores)) {
+				worst = left;
+			}
+			if (right < heapSize && isWorse(heap[right], heap[worst], scores)) {
+				worst = right;
+			}
+			if (worst == position) {
+				return;
+			}
+			swap(heap, position, worst);
+			position = worst;
+		}
+	}
+
+	/**
+	 * Is the candidate at position a ranked lower than the one at position b?
+	 * Lower scores are worse. Ties are broken by position (later is worse).
+	 * @param a -
+	 * @param b -
+	 * @param scores -
+	 * @return true if a is worse than b
+	 */
+	private static boolean isWorse(int a, int b, double[] scores) {
+		int comparison = Double.compare(scores[a], scores[b]);
+		return comparison < 0 || (comparison == 0 && a > b);
+	}
+
+	/**
+	 * Swaps two heap entries
+	 * @param heap -
+	 * @param a -
+	 * @param b -
+	 */
+	private static void swap(int[] heap, int a, int b) {
+		int tmp = heap[a];
+		heap[a] = heap[b];
+		heap[b] = tmp;
+	}
+
+	/**
+	 * The reusable buffers of one thread
+	 * @author MJ
+	 *
+	 */
+	private static class Buffers {
+		//the candidates and their scores (the object candidates are only allocated for object keys)
+		private long[] keys = new long[0];
+		private Object[] objects = new Object[0];
+		private double[] scores = new double[0];
+		//the heap of candidate positions
+		private int[] heap = new int[0];
+
+		/**
+		 * Grows the candidate buffers if necessary
+		 * @param size the number of candidates
+		 * @return this
+		 */
+		private Buffers ensureCapacity(int size) {
+			if (scores.length < size) {
+				//grow with some headroom, since the candidate sets usually grow over time
+				int capacity = Math.max(size, scores.length + (scores.length >> 1));
+				keys = new long[capacity];
+				scores = new double[capacity];
+			}
+			return this;
+		}
+
+		/**
+		 * Grows the candidate buffers including the object candidates if necessary
+		 * @param size the number of candidates
+		 * @return this
+		 */
+		private Buffers ensureObjectCapacity(int size) {
+			ensureCapacity(size);
+			if (objects.length < size) {
+				objects = new Object[scores.length];
+			}
+			return this;
+		}
+	}
+}
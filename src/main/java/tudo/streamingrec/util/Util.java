@@ -14,14 +14,15 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.ToDoubleBiFunction;
 import java.util.stream.Collectors;
 import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.math3.exception.DimensionMismatchException;
 
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import tudo.streamingrec.StreamingRec;
 import tudo.streamingrec.data.Event;
@@ -30,6 +31,7 @@ import tudo.streamingrec.data.Transaction;
 import tudo.streamingrec.data.splitting.DataSplitter;
 import tudo.streamingrec.evaluation.metrics.HypothesisTestableMetric;
 import tudo.streamingrec.evaluation.metrics.Metric;
+import tudo.streamingrec.evaluation.metrics.OnlinePairedTTest;
 
 /**
  * A class for utility methods related to data loading and other stuff
@@ -47,27 +49,60 @@ public class Util {
 	 * @return a csv table of pairwise statistical test results in the form of p-values
 	 */
 	public static String executeStatisticalTests(List<HypothesisTestableMetric> metrics, boolean smirnov) {
+		//extract the algorithm names from all metric objects
+		List<String> algos = metrics.stream().map(Metric::getAlgorithm).distinct().collect(Collectors.toList());
+		//map each metric name to a list of metric results objects
+		Map<String, List<HypothesisTestableMetric>> metricsByType = metrics.stream()
+				.collect(Collectors.groupingBy(HypothesisTestableMetric::getName));
+		return formatStatisticalTests(algos, metricsByType.keySet(), metricName -> {
+			//read the detailed results of this metric only once per algorithm
+			//(they might have been spilled to disk, see DetailedResults)
+			Map<String, double[]> resultsByAlgo = new Object2ObjectOpenHashMap<>();
+			for (HypothesisTestableMetric metric : metricsByType.get(metricName)) {
+				resultsByAlgo.put(metric.getAlgorithm(), metric.getDetailedResults().toDoubleArray());
+			}
+			if (!smirnov) {
+				return (a1, a2) -> HypothesisTestableMetric.getTTestPValue(resultsByAlgo.get(a1), resultsByAlgo.get(a2));
+			} else {
+				return (a1, a2) -> HypothesisTestableMetric.getSmirnoffPValue(resultsByAlgo.get(a1), resultsByAlgo.get(a2));
+			}
+		});
+	}
+
+	/**
+	 * Converts the results of online paired t-tests into a set of csv tables (one CSV table per metric)
+	 * in the same format as {@link #executeStatisticalTests(List, boolean)}.
+	 * @param tests the online tests of each metric
+	 * @param algos the names of the algorithms
+	 * @return a csv table of pairwise statistical test results in the form of p-values
+	 */
+	public static String executeStatisticalTests(Map<String, OnlinePairedTTest> tests, List<String> algos) {
+		return formatStatisticalTests(algos, tests.keySet(), metricName -> tests.get(metricName)::getPValue);
+	}
+
+	/**
+	 * Creates one csv table of pairwise p-values per metric
+	 * @param algos the names of the algorithms
+	 * @param metricNames the names of the metrics
+	 * @param tests creates the test (which returns the p-value of two algorithms) for a metric name
+	 * @return the csv tables
+	 */
+	private static String formatStatisticalTests(List<String> algos, Collection<String> metricNames,
+			Function<String, ToDoubleBiFunction<String, String>> tests) {
 		//intialize the output format
 		DecimalFormat df = new DecimalFormat("0.0000000");
 		df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-		//extract the algorithm names from all metric objects
-		List<String> algos = metrics.stream().map(Metric::getAlgorithm).distinct().collect(Collectors.toList());
 		//initialize the output string builder
 		StringBuilder sb = new StringBuilder();
 		//some output string constants
 		final String SEP = ";";
 		final String LSEP = "\r\n";
-		//map each metric name to a list of metric results objects
-		Map<String, List<HypothesisTestableMetric>> metricsByType = metrics.stream()
-				.collect(Collectors.groupingBy(HypothesisTestableMetric::getName));
 		//iterate over all metrics
-		for (Entry<String, List<HypothesisTestableMetric>> entry : metricsByType.entrySet()) {
+		for (String metricName : metricNames) {
 			//header output
-			sb.append(entry.getKey());
+			sb.append(metricName);
 			sb.append(LSEP);
-			//get a list of results for the metric per algorithm
-			Map<String, HypothesisTestableMetric> metricsByAlgo = entry.getValue().stream()
-					.collect(Collectors.toMap(HypothesisTestableMetric::getAlgorithm, Function.identity()));
+			ToDoubleBiFunction<String, String> test = tests.apply(metricName);
 			sb.append(SEP);// one line free
 			//print a row of algorithms
 			for (String a : algos) {
@@ -82,20 +117,16 @@ public class Util {
 				for (String a2 : algos) {
 					if(!a1.equals(a2)){
 						try {
-							//calculate the actual t-statistic
-							if(!smirnov){
-								sb.append(df.format(metricsByAlgo.get(a1).getTTestPValue(metricsByAlgo.get(a2))));
-							}else{
-								sb.append(df.format(metricsByAlgo.get(a1).getSmirnoffPValue(metricsByAlgo.get(a2))));
-							}
+							//calculate the actual test statistic
+							sb.append(df.format(test.applyAsDouble(a1, a2)));
 						} catch (DimensionMismatchException ex) {
 							//this should not happen. it's paired t-test, 
 							//so every algorithms' result list needs to have the same length
 							ex.printStackTrace();
-							System.err.println(metricsByAlgo.get(a1).getAlgorithm());
-							System.err.println(metricsByAlgo.get(a1).getName());
-							System.err.println(metricsByAlgo.get(a2).getAlgorithm());
-							System.err.println(metricsByAlgo.get(a2).getName());
+							System.err.println(a1);
+							System.err.println(metricName);
+							System.err.println(a2);
+							System.err.println(metricName);
 						}
 					}
 					sb.append(SEP);
@@ -278,8 +309,8 @@ public class Util {
 		}
 		try {
 			new File(folder +"/"+StreamingRec.startTime).mkdirs();
-			FileOutputStream fos = new FileOutputStream(folder +"/"+StreamingRec.startTime + "/" + fileNamePrefixStdOut + StreamingRec.startTime + fileNamePostfix);
-			FileOutputStream fosErr = new FileOutputStream(folder +"/"+StreamingRec.startTime + "/" + fileNamePrefixStdErr + StreamingRec.startTime + fileNamePostfix);
+			FileOutputStream fos = new FileOutputStream(folder +"/"+StreamingRec.startTime + "/" + fileNamePrefixStdOut + StreamingRec.startTime + fileNamePostfix, true);
+			FileOutputStream fosErr = new FileOutputStream(folder +"/"+StreamingRec.startTime + "/" + fileNamePrefixStdErr + StreamingRec.startTime + fileNamePostfix, true);
 			// we will want to print in standard "System.out" and in "file"
 			TeeOutputStream myOut = new TeeOutputStream(System.out, fos);
 			PrintStream ps = new PrintStream(myOut);
@@ -0,0 +1,170 @@
+package tudo.streamingrec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackage;
+import tudo.streamingrec.AlgorithmWrapper.WorkPackageArticle;
+import tudo.streamingrec.data.Item;
+
+/**
+ * Checks that every consumer of a {@link WorkPackageRingBuffer} sees every work package
+ * in order and that the producer does not overwrite slots that are still needed
+ * (also while a consumer holds on to a window of work packages).
+ * @author MJ
+ *
+ */
+public class WorkPackageRingBufferTest {
+	private static final int CAPACITY = 8;
+	private static final int NB_OF_WORK_PACKAGES = 5000;
+
+	@Test(timeout = 30000)
+	public void everyConsumerSeesEveryWorkPackageInOrder() throws Throwable {
+		List<WorkPackage> workPackages = createWorkPackages();
+		WorkPackageRingBuffer ringBuffer = new WorkPackageRingBuffer(CAPACITY, 3, NB_OF_WORK_PACKAGES);
+		assertEquals(NB_OF_WORK_PACKAGES, ringBuffer.size());
+		//consumers with different speeds (a slot that is overwritten too early would be seen by the slowest)
+		Consumer[] consumers = new Consumer[3];
+		for (int i = 0; i < consumers.length; i++) {
+			consumers[i] = new Consumer(ringBuffer, i, NB_OF_WORK_PACKAGES, i * 100);
+			consumers[i].start();
+		}
+		for (WorkPackage workPackage : workPackages) {
+			ringBuffer.publish(workPackage);
+		}
+		for (Consumer consumer : consumers) {
+			consumer.join();
+			if (consumer.error != null) {
+				throw consumer.error;
+			}
+			assertEquals(workPackages.size(), consumer.seen.size());
+			for (int i = 0; i < workPackages.size(); i++) {
+				assertSame(workPackages.get(i), consumer.seen.get(i));
+			}
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void detachedConsumersDoNotBlockTheProducer() throws Throwable {
+		List<WorkPackage> workPackages = createWorkPackages();
+		WorkPackageRingBuffer ringBuffer = new WorkPackageRingBuffer(CAPACITY, 2, NB_OF_WORK_PACKAGES);
+		//the first consumer stops early (e.g., it crashed), the second one reads everything
+		Consumer stopped = new Consumer(ringBuffer, 0, 100, 0);
+		Consumer consumer = new Consumer(ringBuffer, 1, NB_OF_WORK_PACKAGES, 0);
+		stopped.start();
+		consumer.start();
+		for (WorkPackage workPackage : workPackages) {
+			ringBuffer.publish(workPackage);
+		}
+		stopped.join();
+		consumer.join();
+		assertNull(stopped.error);
+		assertNull(consumer.error);
+		assertEquals(100, stopped.seen.size());
+		assertEquals(workPackages, consumer.seen);
+	}
+
+	@Test(timeout = 30000)
+	public void windowsKeepTheirSlotsOccupied() throws Throwable {
+		List<WorkPackage> workPackages = createWorkPackages();
+		WorkPackageRingBuffer ringBuffer = new WorkPackageRingBuffer(CAPACITY, 1, NB_OF_WORK_PACKAGES);
+		AtomicInteger published = new AtomicInteger();
+		Thread producer = new Thread(() -> {
+			try {
+				for (WorkPackage workPackage : workPackages) {
+					ringBuffer.publish(workPackage);
+					published.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		//take windows of the full capacity (like the replay of a frozen model)
+		for (int start = 0; start < NB_OF_WORK_PACKAGES; start += CAPACITY) {
+			for (int i = start; i < start + CAPACITY; i++) {
+				assertSame(workPackages.get(i), ringBuffer.take(0, i, start));
+			}
+			if (start % 1000 == 0) {
+				//give the producer time to overwrite the slots of the window (it must not)
+				Thread.sleep(5);
+			}
+			assertTrue(published.get() <= start + CAPACITY);
+		}
+		producer.join();
+		assertEquals(NB_OF_WORK_PACKAGES, published.get());
+	}
+
+	/**
+	 * Creates distinct work packages
+	 * @return -
+	 */
+	private static List<WorkPackage> createWorkPackages() {
+		List<WorkPackage> workPackages = new ObjectArrayList<>();
+		for (int i = 0; i < NB_OF_WORK_PACKAGES; i++) {
+			WorkPackageArticle workPackage = new WorkPackageArticle();
+			workPackage.articleEvent = new Item();
+			workPackage.articleEvent.id = i;
+			workPackages.add(workPackage);
+		}
+		return workPackages;
+	}
+
+	/**
+	 * Takes work packages from the ring buffer like an {@link AlgorithmWrapper}
+	 * @author MJ
+	 *
+	 */
+	private static class Consumer extends Thread {
+		private final WorkPackageRingBuffer ringBuffer;
+		private final int index;
+		//the number of work packages to take before detaching
+		private final int nbOfWorkPackages;
+		//the consumer pauses every this many work packages (0 = never)
+		private final int pauseInterval;
+		//the work packages in the order in which they were taken
+		private final List<WorkPackage> seen = new ObjectArrayList<>();
+		private Throwable error = null;
+
+		/**
+		 * Creates a consumer
+		 * @param ringBuffer -
+		 * @param index -
+		 * @param nbOfWorkPackages -
+		 * @param pauseInterval -
+		 */
+		private Consumer(WorkPackageRingBuffer ringBuffer, int index, int nbOfWorkPackages, int pauseInterval) {
+			this.ringBuffer = ringBuffer;
+			this.index = index;
+			this.nbOfWorkPackages = nbOfWorkPackages;
+			this.pauseInterval = pauseInterval;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < nbOfWorkPackages; i++) {
+					WorkPackage workPackage = ringBuffer.take(index, i);
+					//the producer must not have overwritten the slot yet
+					assertEquals(i, ((WorkPackageArticle) workPackage).articleEvent.id);
+					seen.add(workPackage);
+					if (pauseInterval > 0 && i % pauseInterval == 0) {
+						Thread.sleep(1);
+					}
+				}
+			} catch (Throwable e) {
+				error = e;
+			} finally {
+				ringBuffer.detach(index);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package tudo.streamingrec.data.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import tudo.streamingrec.data.Item;
+import tudo.streamingrec.data.Transaction;
+
+/**
+ * Checks the ground truth of every test click against the per-click computation that
+ * {@link GroundTruthExtractor} replaced: the items of the whole session minus the items
+ * of the session so far.
+ * @author MJ
+ *
+ */
+public class GroundTruthExtractorTest {
+	//the session threshold before the test
+	private long threshold;
+
+	@Before
+	public void setThreshold() {
+		threshold = SessionExtractor.getThresholdInMS();
+		SessionExtractor.setThresholdInMS(1000);
+	}
+
+	@After
+	public void resetThreshold() {
+		SessionExtractor.setThresholdInMS(threshold);
+	}
+
+	@Test
+	public void groundTruthIsTheRestOfTheSessionWithoutPreviousClicks() {
+		Random random = new Random(42);
+		SessionExtractor sessionExtractor = new SessionExtractor();
+		//the clicks in chronological order (few items -> many repeated clicks within a session)
+		List<Transaction> clicks = new ObjectArrayList<>();
+		long time = 0;
+		for (int i = 0; i < 5000; i++) {
+			//sometimes a gap that ends the sessions of all users
+			time += random.nextInt(100) == 0 ? 2000 : random.nextInt(50);
+			Transaction click = new Transaction();
+			click.userId = random.nextInt(5);
+			click.item = new Item();
+			click.item.id = random.nextInt(15);
+			click.timestamp = new Date(time);
+			clicks.add(click);
+			sessionExtractor.addClick(click);
+		}
+
+		//clicks of the training phase that belong to the first test session of each user
+		Map<Long, List<Transaction>> trainingClicks = new Long2ObjectOpenHashMap<>();
+		for (long user = 0; user < 5; user++) {
+			List<Transaction> training = new ObjectArrayList<>();
+			int size = random.nextInt(3);
+			for (int i = 0; i < size; i++) {
+				Transaction click = new Transaction();
+				click.userId = user;
+				click.item = new Item();
+				click.item.id = random.nextInt(15);
+				training.add(click);
+			}
+			trainingClicks.put(user, training);
+		}
+
+		GroundTruthExtractor extractor = new GroundTruthExtractor(sessionExtractor);
+		//the session so far of each user (as in the user logs of the work packages)
+		Map<Long, List<Transaction>> sessionsSoFar = new Long2ObjectOpenHashMap<>();
+		Map<Long, Transaction> lastClicks = new Long2ObjectOpenHashMap<>();
+		int nonEmpty = 0;
+		for (Transaction click : clicks) {
+			List<Transaction> sessionSoFar = sessionsSoFar.get(click.userId);
+			Transaction lastClick = lastClicks.get(click.userId);
+			if (sessionSoFar == null) {
+				sessionSoFar = new ObjectArrayList<>(trainingClicks.get(click.userId));
+				sessionsSoFar.put(click.userId, sessionSoFar);
+			} else if (click.timestamp.getTime() - lastClick.timestamp.getTime() > SessionExtractor.getThresholdInMS()) {
+				sessionSoFar.clear();
+			}
+			sessionSoFar.add(click);
+			lastClicks.put(click.userId, click);
+
+			//the ground truth as it was computed for every click before
+			LongSet expected = new LongOpenHashSet();
+			for (Transaction t : sessionExtractor.getSession(click)) {
+				expected.add(t.item.id);
+			}
+			for (Transaction t : sessionSoFar) {
+				expected.remove(t.item.id);
+			}
+			LongSet groundTruth = extractor.getGroundTruth(click, sessionSoFar);
+			nonEmpty += expected.isEmpty() ? 0 : 1;
+			assertEquals(expected, groundTruth);
+			assertEquals(expected.size(), groundTruth.size());
+			for (long item = 0; item < 15; item++) {
+				assertEquals(expected.contains(item), groundTruth.contains(item));
+			}
+		}
+		//the sessions are long enough that most clicks have a ground truth
+		assertTrue(nonEmpty > clicks.size() / 2);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void clicksHaveToBeRequestedInOrder() {
+		SessionExtractor sessionExtractor = new SessionExtractor();
+		List<Transaction> clicks = new ObjectArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			Transaction click = new Transaction();
+			click.item = new Item();
+			click.item.id = i;
+			click.timestamp = new Date(i);
+			clicks.add(click);
+			sessionExtractor.addClick(click);
+		}
+		new GroundTruthExtractor(sessionExtractor).getGroundTruth(clicks.get(1), clicks);
+	}
+}
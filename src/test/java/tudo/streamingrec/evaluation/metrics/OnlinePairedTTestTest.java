@@ -0,0 +1,82 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.stat.inference.TTest;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link OnlinePairedTTest} gives the same p-values as a paired t-test
+ * on the detailed results, regardless of the order in which the algorithms report their results.
+ * @author MJ
+ *
+ */
+public class OnlinePairedTTestTest {
+	private static final List<String> ALGORITHMS = Arrays.asList("A", "B", "C", "D");
+
+	@Test
+	public void givesTheSamePValuesAsThePairedTTest() {
+		Random random = new Random(42);
+		//enough clicks to drop the paired results from the buffers several times
+		int nbOfClicks = 5000;
+		double[][] results = new double[ALGORITHMS.size()][nbOfClicks];
+		for (int click = 0; click < nbOfClicks; click++) {
+			for (int a = 0; a < ALGORITHMS.size(); a++) {
+				//mostly zeros with a different hit rate per algorithm
+				results[a][click] = random.nextInt(10) < a + 1 ? 1d / (1 + random.nextInt(10)) : 0;
+			}
+		}
+		OnlinePairedTTest test = new OnlinePairedTTest("MRR", ALGORITHMS);
+		//the algorithms report at different speeds
+		int[] reported = new int[ALGORITHMS.size()];
+		while (reported[0] < nbOfClicks || reported[1] < nbOfClicks || reported[2] < nbOfClicks
+				|| reported[3] < nbOfClicks) {
+			int a = random.nextInt(ALGORITHMS.size());
+			int count = Math.min(nbOfClicks - reported[a], random.nextInt(50));
+			for (int i = 0; i < count; i++) {
+				test.add(ALGORITHMS.get(a), results[a][reported[a]++]);
+			}
+		}
+		for (int a = 0; a < ALGORITHMS.size(); a++) {
+			for (int b = 0; b < ALGORITHMS.size(); b++) {
+				if (a == b) {
+					continue;
+				}
+				double expected = new TTest().pairedTTest(results[a], results[b]);
+				//some of the p-values are tiny -> relative tolerance
+				assertEquals(expected, test.getPValue(ALGORITHMS.get(a), ALGORITHMS.get(b)), expected * 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void isNaNForLessThanTwoPairedClicks() {
+		OnlinePairedTTest test = new OnlinePairedTTest("MRR", ALGORITHMS.subList(0, 2));
+		assertTrue(Double.isNaN(test.getPValue("A", "B")));
+		test.add("A", 1);
+		test.add("B", 0);
+		assertTrue(Double.isNaN(test.getPValue("A", "B")));
+		test.add("A", 0.5);
+		test.add("B", 0);
+		assertEquals(new TTest().pairedTTest(new double[] { 1, 0.5 }, new double[] { 0, 0 }),
+				test.getPValue("A", "B"), 1e-9);
+	}
+
+	@Test(expected = DimensionMismatchException.class)
+	public void failsForDifferentNumbersOfResults() {
+		OnlinePairedTTest test = new OnlinePairedTTest("MRR", ALGORITHMS.subList(0, 2));
+		test.add("A", 1);
+		test.getPValue("A", "B");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void failsForUnknownAlgorithms() {
+		new OnlinePairedTTest("MRR", ALGORITHMS.subList(0, 2)).add("C", 1);
+	}
+}
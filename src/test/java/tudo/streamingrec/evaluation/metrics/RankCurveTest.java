@@ -0,0 +1,87 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+/**
+ * Checks that the metrics of a {@link RankCurve} give the same results as separately
+ * configured {@link PrecisionOrRecall}, {@link MeanF1}, and {@link MRR} metrics.
+ * @author MJ
+ *
+ */
+public class RankCurveTest {
+	private static final int[] CUTOFFS = { 1, 3, 5, 10, 20 };
+
+	@Test
+	public void curveGivesTheSameResultsAsSeparateMetrics() {
+		RankCurve curve = new RankCurve();
+		curve.setTypes(Arrays.asList(RankCurve.Type.values()));
+		curve.setCutoffs(CUTOFFS);
+		List<Metric> curveMetrics = curve.getMetrics();
+		//one metric per type and cutoff
+		assertEquals(RankCurve.Type.values().length * CUTOFFS.length, curveMetrics.size());
+
+		//the separate metrics in the same order
+		HypothesisTestableMetric[] separateMetrics = new HypothesisTestableMetric[curveMetrics.size()];
+		int index = 0;
+		for (RankCurve.Type type : RankCurve.Type.values()) {
+			for (int k : CUTOFFS) {
+				HypothesisTestableMetric metric;
+				switch (type) {
+				case Precision:
+					metric = RankedHitsTest.precisionOrRecall(PrecisionOrRecall.Type.Precision, k);
+					break;
+				case Recall:
+					metric = RankedHitsTest.precisionOrRecall(PrecisionOrRecall.Type.Recall, k);
+					break;
+				case MeanF1:
+					metric = new MeanF1();
+					break;
+				default:
+					metric = new MRR();
+				}
+				metric.setK(k);
+				assertEquals(type + "@" + k, curveMetrics.get(index).getName());
+				separateMetrics[index++] = metric;
+			}
+		}
+
+		Random random = new Random(42);
+		for (int run = 0; run < 1000; run++) {
+			LongArrayList recommendations = RankedHitsTest.randomRecommendations(random, false);
+			LongSet groundTruth = run % 50 == 0 ? null : RankedHitsTest.randomGroundTruth(random);
+			//every metric of the curve is called, but only the first one passes the list on to the curve
+			for (Metric metric : curveMetrics) {
+				metric.evaluate(null, recommendations, groundTruth);
+			}
+			for (HypothesisTestableMetric metric : separateMetrics) {
+				metric.evaluate(null, recommendations, groundTruth);
+			}
+		}
+		for (int i = 0; i < separateMetrics.length; i++) {
+			HypothesisTestableMetric curveMetric = (HypothesisTestableMetric) curveMetrics.get(i);
+			assertEquals(curveMetric.getName(), separateMetrics[i].getDetailedResults(),
+					curveMetric.getDetailedResults());
+			assertEquals(curveMetric.getName(), separateMetrics[i].getResults(), curveMetric.getResults(), 1e-12);
+		}
+	}
+
+	@Test
+	public void namedCurvePrefixesItsMetrics() {
+		RankCurve curve = new RankCurve();
+		curve.setName("Sampled");
+		curve.setTypes(Arrays.asList(RankCurve.Type.MRR));
+		curve.setCutoffs(new int[] { 5, 10 });
+		assertEquals("Sampled MRR@5", curve.getMetrics().get(0).getName());
+		assertEquals("Sampled MRR@10", curve.getMetrics().get(1).getName());
+		assertEquals(10, curve.getK());
+	}
+}
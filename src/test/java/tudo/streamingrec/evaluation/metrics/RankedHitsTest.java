@@ -0,0 +1,138 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import tudo.streamingrec.evaluation.metrics.PrecisionOrRecall.Type;
+
+/**
+ * Checks that the metrics give the same results whether they scan each recommendation list
+ * themselves or share the hits of one scan (see {@link RankedHits}).
+ * @author MJ
+ *
+ */
+public class RankedHitsTest {
+	//the cutoffs of the metrics (the hits are scanned up to the largest one)
+	private static final int[] CUTOFFS = { 1, 3, 5, 10, 20 };
+	private static final int LIMIT = 20;
+
+	@Test
+	public void countsTheHitsOfEveryPrefix() {
+		Random random = new Random(42);
+		RankedHits hits = new RankedHits();
+		for (int run = 0; run < 500; run++) {
+			LongArrayList recommendations = randomRecommendations(random, true);
+			LongSet groundTruth = randomGroundTruth(random);
+			//the instance is reused like in the metric evaluator
+			hits.scan(recommendations, groundTruth, LIMIT);
+			assertEquals(groundTruth.size(), hits.getGroundTruthSize());
+			for (int k = 1; k <= LIMIT; k++) {
+				int realK = Math.min(k, recommendations.size());
+				int count = 0;
+				int firstHitRank = 0;
+				LongOpenHashSet unique = new LongOpenHashSet();
+				boolean duplicate = false;
+				for (int i = 0; i < realK; i++) {
+					if (groundTruth.contains(recommendations.getLong(i))) {
+						count++;
+						if (firstHitRank == 0) {
+							firstHitRank = i + 1;
+						}
+					}
+					duplicate |= !unique.add(recommendations.getLong(i));
+				}
+				assertEquals(realK, hits.getRealK(k));
+				assertEquals(count, hits.getHits(k));
+				assertEquals(firstHitRank, hits.getFirstHitRank(k));
+				assertEquals(duplicate, hits.hasDuplicate(k));
+			}
+		}
+	}
+
+	@Test
+	public void sharedHitsGiveTheSameResultsAsSeparateScans() {
+		Random random = new Random(43);
+		for (int k : CUTOFFS) {
+			PrecisionOrRecall precision = precisionOrRecall(Type.Precision, k);
+			PrecisionOrRecall sharedPrecision = precisionOrRecall(Type.Precision, k);
+			PrecisionOrRecall recall = precisionOrRecall(Type.Recall, k);
+			PrecisionOrRecall sharedRecall = precisionOrRecall(Type.Recall, k);
+			MeanF1 f1 = new MeanF1();
+			f1.setK(k);
+			MeanF1 sharedF1 = new MeanF1();
+			sharedF1.setK(k);
+			MRR mrr = new MRR();
+			mrr.setK(k);
+			MRR sharedMrr = new MRR();
+			sharedMrr.setK(k);
+			for (int run = 0; run < 500; run++) {
+				LongArrayList recommendations = randomRecommendations(random, false);
+				LongSet groundTruth = run % 50 == 0 ? null : randomGroundTruth(random);
+				RankedHits hits = RankedHits.of(recommendations, groundTruth, LIMIT);
+				precision.evaluate(null, recommendations, groundTruth);
+				sharedPrecision.evaluate(null, recommendations, groundTruth, hits);
+				recall.evaluate(null, recommendations, groundTruth);
+				sharedRecall.evaluate(null, recommendations, groundTruth, hits);
+				f1.evaluate(null, recommendations, groundTruth);
+				sharedF1.evaluate(null, recommendations, groundTruth, hits);
+				mrr.evaluate(null, recommendations, groundTruth);
+				sharedMrr.evaluate(null, recommendations, groundTruth, hits);
+			}
+			assertEquals(precision.getDetailedResults(), sharedPrecision.getDetailedResults());
+			assertEquals(recall.getDetailedResults(), sharedRecall.getDetailedResults());
+			assertEquals(f1.getDetailedResults(), sharedF1.getDetailedResults());
+			assertEquals(mrr.getDetailedResults(), sharedMrr.getDetailedResults());
+		}
+	}
+
+	/**
+	 * Creates a precision or recall metric
+	 * @param type -
+	 * @param k -
+	 * @return -
+	 */
+	static PrecisionOrRecall precisionOrRecall(Type type, int k) {
+		PrecisionOrRecall metric = new PrecisionOrRecall();
+		metric.setType(type);
+		metric.setK(k);
+		return metric;
+	}
+
+	/**
+	 * Creates a recommendation list of random length (possibly empty or shorter than the cutoffs)
+	 * @param random -
+	 * @param duplicates may items be recommended more than once?
+	 * @return -
+	 */
+	static LongArrayList randomRecommendations(Random random, boolean duplicates) {
+		LongArrayList recommendations = new LongArrayList();
+		int size = random.nextInt(30);
+		while (recommendations.size() < size) {
+			long item = random.nextInt(50);
+			if (duplicates || !recommendations.contains(item)) {
+				recommendations.add(item);
+			}
+		}
+		return recommendations;
+	}
+
+	/**
+	 * Creates a ground truth of random size (possibly empty)
+	 * @param random -
+	 * @return -
+	 */
+	static LongSet randomGroundTruth(Random random) {
+		LongSet groundTruth = new LongOpenHashSet();
+		int size = random.nextInt(8);
+		for (int i = 0; i < size; i++) {
+			groundTruth.add(random.nextInt(50));
+		}
+		return groundTruth;
+	}
+}
@@ -0,0 +1,106 @@
+package tudo.streamingrec.evaluation.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Checks that the detailed results of metrics survive a round trip through a {@link StatResultsFile}
+ * bit-exactly (for sparse and raw columns).
+ * @author MJ
+ *
+ */
+public class StatResultsFileTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripKeepsTheResultsBitExact() throws IOException {
+		Random random = new Random(42);
+		//mostly zeros (sparse column)
+		MRR sparse = new MRR();
+		sparse.setName("MRR");
+		for (int i = 0; i < 1000; i++) {
+			sparse.addResult(random.nextInt(10) == 0 ? 1d / (1 + random.nextInt(10)) : 0);
+		}
+		//mostly non-zero, including negative zero (raw column)
+		MRR raw = new MRR();
+		raw.setName("Raw");
+		for (int i = 0; i < 1000; i++) {
+			raw.addResult(i % 100 == 0 ? -0d : random.nextDouble());
+		}
+		//zeros at the end
+		MRR trailingZeros = new MRR();
+		trailingZeros.setName("Trailing zeros");
+		trailingZeros.addResult(0.5);
+		for (int i = 0; i < 100; i++) {
+			trailingZeros.addResult(0);
+		}
+		//no results at all
+		MRR empty = new MRR();
+		empty.setName("Empty");
+
+		File file = folder.newFile("stat_results.bin");
+		List<HypothesisTestableMetric> first = new ObjectArrayList<>();
+		first.add(sparse);
+		first.add(raw);
+		List<HypothesisTestableMetric> second = new ObjectArrayList<>();
+		second.add(trailingZeros);
+		second.add(empty);
+		//one block per algorithm
+		StatResultsFile.append(file, "A", first);
+		StatResultsFile.append(file, "B 'with' special; characters ä", second);
+		assertTrue(StatResultsFile.isStatResultsFile(file));
+
+		List<HypothesisTestableMetric> read = StatResultsFile.read(file);
+		assertEquals(4, read.size());
+		assertRoundTrip(sparse, "A", read.get(0));
+		assertRoundTrip(raw, "A", read.get(1));
+		assertRoundTrip(trailingZeros, "B 'with' special; characters ä", read.get(2));
+		assertRoundTrip(empty, "B 'with' special; characters ä", read.get(3));
+	}
+
+	@Test
+	public void serializedMetricsAreNotAStatResultsFile() throws IOException {
+		File file = folder.newFile("stat_results_old.bin");
+		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+			out.writeObject(new MRR());
+		}
+		assertFalse(StatResultsFile.isStatResultsFile(file));
+		assertFalse(StatResultsFile.isStatResultsFile(folder.newFile("empty.bin")));
+	}
+
+	/**
+	 * Checks that a metric was read back with the same name, algorithm, mean, and detailed results
+	 * @param expected -
+	 * @param algorithm -
+	 * @param actual -
+	 */
+	private static void assertRoundTrip(HypothesisTestableMetric expected, String algorithm,
+			HypothesisTestableMetric actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(algorithm, actual.getAlgorithm());
+		assertEquals(Double.doubleToRawLongBits(expected.getResults()), Double.doubleToRawLongBits(actual.getResults()));
+		DoubleArrayList expectedResults = expected.getDetailedResults();
+		DoubleArrayList actualResults = actual.getDetailedResults();
+		assertEquals(expectedResults.size(), actualResults.size());
+		for (int i = 0; i < expectedResults.size(); i++) {
+			assertEquals(Double.doubleToRawLongBits(expectedResults.getDouble(i)),
+					Double.doubleToRawLongBits(actualResults.getDouble(i)));
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package tudo.streamingrec.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Checks that {@link TopK} returns exactly the prefix of a stable descending sort
+ * (see {@link Util#sortByValueAndGetKeys(Map, boolean, List)}), including the order of ties.
+ * @author MJ
+ *
+ */
+public class TopKTest {
+	//the cutoffs to check (including 0 and more than the number of candidates)
+	private static final int[] CUTOFFS = { 0, 1, 3, 10, 50, 1000 };
+
+	@Test
+	public void selectsTheSameKeysAsAStableSortForIntScores() {
+		Random random = new Random(42);
+		for (int run = 0; run < 50; run++) {
+			//few distinct scores -> many ties
+			Long2IntOpenHashMap map = new Long2IntOpenHashMap();
+			int size = random.nextInt(200);
+			for (int i = 0; i < size; i++) {
+				map.put(random.nextInt(10000), random.nextInt(5));
+			}
+			List<Long> expected = Util.sortByValueAndGetKeys(map, false);
+			for (int k : CUTOFFS) {
+				assertEquals(prefix(expected, k), TopK.selectKeys(map, k, new LongArrayList()));
+			}
+		}
+	}
+
+	@Test
+	public void selectsTheSameKeysAsAStableSortForDoubleScores() {
+		Random random = new Random(43);
+		for (int run = 0; run < 50; run++) {
+			Long2DoubleOpenHashMap map = new Long2DoubleOpenHashMap();
+			int size = random.nextInt(200);
+			for (int i = 0; i < size; i++) {
+				//negative and equal scores
+				map.put(random.nextInt(10000), random.nextInt(7) / 2d - 1);
+			}
+			List<Long> expected = Util.sortByValueAndGetKeys(map, false);
+			for (int k : CUTOFFS) {
+				assertEquals(prefix(expected, k), TopK.selectKeys(map, k, new LongArrayList()));
+			}
+		}
+	}
+
+	@Test
+	public void keepsTheIterationOrderOfBoxedMapsForTies() {
+		Random random = new Random(44);
+		for (int run = 0; run < 50; run++) {
+			Map<Long, Double> map = new LinkedHashMap<>();
+			int size = random.nextInt(200);
+			for (int i = 0; i < size; i++) {
+				map.put((long) random.nextInt(10000), (double) random.nextInt(4));
+			}
+			List<Long> expected = Util.sortByValueAndGetKeys(map, false);
+			for (int k : CUTOFFS) {
+				assertEquals(prefix(expected, k), TopK.selectKeys(map, k, new LongArrayList()));
+			}
+		}
+	}
+
+	@Test
+	public void selectsTheSameObjectKeysAsAStableSort() {
+		Random random = new Random(45);
+		for (int run = 0; run < 50; run++) {
+			Object2DoubleLinkedOpenHashMap<String> map = new Object2DoubleLinkedOpenHashMap<>();
+			int size = random.nextInt(200);
+			for (int i = 0; i < size; i++) {
+				map.put("item" + random.nextInt(10000), random.nextInt(4));
+			}
+			List<String> expected = Util.sortByValueAndGetKeys(map, false);
+			for (int k : CUTOFFS) {
+				assertEquals(prefix(expected, k), TopK.selectKeys(map, k, new ObjectArrayList<String>()));
+			}
+		}
+	}
+
+	@Test
+	public void selectsTheSameIdsAsAStableSortOfArrays() {
+		Random random = new Random(46);
+		for (int run = 0; run < 50; run++) {
+			int size = random.nextInt(200);
+			long[] keys = new long[size];
+			double[] scores = new double[size];
+			Integer[] positions = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = random.nextInt(10000);
+				scores[i] = random.nextInt(5);
+				positions[i] = i;
+			}
+			//Arrays.sort is stable for objects
+			Arrays.sort(positions, Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+			LongArrayList expected = new LongArrayList();
+			for (int position : positions) {
+				expected.add(keys[position]);
+			}
+			for (int k : CUTOFFS) {
+				//the selected ids are appended to the output
+				LongArrayList output = LongArrayList.wrap(new long[] { -1 });
+				TopK.selectKeys(keys, scores, size, k, output);
+				LongArrayList expectedOutput = LongArrayList.wrap(new long[] { -1 });
+				expectedOutput.addAll(prefix(expected, k));
+				assertEquals(expectedOutput, output);
+			}
+		}
+	}
+
+	/**
+	 * The first k elements of a list
+	 * @param <T> -
+	 * @param list -
+	 * @param k -
+	 * @return -
+	 */
+	private static <T> List<T> prefix(List<T> list, int k) {
+		return list.subList(0, Math.min(k, list.size()));
+	}
+}